@@ -6,6 +6,7 @@ import java.util.stream.Collectors;
 
 import org.bukkit.Bukkit;
 import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -24,6 +25,7 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
 import org.bukkit.event.entity.CreatureSpawnEvent;
 import org.bukkit.event.entity.CreatureSpawnEvent.SpawnReason;
 import org.bukkit.event.entity.EntityDamageByEntityEvent;
@@ -35,12 +37,18 @@ import org.bukkit.event.entity.EntityTeleportEvent;
 import org.bukkit.event.entity.ProjectileHitEvent;
 import org.bukkit.event.entity.ProjectileLaunchEvent;
 import org.bukkit.event.entity.SlimeSplitEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.server.ServerCommandEvent;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
 import org.bukkit.event.world.ChunkLoadEvent;
 import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.EntityEquipment;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.projectiles.ProjectileSource;
@@ -60,6 +68,9 @@ import nu.nerd.beastmaster.mobs.MobTypeManager;
 import nu.nerd.beastmaster.objectives.Objective;
 import nu.nerd.beastmaster.objectives.ObjectiveManager;
 import nu.nerd.beastmaster.objectives.ObjectiveTypeManager;
+import nu.nerd.beastmaster.zones.BiomeCache;
+import nu.nerd.beastmaster.zones.HeightCache;
+import nu.nerd.beastmaster.zones.RegionCache;
 import nu.nerd.beastmaster.zones.Zone;
 import nu.nerd.beastmaster.zones.ZoneManager;
 import nu.nerd.entitymeta.EntityMeta;
@@ -85,6 +96,21 @@ public class BeastMaster extends JavaPlugin implements Listener {
      */
     public static final ZoneManager ZONES = new ZoneManager();
 
+    /**
+     * Biome cache as a singleton.
+     */
+    public static final BiomeCache BIOMES = new BiomeCache();
+
+    /**
+     * Surface height cache as a singleton.
+     */
+    public static final HeightCache HEIGHTS = new HeightCache();
+
+    /**
+     * WorldGuard region cache as a singleton.
+     */
+    public static final RegionCache REGIONS = new RegionCache();
+
     /**
      * Item manager as a singleton.
      */
@@ -158,14 +184,28 @@ public class BeastMaster extends JavaPlugin implements Listener {
             }
         }, 1, 1);
 
+        // Every second, check whether cached WorldGuard regions have expired.
+        Bukkit.getScheduler().scheduleSyncRepeatingTask(this, new Runnable() {
+            @Override
+            public void run() {
+                REGIONS.expire(CONFIG.WG_CACHE_TTL_SECONDS);
+            }
+        }, 20, 20);
+
         OBJECTIVES.extractSchematics();
 
+        // Track zones of players that were online before a reload.
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            ZONES.getTracker().update(player, player.getLocation());
+        }
+
         // Since we can't rely on ChunkLoadEvent or WorldLoadEvent to tell us
         // when chunks containing disguised mobs load at startup, let's
         // process all loaded chunks here.
         for (World world : Bukkit.getWorlds()) {
             for (Chunk chunk : world.getLoadedChunks()) {
                 DISGUISES.loadDisguises(chunk);
+                cacheChunk(chunk);
             }
         }
     } // onEnable
@@ -178,6 +218,7 @@ public class BeastMaster extends JavaPlugin implements Listener {
     public void onDisable() {
         Bukkit.getScheduler().cancelTasks(this);
         OBJECTIVES.removeAll();
+        ZONES.shutdown();
     }
 
     // ------------------------------------------------------------------------
@@ -269,23 +310,76 @@ public class BeastMaster extends JavaPlugin implements Listener {
 
     // ------------------------------------------------------------------------
     /**
-     * When a world is loaded, ensure that a top-level zone for that world
-     * exists.
+     * When a world is loaded, load its zones, ensuring that a top-level zone
+     * for that world exists.
      */
     @EventHandler(ignoreCancelled = true)
     public void onWorldLoad(WorldLoadEvent event) {
         getLogger().info("onWorldLoad: " + event.getWorld().getName());
         World world = event.getWorld();
-        if (ZONES.getZone(world.getName()) == null) {
-            ZONES.addZone(new Zone(world));
-        }
+        ZONES.loadWorld(world, getLogger());
 
         // ChunkLoadEvent is not raised for pre-loaded spawn chunks.
         for (Chunk chunk : world.getLoadedChunks()) {
+            cacheChunk(chunk);
             Bukkit.getScheduler().runTaskLater(this, () -> DISGUISES.loadDisguises(chunk), 1);
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * When a world is unloaded, release its zones.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        getLogger().info("onWorldUnload: " + event.getWorld().getName());
+        ZONES.unloadWorld(event.getWorld(), getLogger());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * When a player runs a WorldGuard command that changes regions, discard
+     * the cached regions of the affected World once the command has run.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onPlayerCommandPreprocess(PlayerCommandPreprocessEvent event) {
+        String commandLine = event.getMessage().substring(1);
+        if (RegionCache.isRegionCommand(commandLine)) {
+            invalidateRegions(RegionCache.getCommandWorld(commandLine, event.getPlayer().getWorld()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * When the console runs a WorldGuard command that changes regions,
+     * discard the cached regions of the affected World once the command has
+     * run.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    public void onServerCommand(ServerCommandEvent event) {
+        String commandLine = event.getCommand();
+        if (RegionCache.isRegionCommand(commandLine)) {
+            invalidateRegions(RegionCache.getCommandWorld(commandLine, null));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached regions of a World, or of all Worlds, on the next
+     * tick, after a region command has run.
+     *
+     * @param world the World, or null for all Worlds.
+     */
+    protected void invalidateRegions(World world) {
+        Bukkit.getScheduler().runTask(this, () -> {
+            if (world != null) {
+                REGIONS.invalidate(world.getUID());
+            } else {
+                REGIONS.invalidate();
+            }
+        });
+    }
+
     // ------------------------------------------------------------------------
     /**
      * If a player breaks an objective block, do treasure drops and stop that
@@ -324,6 +418,26 @@ public class BeastMaster extends JavaPlugin implements Listener {
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * When a block at or above the surface is broken, update the cached
+     * surface height once the block is gone.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockBreakMonitor(BlockBreakEvent event) {
+        updateSurface(event.getBlock());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * When a block is placed at or above the surface, update the cached
+     * surface height.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onBlockPlace(BlockPlaceEvent event) {
+        updateSurface(event.getBlock());
+    }
+
     // ------------------------------------------------------------------------
     /**
      * When a mob spawns, perform zone-appropriate replacement with custom mob
@@ -550,7 +664,7 @@ public class BeastMaster extends JavaPlugin implements Listener {
                                   healthStep == null ||
                                   prevHealth - finalHealth >= healthStep)
                     && (supportPercent == null ||
-                        Math.random() * 100 < supportPercent)) {
+                        Util.random() * 100 < supportPercent)) {
 
                     // TODO: spawning needs to do better at looking for a
                     // spawnable location. Really need to do spawn conditions
@@ -579,7 +693,7 @@ public class BeastMaster extends JavaPlugin implements Listener {
             DamageCause cause = event.getCause();
             if (cause == DamageCause.PROJECTILE) {
                 Double immunityPercent = (Double) mobType.getDerivedProperty("projectile-immunity-percent").getValue();
-                boolean immuneToProjectile = (immunityPercent != null && Math.random() * 100 < immunityPercent);
+                boolean immuneToProjectile = (immunityPercent != null && Util.random() * 100 < immunityPercent);
                 if (immuneToProjectile) {
                     event.setCancelled(true);
                     SoundEffect immunitySound = (SoundEffect) mobType.getDerivedProperty("projectile-immunity-sound").getValue();
@@ -611,7 +725,7 @@ public class BeastMaster extends JavaPlugin implements Listener {
 
             // The mob has been hurt. Teleport away per random chance.
             Double hurtTeleportPercent = (Double) mobType.getDerivedProperty("hurt-teleport-percent").getValue();
-            if (hurtTeleportPercent != null && Math.random() * 100 < hurtTeleportPercent) {
+            if (hurtTeleportPercent != null && Util.random() * 100 < hurtTeleportPercent) {
                 // Find a location up to 10 blocks up and up to 15 blocks away.
                 Location oldLoc = mobLocation;
                 double range = Util.random(5.0, 15.0);
@@ -872,23 +986,73 @@ public class BeastMaster extends JavaPlugin implements Listener {
 
     // ------------------------------------------------------------------------
     /**
-     * When the player joins, send them all pertinent disguises in the world.
+     * When the player joins, send them all pertinent disguises in the world
+     * and start tracking their zone.
      */
     @EventHandler(ignoreCancelled = true)
     protected void onPlayerJoin(PlayerJoinEvent event) {
         if (BeastMaster.CONFIG.DEBUG_DISGUISES) {
             debug("onPlayerJoin()");
         }
-        DISGUISES.sendAllDisguises(event.getPlayer().getWorld(), event.getPlayer());
+        Player player = event.getPlayer();
+        DISGUISES.sendAllDisguises(player.getWorld(), player);
+        ZONES.getTracker().update(player, player.getLocation());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * When the player leaves, stop tracking their zone.
+     */
+    @EventHandler(ignoreCancelled = true)
+    protected void onPlayerQuit(PlayerQuitEvent event) {
+        ZONES.getTracker().remove(event.getPlayer());
     }
 
     // ------------------------------------------------------------------------
     /**
-     * When the player respawns, refresh disguises.
+     * When the player respawns, refresh disguises and their tracked zone.
      */
     @EventHandler(ignoreCancelled = true)
     protected void onPlayerRespawn(PlayerRespawnEvent event) {
-        Bukkit.getScheduler().runTaskLater(this, () -> DISGUISES.sendAllDisguises(event.getPlayer().getWorld(), event.getPlayer()), 1);
+        Player player = event.getPlayer();
+        Bukkit.getScheduler().runTaskLater(this, () -> {
+            DISGUISES.sendAllDisguises(player.getWorld(), player);
+            ZONES.getTracker().update(player, player.getLocation());
+        }, 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * When the player moves, update their tracked zone.
+     *
+     * The tracker ignores moves within the same block, such as turning.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onPlayerMove(PlayerMoveEvent event) {
+        ZONES.getTracker().update(event.getPlayer(), event.getTo());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Players riding vehicles don't raise PlayerMoveEvent, so update the
+     * tracked zones of player passengers when vehicles move.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onVehicleMove(VehicleMoveEvent event) {
+        for (Entity passenger : event.getVehicle().getPassengers()) {
+            if (passenger instanceof Player) {
+                ZONES.getTracker().update((Player) passenger, event.getTo());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * When a player teleport succeeds, update their tracked zone.
+     */
+    @EventHandler(ignoreCancelled = true, priority = EventPriority.MONITOR)
+    protected void onPlayerTeleportMonitor(PlayerTeleportEvent event) {
+        ZONES.getTracker().update(event.getPlayer(), event.getTo());
     }
 
     // ------------------------------------------------------------------------
@@ -906,19 +1070,26 @@ public class BeastMaster extends JavaPlugin implements Listener {
 
     // ------------------------------------------------------------------------
     /**
-     * When loading a chunk, apply disguises if not null/empty.
+     * When loading a chunk, apply disguises if not null/empty and cache
+     * biomes and surface heights.
      */
     @EventHandler(ignoreCancelled = true)
     protected void onChunkLoad(ChunkLoadEvent event) {
         DISGUISES.loadDisguises(event.getChunk());
+        cacheChunk(event.getChunk());
     }
 
     // ------------------------------------------------------------------------
     /**
-     * When unloading a chunk, clear disguises of unloaded mobs.
+     * When unloading a chunk, clear disguises of unloaded mobs, cached zone
+     * lookups, biomes, surface heights and WorldGuard regions.
      */
     @EventHandler(ignoreCancelled = true)
     protected void onChunkUnload(ChunkUnloadEvent event) {
+        ZONES.evictChunk(event.getChunk());
+        BIOMES.unload(event.getChunk());
+        HEIGHTS.unload(event.getChunk());
+        REGIONS.unload(event.getChunk());
         for (Entity entity : event.getChunk().getEntities()) {
             if (entity instanceof LivingEntity) {
                 MobType mobType = getMobType(entity);
@@ -932,6 +1103,41 @@ public class BeastMaster extends JavaPlugin implements Listener {
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Cache the biomes of a loaded chunk and, if a Zone Specification in its
+     * World uses DEPTH, its surface heights.
+     *
+     * Both caches are filled from a single ChunkSnapshot, which includes the
+     * heightmap only when it is needed.
+     *
+     * @param chunk the Chunk.
+     */
+    protected void cacheChunk(Chunk chunk) {
+        boolean usesDepth = ZONES.usesDepth(chunk.getWorld());
+        ChunkSnapshot snapshot = chunk.getChunkSnapshot(usesDepth, true, false);
+        BIOMES.load(chunk, snapshot);
+        if (usesDepth) {
+            HEIGHTS.load(chunk, snapshot);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * If a changed block could alter the surface height of its column, read
+     * the height again on the next tick, when the change has taken effect.
+     *
+     * @param block the placed or broken block.
+     */
+    protected void updateSurface(Block block) {
+        World world = block.getWorld();
+        int x = block.getX();
+        int z = block.getZ();
+        if (HEIGHTS.affectsSurface(world, x, block.getY(), z)) {
+            Bukkit.getScheduler().runTask(this, () -> HEIGHTS.update(world, x, z));
+        }
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Handle block break in a zone where that block type should drop custom
@@ -984,9 +1190,9 @@ public class BeastMaster extends JavaPlugin implements Listener {
         Location loc = event.getLocation();
         World world = loc.getWorld();
         if (world.getEnvironment() == Environment.NETHER &&
-            loc.getBlock().getBiome() == Biome.PLAINS &&
+            BIOMES.getBiome(world, loc.getBlockX(), loc.getBlockY(), loc.getBlockZ()) == Biome.PLAINS &&
             event.getEntityType() == EntityType.SKELETON &&
-            Math.random() < CONFIG.CHANCE_WITHER_SKELETON) {
+            Util.random() < CONFIG.CHANCE_WITHER_SKELETON) {
             if (CONFIG.DEBUG_REPLACE) {
                 debug(String.format("Replacing skeleton at (%d, %d, %d, %s) with wither skeleton.",
                                     loc.getBlockX(), loc.getBlockY(), loc.getBlockZ(), loc.getWorld().getName()));
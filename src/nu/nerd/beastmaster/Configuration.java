@@ -43,6 +43,24 @@ public class Configuration {
      */
     public double CHANCE_WITHER_SKELETON;
 
+    /**
+     * Maximum time in seconds that WorldGuard regions are cached for the WG
+     * zone predicate, or 0 to only clear the cache when region commands run.
+     */
+    public int WG_CACHE_TTL_SECONDS;
+
+    /**
+     * If true, the Zones of Worlds that don't use biome() or wg() are baked
+     * into memory-mapped tiles.
+     */
+    public boolean ZONE_BAKING_ENABLED;
+
+    /**
+     * Maximum number of 512x512 block regions baked per World; Worlds whose
+     * Zones cover more regions are not baked.
+     */
+    public int ZONE_BAKING_MAX_REGIONS;
+
     /**
      * EntityTypes that cannot be used in custom mob types.
      */
@@ -63,6 +81,9 @@ public class Configuration {
         DEBUG_DISGUISES = config.getBoolean("debug.disguises");
         DEBUG_EQUIPMENT_DROPS = config.getBoolean("debug.equipment-drops");
         CHANCE_WITHER_SKELETON = config.getDouble("chance.wither-skeleton");
+        WG_CACHE_TTL_SECONDS = config.getInt("wg-cache.ttl-seconds");
+        ZONE_BAKING_ENABLED = config.getBoolean("zone-baking.enabled");
+        ZONE_BAKING_MAX_REGIONS = config.getInt("zone-baking.max-regions");
 
         EXCLUDED_ENTITY_TYPES.clear();
         for (String excluded : config.getStringList("excluded-entity-types")) {
@@ -87,6 +108,9 @@ public class Configuration {
             logger.info("DEBUG_DISGUISES: " + DEBUG_DISGUISES);
             logger.info("DEBUG_EQUIPMENT_DROPS: " + DEBUG_EQUIPMENT_DROPS);
             logger.info("CHANCE_WITHER_SKELETON: " + CHANCE_WITHER_SKELETON);
+            logger.info("WG_CACHE_TTL_SECONDS: " + WG_CACHE_TTL_SECONDS);
+            logger.info("ZONE_BAKING_ENABLED: " + ZONE_BAKING_ENABLED);
+            logger.info("ZONE_BAKING_MAX_REGIONS: " + ZONE_BAKING_MAX_REGIONS);
 
             logger.info("EXCLUDED_ENTITY_TYPES: " + EXCLUDED_ENTITY_TYPES.stream()
                 .map(EntityType::toString).collect(Collectors.joining(", ")));
@@ -0,0 +1,285 @@
+package nu.nerd.beastmaster;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// ----------------------------------------------------------------------------
+/**
+ * Selects several distinct elements at random, without replacement, where the
+ * probability of choosing each remaining element is its weight divided by the
+ * sum of the weights of all remaining elements.
+ *
+ * The weights are held in a Fenwick tree (binary indexed tree), so that
+ * choosing an element and removing it from consideration both take O(log n)
+ * time. After a round of selections, {@link #reset()} restores the chosen
+ * elements in O(k log n) time, where k is the number chosen, so a single
+ * instance can be reused for every roll of a loot table. Restored tree nodes
+ * are copied from a snapshot taken when the tree was built, rather than
+ * having the removed weights added back, so that rounding error does not
+ * accumulate over many rounds.
+ *
+ * Instances are not thread-safe.
+ */
+public class DistinctWeightedSelection<E> {
+    // --------------------------------------------------------------------------
+    /**
+     * Default constructor.
+     * 
+     * Random numbers are drawn from the {@link RandomSource} of the calling
+     * thread.
+     */
+    public DistinctWeightedSelection() {
+        this(null);
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param random the random number generator to use, or null to use the
+     *        {@link RandomSource} of the calling thread.
+     */
+    public DistinctWeightedSelection(Random random) {
+        _random = random;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Add a choice.
+     *
+     * @param choice the chosen object.
+     * @param weight its probability weight; this must be greater than 0, or the
+     *        choice is not added.
+     */
+    public void addChoice(E choice, double weight) {
+        if (weight > 0) {
+            _choices.add(choice);
+            _weightList.add(weight);
+            _tree = null;
+        }
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the number of choices.
+     *
+     * @return the number of choices.
+     */
+    public int size() {
+        return _choices.size();
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Choose up to count distinct elements at random, then make all elements
+     * available to be chosen again.
+     *
+     * @param count the number of elements to choose.
+     * @return the chosen elements, in the order they were chosen; fewer than
+     *         count if there are not enough choices.
+     */
+    public List<E> choose(int count) {
+        List<E> chosen = new ArrayList<>(Math.min(count, size()));
+        for (int i = 0; i < count; ++i) {
+            E choice = chooseAndRemove();
+            if (choice == null) {
+                break;
+            }
+            chosen.add(choice);
+        }
+        reset();
+        return chosen;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return a randomly selected element and remove it from consideration
+     * until the next {@link #reset()}.
+     *
+     * @return a randomly selected element, or null if there is nothing left to
+     *         choose.
+     */
+    public E chooseAndRemove() {
+        if (_tree == null) {
+            buildTree();
+        }
+        if (_removedCount == _weights.length) {
+            return null;
+        }
+
+        int index = find(random().nextDouble() * _remaining);
+        add(index, -_weights[index]);
+        _removed[index] = true;
+        _removedIndices[_removedCount++] = index;
+        _remaining -= _weights[index];
+        return _choices.get(index);
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Make all elements removed by {@link #chooseAndRemove()} available to be
+     * chosen again.
+     */
+    public void reset() {
+        while (_removedCount > 0) {
+            int index = _removedIndices[--_removedCount];
+            for (int i = index + 1; i < _tree.length; i += i & -i) {
+                _tree[i] = _initialTree[i];
+            }
+            _removed[index] = false;
+        }
+        _remaining = _total;
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Build the Fenwick tree of the current choices in O(n) time.
+     */
+    protected void buildTree() {
+        int n = _choices.size();
+        _weights = new double[n];
+        _tree = new double[n + 1];
+        _removed = new boolean[n];
+        _removedIndices = new int[n];
+        _removedCount = 0;
+        _total = 0;
+        for (int i = 0; i < n; ++i) {
+            _weights[i] = _weightList.get(i);
+            _total += _weights[i];
+            _tree[i + 1] += _weights[i];
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= n) {
+                _tree[parent] += _tree[i + 1];
+            }
+        }
+        _remaining = _total;
+        _initialTree = _tree.clone();
+
+        _topBit = Integer.highestOneBit(Math.max(1, n));
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Add a delta to the weight of one element in the Fenwick tree.
+     *
+     * @param index the 0-based index of the element.
+     * @param delta the change in weight.
+     */
+    protected void add(int index, double delta) {
+        for (int i = index + 1; i < _tree.length; i += i & -i) {
+            _tree[i] += delta;
+        }
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the index of the remaining element whose cumulative weight range
+     * contains the specified value.
+     *
+     * @param value a value in [0, remaining total weight).
+     * @return the 0-based index of the element.
+     */
+    protected int find(double value) {
+        // Descend the implicit tree: position ends at the largest 1-based
+        // index whose prefix sum is <= value, so the element is next.
+        int position = 0;
+        for (int bit = _topBit; bit != 0; bit >>= 1) {
+            int next = position + bit;
+            if (next < _tree.length && _tree[next] <= value) {
+                position = next;
+                value -= _tree[next];
+            }
+        }
+
+        // Rounding error can land on a removed element or run off the end;
+        // take the nearest remaining element.
+        int index = Math.min(position, _weights.length - 1);
+        for (int i = index; i < _weights.length; ++i) {
+            if (!_removed[i]) {
+                return i;
+            }
+        }
+        for (int i = index - 1; i >= 0; --i) {
+            if (!_removed[i]) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("no remaining choices");
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Return the random number generator to use.
+     * 
+     * @return the random number generator to use.
+     */
+    protected Random random() {
+        return (_random != null) ? _random : RandomSource.current();
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * The random number generator, or null to use the RandomSource of the
+     * calling thread.
+     */
+    protected Random _random;
+
+    /**
+     * The choices, in the order they were added.
+     */
+    protected List<E> _choices = new ArrayList<>();
+
+    /**
+     * The weights of the choices, in the order they were added.
+     */
+    protected List<Double> _weightList = new ArrayList<>();
+
+    /**
+     * The weights of the choices, copied from _weightList when the tree is
+     * built.
+     */
+    protected double[] _weights;
+
+    /**
+     * The Fenwick tree of remaining weights, indexed from 1; null if it must
+     * be rebuilt.
+     */
+    protected double[] _tree;
+
+    /**
+     * A copy of the Fenwick tree with no choices removed, from which reset()
+     * restores the nodes changed by removals.
+     */
+    protected double[] _initialTree;
+
+    /**
+     * The highest power of two not exceeding the number of choices.
+     */
+    protected int _topBit;
+
+    /**
+     * True for each choice that has been removed since the last reset.
+     */
+    protected boolean[] _removed;
+
+    /**
+     * The indices of the choices removed since the last reset.
+     */
+    protected int[] _removedIndices;
+
+    /**
+     * The number of valid entries in _removedIndices.
+     */
+    protected int _removedCount;
+
+    /**
+     * Sum of the weights of all choices.
+     */
+    protected double _total;
+
+    /**
+     * Sum of the weights of the choices that have not been removed.
+     */
+    protected double _remaining;
+} // class DistinctWeightedSelection
\ No newline at end of file
@@ -92,6 +92,40 @@ public class Drop implements Cloneable, Comparable<Drop> {
         return Util.random(getMinAmount(), getMaxAmount());
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the sum of the random amounts of several rolls of this drop.
+     *
+     * When there are more rolls than possible amounts, the number of rolls
+     * giving each amount is sampled by conditional binomial splitting, as in
+     * {@link DropSet}, so the time taken depends on the range of amounts
+     * rather than the number of rolls.
+     *
+     * @param rolls the number of rolls.
+     * @return the total amount.
+     */
+    public int randomAmount(int rolls) {
+        int min = getMinAmount();
+        int range = getMaxAmount() - min + 1;
+        int amount = 0;
+        if (rolls <= range) {
+            for (int i = 0; i < rolls; ++i) {
+                amount += randomAmount();
+            }
+            return amount;
+        }
+
+        // Each amount in turn takes a binomially distributed share of the
+        // rolls not taken by smaller amounts.
+        int remainingRolls = rolls;
+        for (int i = 0; i < range - 1 && remainingRolls > 0; ++i) {
+            int count = Util.binomial(remainingRolls, 1.0 / (range - i));
+            amount += count * (min + i);
+            remainingRolls -= count;
+        }
+        return amount + remainingRolls * (min + range - 1);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Make a new random-sized ItemStack for this drop, which must be of type
@@ -105,19 +139,51 @@ public class Drop implements Cloneable, Comparable<Drop> {
             throw new AssertionError("requested an ItemStack from a non-item Drop");
         }
 
-        Item item = BeastMaster.ITEMS.getItem(getId());
-        if (item == null) {
+        ItemStack template = getPlan().template;
+        if (template == null) {
             return null;
         }
 
-        ItemStack itemStack = item.getItemStack();
-        if (itemStack != null) {
-            itemStack = itemStack.clone();
-            itemStack.setAmount(randomAmount());
-        }
+        ItemStack itemStack = template.clone();
+        itemStack.setAmount(randomAmount());
         return itemStack;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Item dropped by this drop.
+     *
+     * @return the Item, or null if this is not an item drop or the item is
+     *         not defined.
+     */
+    public Item getItem() {
+        return getPlan().item;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the MobType spawned by this drop.
+     *
+     * @return the MobType, or null if this is not a mob drop or the mob type
+     *         is not defined.
+     */
+    public MobType getMobType() {
+        return getPlan().mobType;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Resolve the item or mob type of this drop now, rather than on first
+     * use.
+     *
+     * {@link LootManager} compiles every drop after loading; drops whose
+     * item or mob type is subsequently redefined are resolved again the next
+     * time they are used.
+     */
+    public void compile() {
+        getPlan();
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Do all actions associated with this drop, including effects and XP.
@@ -130,9 +196,42 @@ public class Drop implements Cloneable, Comparable<Drop> {
      *                logging.
      * @param player  the player that triggered the drop, or null.
      * @param loc     the Location of the drop.
-     * @return true if the default vanilla drop should be dropped.
      */
     public void generate(DropResults results, String trigger, Player player, Location loc) {
+        generate(results, trigger, player, loc, 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Do all actions associated with several rolls of this drop at once.
+     *
+     * The amount dropped is the sum of the random amounts of all rolls, but
+     * the sound is played once, the experience of all rolls is dropped as a
+     * single orb and one line is logged. Items are dropped in stacks of at
+     * most the maximum stack size.
+     *
+     * Objective drops are generated one roll at a time, since each spawns
+     * its own objective.
+     *
+     * @param results records some details about what was dropped.
+     * @param trigger a description of the event that triggered the drop, for
+     *                logging.
+     * @param player  the player that triggered the drop, or null.
+     * @param loc     the Location of the drop.
+     * @param rolls   the number of rolls; nothing happens if it is not
+     *                positive.
+     */
+    public void generate(DropResults results, String trigger, Player player, Location loc, int rolls) {
+        if (rolls > 1 && getObjectiveType() != null) {
+            for (int i = 0; i < rolls; ++i) {
+                generate(results, trigger, player, loc, 1);
+            }
+            return;
+        }
+        if (rolls <= 0) {
+            return;
+        }
+
         // Invalid mob/item ID or inability to spawn objective makes drop fail.
         boolean dropSucceeded;
         String dropDescription;
@@ -141,16 +240,23 @@ public class Drop implements Cloneable, Comparable<Drop> {
         case ITEM: {
             ItemStack itemStack = randomItemStack();
             dropSucceeded = (itemStack != null && trySpawnObjective(itemStack, loc));
+            int amount = 0;
             if (dropSucceeded) {
-                if (isDirect()) {
-                    // PlayerInventory#addItem returns a HashMap detailing items
-                    // that failed to add.
-                    player.getInventory().addItem(itemStack).values().forEach(i -> doItemDrop(loc, player, i));
-                } else {
-                    doItemDrop(loc, player, itemStack);
+                amount = (rolls == 1) ? itemStack.getAmount() : randomAmount(rolls);
+                int maxStackSize = Math.max(1, itemStack.getMaxStackSize());
+                for (int remaining = amount; remaining > 0; remaining -= maxStackSize) {
+                    ItemStack stack = (remaining == amount && amount <= maxStackSize) ? itemStack : itemStack.clone();
+                    stack.setAmount(Math.min(remaining, maxStackSize));
+                    if (isDirect()) {
+                        // PlayerInventory#addItem returns a HashMap detailing
+                        // items that failed to add.
+                        player.getInventory().addItem(stack).values().forEach(i -> doItemDrop(loc, player, i));
+                    } else {
+                        doItemDrop(loc, player, stack);
+                    }
                 }
             }
-            dropDescription = "ITEM " + getId() + (dropSucceeded ? " x " + itemStack.getAmount() : " (invalid)");
+            dropDescription = "ITEM " + getId() + (dropSucceeded ? " x " + amount : " (invalid)");
             break;
         }
 
@@ -160,10 +266,11 @@ public class Drop implements Cloneable, Comparable<Drop> {
 
             // Count the number of successful spawns.
             int spawnCount = 0;
-            MobType mobType = BeastMaster.MOBS.getMobType(getId());
+            MobType mobType = getPlan().mobType;
             LivingEntity livingEntity = null;
             if (mobType != null) {
-                for (int i = 0; i < randomAmount(); ++i) {
+                int amount = randomAmount(rolls);
+                for (int i = 0; i < amount; ++i) {
                     livingEntity = BeastMaster.PLUGIN.spawnMob(loc, mobType, !alwaysFits());
                     if (livingEntity != null) {
                         ++spawnCount;
@@ -179,13 +286,13 @@ public class Drop implements Cloneable, Comparable<Drop> {
         }
 
         default: // NOTHING or DEFAULT
-            dropDescription = getDropType().toString();
+            dropDescription = getDropType().toString() + (rolls > 1 ? " x " + rolls : "");
             dropSucceeded = true;
             break;
         }
 
         if (dropSucceeded) {
-            dropExperience(loc);
+            dropExperience(loc, rolls);
             playSound(loc);
             if (isLogged()) {
                 Logger logger = BeastMaster.PLUGIN.getLogger();
@@ -218,9 +325,21 @@ public class Drop implements Cloneable, Comparable<Drop> {
      * @param loc the location.
      */
     public void dropExperience(Location loc) {
+        dropExperience(loc, 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Drop the experience of several rolls of this drop, as a single orb, at
+     * the specified Location.
+     *
+     * @param loc   the location.
+     * @param rolls the number of rolls.
+     */
+    public void dropExperience(Location loc, int rolls) {
         if (_experience > 0) {
             ExperienceOrb orb = loc.getWorld().spawn(loc, ExperienceOrb.class);
-            orb.setExperience(_experience);
+            orb.setExperience((int) Math.min(Integer.MAX_VALUE, (long) _experience * rolls));
         }
     }
 
@@ -232,6 +351,7 @@ public class Drop implements Cloneable, Comparable<Drop> {
      */
     public void setDropType(DropType dropType) {
         _dropType = dropType;
+        _plan = null;
     }
 
     // ------------------------------------------------------------------------
@@ -762,6 +882,93 @@ public class Drop implements Cloneable, Comparable<Drop> {
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the current Plan of this drop, resolving it again if the items
+     * or mob types have changed since it was last resolved.
+     *
+     * @return the Plan.
+     */
+    protected Plan getPlan() {
+        Plan plan = _plan;
+        if (plan == null || !plan.isCurrent()) {
+            plan = _plan = new Plan(this);
+        }
+        return plan;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The item or mob type that a Drop resolves to, looked up once rather
+     * than by ID every time the drop is generated.
+     *
+     * A Plan is immutable. It records the versions of the {@link ItemManager}
+     * and {@link nu.nerd.beastmaster.mobs.MobTypeManager} that it was
+     * resolved against, so that it can be replaced when items or mob types
+     * are redefined.
+     */
+    protected static final class Plan {
+        /**
+         * Constructor.
+         *
+         * @param drop the Drop to resolve.
+         */
+        Plan(Drop drop) {
+            itemsVersion = BeastMaster.ITEMS.getVersion();
+            mobsVersion = BeastMaster.MOBS.getVersion();
+            if (drop.getDropType() == DropType.ITEM) {
+                item = BeastMaster.ITEMS.getItem(drop.getId());
+                template = (item != null) ? item.getItemStack() : null;
+                mobType = null;
+            } else if (drop.getDropType() == DropType.MOB) {
+                item = null;
+                template = null;
+                mobType = BeastMaster.MOBS.getMobType(drop.getId());
+            } else {
+                item = null;
+                template = null;
+                mobType = null;
+            }
+        }
+
+        /**
+         * Return true if no items or mob types have changed since this Plan
+         * was resolved.
+         *
+         * @return true if the Plan is current.
+         */
+        boolean isCurrent() {
+            return itemsVersion == BeastMaster.ITEMS.getVersion() &&
+                   mobsVersion == BeastMaster.MOBS.getVersion();
+        }
+
+        /**
+         * The dropped Item, or null.
+         */
+        final Item item;
+
+        /**
+         * The ItemStack of the dropped Item, cloned for each drop; null if
+         * there is no Item.
+         */
+        final ItemStack template;
+
+        /**
+         * The spawned MobType, or null.
+         */
+        final MobType mobType;
+
+        /**
+         * The version of the ItemManager when resolved.
+         */
+        final int itemsVersion;
+
+        /**
+         * The version of the MobTypeManager when resolved.
+         */
+        final int mobsVersion;
+    } // class Plan
+
     // ------------------------------------------------------------------------
     /**
      * Load a custom drop from a configuration file section named after the
@@ -775,6 +982,7 @@ public class Drop implements Cloneable, Comparable<Drop> {
             // Backwards compatibility: default to ITEM.
             String type = section.getString("type");
             _dropType = DropType.valueOf(type != null ? type : "ITEM");
+            _plan = null;
         } catch (IllegalArgumentException ex) {
             return false;
         }
@@ -1044,4 +1252,9 @@ public class Drop implements Cloneable, Comparable<Drop> {
      */
     protected boolean _directToInventory;
 
+    /**
+     * The resolved item or mob type, or null if not yet resolved.
+     */
+    protected Plan _plan;
+
 } // class Drop
\ No newline at end of file
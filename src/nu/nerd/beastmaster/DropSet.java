@@ -2,6 +2,8 @@ package nu.nerd.beastmaster;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -38,6 +40,8 @@ public class DropSet {
     public DropSet(String id, DropSet other) {
         _id = id;
         _single = other._single;
+        _distinctCount = other._distinctCount;
+        _rolls = other._rolls;
         for (Drop drop : other.getAllDrops()) {
             addDrop(drop.clone());
         }
@@ -58,10 +62,15 @@ public class DropSet {
      * Specify whether this {@link DropSet} can drop only a single ItemStack, or
      * multiple.
      * 
+     * Either way, this turns off distinct mode (see
+     * {@link #setDistinctCount(int)}), so that false selects multiple
+     * independent drops.
+     * 
      * @param single whether a single {@link Drop} is dropped.
      */
     public void setSingle(boolean single) {
         _single = single;
+        _distinctCount = 0;
     }
 
     // ------------------------------------------------------------------------
@@ -76,11 +85,83 @@ public class DropSet {
 
     // ------------------------------------------------------------------------
     /**
-     * Invalidate the cached {@link WeightedSelection} used to determine the
+     * Specify the number of distinct {@link Drop}s selected, without
+     * replacement, on each roll of this DropSet.
+     * 
+     * In this mode, drop chances are interpreted as relative weights, as for
+     * {@link #isSingle()}, but each drop is dropped at most once. Setting a
+     * non-zero count turns off single mode.
+     * 
+     * @param distinctCount the number of distinct drops, or 0 to turn off
+     *        this mode.
+     */
+    public void setDistinctCount(int distinctCount) {
+        _distinctCount = Math.max(0, distinctCount);
+        if (_distinctCount != 0) {
+            _single = false;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of distinct {@link Drop}s selected on each roll, or 0
+     * if this DropSet is not in that mode.
+     * 
+     * @return the number of distinct drops, or 0.
+     */
+    public int getDistinctCount() {
+        return _distinctCount;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set the number of times this DropSet is rolled each time it generates
+     * drops.
+     * 
+     * All rolls are sampled at once and each {@link Drop} that is selected
+     * is generated once, with the total amount of all of its rolls.
+     * 
+     * @param rolls the number of rolls; values less than 1 are treated as 1.
+     */
+    public void setRolls(int rolls) {
+        _rolls = Math.max(1, rolls);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of times this DropSet is rolled each time it
+     * generates drops.
+     * 
+     * @return the number of rolls.
+     */
+    public int getRolls() {
+        return _rolls;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Invalidate the cached {@link WeightedSelection}s used to determine the
      * drop when this {@link DropSet#isSingle()}.
+     * 
+     * This must be called whenever the chance or restricted state of a
+     * {@link Drop} in this set is changed in place.
      */
     public void invalidateWeightedSelection() {
         _selectionCache = null;
+        _restrictedSelectionCache = null;
+        _distinctSelectionCache = null;
+        _restrictedDistinctSelectionCache = null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Resolve the items and mob types of all drops, so that generating drops
+     * does not look them up by ID.
+     */
+    public void compile() {
+        for (Drop drop : _drops.values()) {
+            drop.compile();
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -193,6 +274,35 @@ public class DropSet {
         return (drop == null) ? Drop.NOTHING : drop;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Select distinct drops, without replacement, as if this DropSet had a
+     * {@link #getDistinctCount()} of count.
+     * 
+     * @param count the number of drops to select.
+     * @param allowRestricted if true, restricted drops can be selected.
+     * @return the selected drops; fewer than count if there are not enough
+     *         allowed drops with non-zero chances.
+     */
+    public List<Drop> chooseDistinctDrops(int count, boolean allowRestricted) {
+        DistinctWeightedSelection<Drop> selection = allowRestricted ? _restrictedDistinctSelectionCache
+                                                                    : _distinctSelectionCache;
+        if (selection == null) {
+            selection = new DistinctWeightedSelection<Drop>();
+            for (Drop drop : _drops.values()) {
+                if (allowRestricted || !drop.isRestricted()) {
+                    selection.addChoice(drop, drop.getDropChance());
+                }
+            }
+            if (allowRestricted) {
+                _restrictedDistinctSelectionCache = selection;
+            } else {
+                _distinctSelectionCache = selection;
+            }
+        }
+        return selection.choose(count);
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Generate randomly selected drops and their accompanying objectives,
@@ -206,9 +316,24 @@ public class DropSet {
      *        they are removed.
      */
     public void generateRandomDrops(DropResults results, String trigger, Player player, Location loc, boolean allowRestricted) {
-        if (isSingle()) {
+        if (_rolls > 1) {
+            if (!isSingle() && _distinctCount == 0 && _drops.isEmpty()) {
+                results.setIncludesVanillaDrop();
+            }
+            for (Entry<Drop, Integer> entry : countRolls(_rolls, allowRestricted).entrySet()) {
+                entry.getKey().generate(results, trigger, player, loc, entry.getValue());
+            }
+
+        } else if (isSingle()) {
             chooseOneDrop(allowRestricted).generate(results, trigger, player, loc);
 
+        } else if (_distinctCount != 0) {
+            // Select all drops before generating any, since generating
+            // drops runs arbitrary code (objectives, mob spawns).
+            for (Drop drop : chooseDistinctDrops(_distinctCount, allowRestricted)) {
+                drop.generate(results, trigger, player, loc);
+            }
+
         } else {
             // An uninitialised drop table (no drops) drops vanilla items.
             // Gotcha: a call to a nested empty loot table would also be
@@ -219,13 +344,76 @@ public class DropSet {
 
             for (Drop drop : _drops.values()) {
                 if ((allowRestricted || !drop.isRestricted()) &&
-                    Math.random() < drop.getDropChance()) {
+                    Util.random() < drop.getDropChance()) {
                     drop.generate(results, trigger, player, loc);
                 }
             }
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Sample several rolls of this DropSet at once, returning the number of
+     * times each {@link Drop} was selected.
+     * 
+     * In single mode, the counts of a multinomial distribution are sampled by
+     * conditional binomial splitting: each drop in turn takes a binomially
+     * distributed share of the rolls not taken by earlier drops, with
+     * probability equal to its share of the remaining weight. In multiple
+     * mode, each drop's count is binomially distributed. Distinct mode rolls
+     * one at a time.
+     * 
+     * @param rolls the number of rolls.
+     * @param allowRestricted if true, restricted drops can be selected.
+     * @return a map from Drop to the number of times it was selected, which
+     *         is always positive.
+     */
+    protected Map<Drop, Integer> countRolls(int rolls, boolean allowRestricted) {
+        Map<Drop, Integer> counts = new LinkedHashMap<>();
+        if (isSingle()) {
+            int remainingRolls = rolls;
+            double remainingWeight = getTotalWeight(allowRestricted);
+            for (Drop drop : _drops.values()) {
+                if (remainingRolls == 0 || remainingWeight <= 0) {
+                    break;
+                }
+                if (allowRestricted || !drop.isRestricted()) {
+                    double weight = drop.getDropChance();
+                    if (weight > 0) {
+                        // Allow for rounding error in remainingWeight for
+                        // the last drop.
+                        double probability = weight / remainingWeight;
+                        int count = (probability >= 1 - 1e-9) ? remainingRolls
+                                                              : Util.binomial(remainingRolls, probability);
+                        if (count != 0) {
+                            counts.put(drop, count);
+                        }
+                        remainingRolls -= count;
+                        remainingWeight -= weight;
+                    }
+                }
+            }
+
+        } else if (_distinctCount != 0) {
+            for (int i = 0; i < rolls; ++i) {
+                for (Drop drop : chooseDistinctDrops(_distinctCount, allowRestricted)) {
+                    counts.merge(drop, 1, Integer::sum);
+                }
+            }
+
+        } else {
+            for (Drop drop : _drops.values()) {
+                if (allowRestricted || !drop.isRestricted()) {
+                    int count = Util.binomial(rolls, drop.getDropChance());
+                    if (count != 0) {
+                        counts.put(drop, count);
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Load all properties and drops from the specified configuration section,
@@ -237,6 +425,8 @@ public class DropSet {
     public void load(ConfigurationSection section, Logger logger) {
         _id = section.getName();
         _single = section.getBoolean("single");
+        _distinctCount = _single ? 0 : Math.max(0, section.getInt("distinct", 0));
+        _rolls = Math.max(1, section.getInt("rolls", 1));
         removeAllDrops();
 
         ConfigurationSection allDropsSection = section.getConfigurationSection("drops");
@@ -262,6 +452,12 @@ public class DropSet {
     public void save(ConfigurationSection parentSection, Logger logger) {
         ConfigurationSection section = parentSection.createSection(getId());
         section.set("single", _single);
+        if (_distinctCount != 0) {
+            section.set("distinct", _distinctCount);
+        }
+        if (_rolls != 1) {
+            section.set("rolls", _rolls);
+        }
 
         ConfigurationSection allDropsSection = section.createSection("drops");
         for (Drop drop : _drops.values()) {
@@ -281,7 +477,12 @@ public class DropSet {
         StringBuilder s = new StringBuilder();
         s.append(ChatColor.YELLOW).append(_id);
         s.append(ChatColor.WHITE).append(": ");
-        s.append(ChatColor.YELLOW).append(isSingle() ? "single" : "multiple");
+        s.append(ChatColor.YELLOW).append(isSingle() ? "single"
+                                          : (_distinctCount != 0) ? "distinct " + _distinctCount
+                                                                  : "multiple");
+        if (_rolls != 1) {
+            s.append(ChatColor.WHITE).append(" x ").append(ChatColor.YELLOW).append(_rolls);
+        }
         return s.toString();
     }
 
@@ -308,15 +509,26 @@ public class DropSet {
      * Get a {@link WeightedSelection} for use when this
      * {@link DropSet#isSingle()}.
      * 
+     * The selection is cached until {@link #invalidateWeightedSelection()} is
+     * called.
+     * 
      * @param allowRestricted if true, restricted drops are included in the
      *        WeightedSelection.
      * @return a WeightedSelection<Drop> containing all allowed drops.
      */
     protected WeightedSelection<Drop> getWeightedSelection(boolean allowRestricted) {
-        WeightedSelection<Drop> selection = new WeightedSelection<Drop>();
-        for (Drop drop : _drops.values()) {
-            if (allowRestricted || !drop.isRestricted()) {
-                selection.addChoice(drop, drop.getDropChance());
+        WeightedSelection<Drop> selection = allowRestricted ? _restrictedSelectionCache : _selectionCache;
+        if (selection == null) {
+            selection = new WeightedSelection<Drop>();
+            for (Drop drop : _drops.values()) {
+                if (allowRestricted || !drop.isRestricted()) {
+                    selection.addChoice(drop, drop.getDropChance());
+                }
+            }
+            if (allowRestricted) {
+                _restrictedSelectionCache = selection;
+            } else {
+                _selectionCache = selection;
             }
         }
         return selection;
@@ -335,13 +547,30 @@ public class DropSet {
 
     /**
      * If _single is true (single {@link Drop} only) this member caches a
-     * {@link WeightedSelection} computed from all drops. The cache is
-     * invalidated by adding or removing a {@link Drop}, or explicitly calling
-     * {@link #invalidateWeightedSelection()} in the case where a {@link Drop}s
-     * chance is altered.
+     * {@link WeightedSelection} computed from all unrestricted drops. The
+     * cache is invalidated by adding or removing a {@link Drop}, or explicitly
+     * calling {@link #invalidateWeightedSelection()} in the case where a
+     * {@link Drop}s chance is altered.
      */
     protected WeightedSelection<Drop> _selectionCache;
 
+    /**
+     * As for _selectionCache, but including restricted drops.
+     */
+    protected WeightedSelection<Drop> _restrictedSelectionCache;
+
+    /**
+     * If _distinctCount is non-zero, this member caches the
+     * {@link DistinctWeightedSelection} of unrestricted drops. It is
+     * invalidated along with _selectionCache.
+     */
+    protected DistinctWeightedSelection<Drop> _distinctSelectionCache;
+
+    /**
+     * As for _distinctSelectionCache, but including restricted drops.
+     */
+    protected DistinctWeightedSelection<Drop> _restrictedDistinctSelectionCache;
+
     /**
      * If true, only a single {@link Drop} can be selected and drop chances are
      * treated as weights in a {@link WeightedSelection}. If false, multiple
@@ -349,4 +578,15 @@ public class DropSet {
      */
     protected boolean _single;
 
+    /**
+     * If non-zero, this many distinct {@link Drop}s are selected without
+     * replacement on each roll, with drop chances treated as weights.
+     */
+    protected int _distinctCount;
+
+    /**
+     * The number of times the DropSet is rolled each time it generates drops.
+     */
+    protected int _rolls = 1;
+
 } // class DropSet
\ No newline at end of file
@@ -1,7 +1,9 @@
 package nu.nerd.beastmaster;
 
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.logging.Logger;
 
@@ -43,26 +45,35 @@ public class ItemManager {
      * 
      * If a custom item with the specified ID has not been created and the ID
      * corresponds to a vanilla Material, create a transient (not saved) Item
-     * for the Material, on the fly.
+     * for the Material, on the fly. Implicit Items are cached, as are up to
+     * {@link #MAX_UNKNOWN_IDS} IDs that are neither custom items nor
+     * Materials, so repeated lookups do not allocate. The bound stops
+     * lookups of arbitrary IDs, e.g. typed in commands, from growing the
+     * cache without limit.
      * 
      * @param id the case-insensitive ID of the Item to find.
      * @return the Item with the specified ID, or an automatically generated
      *         Item corresponding to vanilla Materials.
      */
     public Item getItem(String id) {
-        Item item = _items.get(id.toLowerCase());
+        String lowerId = id.toLowerCase();
+        Item item = _items.get(lowerId);
         if (item != null) {
             return item;
         }
-
-        try {
-            String upperId = id.toUpperCase();
-            Material material = Material.valueOf(upperId);
-            return new Item(upperId, new ItemStack(material), true);
-        } catch (IllegalArgumentException ex) {
+        if (_unknownIds.contains(lowerId)) {
+            return null;
         }
 
-        return null;
+        Material material = Material.getMaterial(id.toUpperCase());
+        if (material == null) {
+            if (_unknownIds.size() < MAX_UNKNOWN_IDS) {
+                _unknownIds.add(lowerId);
+            }
+            return null;
+        }
+        return _implicitItems.computeIfAbsent(material,
+                                              m -> new Item(m.name(), new ItemStack(m), true));
     }
 
     // ------------------------------------------------------------------------
@@ -81,6 +92,7 @@ public class ItemManager {
         }
 
         _items.put(id.toLowerCase(), new Item(id, itemStack, false));
+        clearCaches();
     }
 
     // ------------------------------------------------------------------------
@@ -91,9 +103,22 @@ public class ItemManager {
      * @return the Item, or null if not found.
      */
     public Item removeItem(String id) {
+        clearCaches();
         return _items.remove(id.toLowerCase());
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return a number that changes whenever an Item is defined or removed.
+     * 
+     * {@link Drop}s use this to tell when their resolved Item is stale.
+     * 
+     * @return the modification count.
+     */
+    public int getVersion() {
+        return _version;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Load all the items from the plugin configuration.
@@ -130,6 +155,18 @@ public class ItemManager {
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Forget cached implicit Items and unknown IDs, and bump the version.
+     * 
+     * Called whenever an Item is defined or removed.
+     */
+    protected void clearCaches() {
+        _implicitItems.clear();
+        _unknownIds.clear();
+        ++_version;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Pre-define some items.
@@ -140,10 +177,30 @@ public class ItemManager {
     }
 
     // ------------------------------------------------------------------------
+    /**
+     * The maximum number of unknown IDs cached.
+     */
+    protected static final int MAX_UNKNOWN_IDS = 1024;
+
     /**
      * Custom items for drops, indexed by lower case ID.
      * 
      * Use a LinkedHashMap to preserve Item definition order when iterating.
      */
     protected HashMap<String, Item> _items = new LinkedHashMap<>();
+
+    /**
+     * Incremented whenever an Item is defined or removed.
+     */
+    protected int _version;
+
+    /**
+     * Cache of implicitly defined Items of vanilla Materials.
+     */
+    protected EnumMap<Material, Item> _implicitItems = new EnumMap<>(Material.class);
+
+    /**
+     * Lower case IDs that are neither custom items nor Materials.
+     */
+    protected HashSet<String> _unknownIds = new HashSet<>();
 } // class ItemManager
\ No newline at end of file
@@ -44,6 +44,7 @@ public class LootManager {
      */
     public void addDropSet(DropSet drops) {
         _idToDrops.put(drops.getId().toLowerCase(), drops);
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -54,6 +55,7 @@ public class LootManager {
      */
     public void removeDropSet(String id) {
         _idToDrops.remove(id.toLowerCase());
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -75,6 +77,7 @@ public class LootManager {
      */
     public void load(FileConfiguration config, Logger logger) {
         _idToDrops.clear();
+        BeastMaster.ZONES.invalidateRules();
 
         ConfigurationSection lootsSection = config.getConfigurationSection("loots");
         if (lootsSection == null) {
@@ -87,6 +90,20 @@ public class LootManager {
             drops.load(section, logger);
             addDropSet(drops);
         }
+        compile();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Resolve the items and mob types of all drops of all loot tables.
+     * 
+     * Drops whose items or mob types are subsequently redefined are resolved
+     * again when next used.
+     */
+    public void compile() {
+        for (DropSet drops : _idToDrops.values()) {
+            drops.compile();
+        }
     }
 
     // ------------------------------------------------------------------------
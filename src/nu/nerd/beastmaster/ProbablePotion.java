@@ -70,7 +70,7 @@ public class ProbablePotion implements Comparable<ProbablePotion> {
      * @param entity the entity.
      */
     public void apply(LivingEntity entity) {
-        if (Math.random() < _chance) {
+        if (Util.random() < _chance) {
             entity.addPotionEffect(_potionEffect, true);
         }
     }
@@ -0,0 +1,215 @@
+package nu.nerd.beastmaster;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+
+// ----------------------------------------------------------------------------
+/**
+ * The source of all random numbers used by BeastMaster.
+ *
+ * Each thread has its own RandomSource, returned by {@link #current()}, so
+ * random numbers can be drawn without contention or locking from any thread.
+ * Each is backed by a SplittableRandom, which is both faster and
+ * statistically better than java.util.Random.
+ *
+ * Outcomes can be made reproducible by seeding the current thread with
+ * {@link #seed(long)}, or only for the duration of one task, such as the
+ * handling of a single event, with {@link #withSeed(long, Supplier)}.
+ *
+ * RandomSource extends java.util.Random so that it can be passed to code that
+ * expects one, but instances are not thread-safe and should not be shared
+ * between threads.
+ */
+public class RandomSource extends Random {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the RandomSource of the current thread.
+     *
+     * @return the RandomSource of the current thread.
+     */
+    public static RandomSource current() {
+        return CURRENT.get();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Replace the RandomSource of the current thread with one that has the
+     * specified seed.
+     *
+     * @param seed the seed.
+     */
+    public static void seed(long seed) {
+        CURRENT.set(new RandomSource(new SplittableRandom(seed)));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Run a task with the RandomSource of the current thread replaced by one
+     * that has the specified seed, then restore the previous RandomSource.
+     *
+     * @param seed the seed.
+     * @param task the task.
+     * @return the result of the task.
+     */
+    public static <T> T withSeed(long seed, Supplier<T> task) {
+        RandomSource previous = CURRENT.get();
+        seed(seed);
+        try {
+            return task.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param generator the underlying generator.
+     */
+    protected RandomSource(SplittableRandom generator) {
+        _generator = generator;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reseed the underlying generator.
+     *
+     * @param seed the seed.
+     */
+    @Override
+    public void setSeed(long seed) {
+        // Called from the Random constructor before _generator is assigned.
+        _generator = new SplittableRandom(seed);
+        _haveNextNextGaussian = false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.Random#next(int)
+     */
+    @Override
+    protected int next(int bits) {
+        return (int) (_generator.nextLong() >>> (64 - bits));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.Random#nextInt()
+     */
+    @Override
+    public int nextInt() {
+        return _generator.nextInt();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.Random#nextInt(int)
+     */
+    @Override
+    public int nextInt(int bound) {
+        return _generator.nextInt(bound);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.Random#nextLong()
+     */
+    @Override
+    public long nextLong() {
+        return _generator.nextLong();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.Random#nextDouble()
+     */
+    @Override
+    public double nextDouble() {
+        return _generator.nextDouble();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.util.Random#nextBoolean()
+     */
+    @Override
+    public boolean nextBoolean() {
+        return _generator.nextBoolean();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a normally distributed double with mean 0 and standard deviation
+     * 1, drawn from the underlying generator.
+     *
+     * This overrides java.util.Random's implementation so that the spare
+     * value of each pair, which Random caches in a private field that
+     * setSeed() cannot clear, is instead held here and discarded on reseeding.
+     *
+     * @see java.util.Random#nextGaussian()
+     */
+    @Override
+    public double nextGaussian() {
+        if (_haveNextNextGaussian) {
+            _haveNextNextGaussian = false;
+            return _nextNextGaussian;
+        }
+
+        // Marsaglia's polar method, as used by java.util.Random.
+        double v1, v2, s;
+        do {
+            v1 = 2 * _generator.nextDouble() - 1;
+            v2 = 2 * _generator.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        _nextNextGaussian = v2 * multiplier;
+        _haveNextNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a new unseeded RandomSource for a thread.
+     *
+     * SplittableRandom.split() is not thread-safe, hence the synchronization.
+     *
+     * @return a new RandomSource.
+     */
+    protected static RandomSource newThreadSource() {
+        synchronized (SEEDS) {
+            return new RandomSource(SEEDS.split());
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Generator from which each thread's unseeded generator is split.
+     */
+    protected static final SplittableRandom SEEDS = new SplittableRandom();
+
+    /**
+     * The RandomSource of each thread.
+     */
+    protected static final ThreadLocal<RandomSource> CURRENT = ThreadLocal.withInitial(RandomSource::newThreadSource);
+
+    /**
+     * The underlying generator.
+     */
+    protected SplittableRandom _generator;
+
+    /**
+     * The second value of the last pair of normally distributed values.
+     */
+    protected double _nextNextGaussian;
+
+    /**
+     * True if _nextNextGaussian has not yet been returned.
+     *
+     * This has no initialiser, since setSeed() is called from the Random
+     * constructor before field initialisers run.
+     */
+    protected boolean _haveNextNextGaussian;
+} // class RandomSource
\ No newline at end of file
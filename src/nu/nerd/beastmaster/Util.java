@@ -6,7 +6,6 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Random;
 import java.util.Set;
 import java.util.function.Function;
 
@@ -407,7 +406,7 @@ public class Util {
      * @return a random integer in the range [0,values-1].
      */
     public static int randomInt(int values) {
-        return _random.nextInt(values);
+        return RandomSource.current().nextInt(values);
     }
 
     // ------------------------------------------------------------------------
@@ -418,7 +417,7 @@ public class Util {
      * @return a random selection from the list.
      */
     public static <T> T randomChoice(ArrayList<T> options) {
-        return options.get(_random.nextInt(options.size()));
+        return options.get(RandomSource.current().nextInt(options.size()));
     }
 
     // ------------------------------------------------------------------------
@@ -430,7 +429,7 @@ public class Util {
      * @return a random integer in the range [min,max].
      */
     public static int random(int min, int max) {
-        return min + _random.nextInt(max - min + 1);
+        return min + RandomSource.current().nextInt(max - min + 1);
     }
 
     // ------------------------------------------------------------------------
@@ -442,7 +441,7 @@ public class Util {
      * @return a random double in the range [min,max].
      */
     public static double random(double min, double max) {
-        return min + _random.nextDouble() * (max - min);
+        return min + RandomSource.current().nextDouble() * (max - min);
     }
 
     // ------------------------------------------------------------------------
@@ -452,7 +451,136 @@ public class Util {
      * @return a random double in the range [0.0,1.0).
      */
     public static double random() {
-        return _random.nextDouble();
+        return RandomSource.current().nextDouble();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a random sample of a binomial distribution: the number of
+     * successes in n independent trials with probability p of success.
+     *
+     * The sample is exact, i.e. distributed exactly as the count of
+     * successes from rolling each trial separately. Means below
+     * {@link #BINOMIAL_INVERSION_LIMIT} are sampled by inversion, in time
+     * proportional to the mean. Larger means use Hormann's BTRD algorithm
+     * (transformed rejection with decomposition), which takes constant
+     * expected time regardless of n and p.
+     *
+     * @param n the number of trials.
+     * @param p the probability of success of each trial.
+     * @return the number of successes, in the range [0,n].
+     */
+    public static int binomial(int n, double p) {
+        if (n <= 0 || p <= 0) {
+            return 0;
+        }
+        if (p >= 1) {
+            return n;
+        }
+        if (p > 0.5) {
+            return n - binomial(n, 1 - p);
+        }
+
+        RandomSource random = RandomSource.current();
+        return (n * p < BINOMIAL_INVERSION_LIMIT) ? binomialInversion(n, p, random)
+                                                  : binomialRejection(n, p, random);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return an exact random sample of a binomial distribution by inversion,
+     * in time proportional to the mean.
+     *
+     * @param n      the number of trials.
+     * @param p      the probability of success of each trial, in (0,0.5].
+     * @param random the source of random numbers.
+     * @return the number of successes, in the range [0,n].
+     */
+    protected static int binomialInversion(int n, double p, RandomSource random) {
+        // Walk up the cumulative distribution, computing each probability
+        // from the previous one: P(x) = P(x-1) * (n-x+1)/x * p/q.
+        double q = 1 - p;
+        double ratio = p / q;
+        double probability = Math.pow(q, n);
+        double u = random.nextDouble();
+        int x = 0;
+        while (u > probability && x < n) {
+            u -= probability;
+            ++x;
+            probability *= ratio * (n - x + 1) / x;
+        }
+        return x;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return an exact random sample of a binomial distribution by the BTRD
+     * algorithm, in constant expected time.
+     *
+     * See W. Hormann, "The generation of binomial random variates", Journal
+     * of Statistical Computation and Simulation 46 (1993). Most candidates
+     * are accepted by the cheap squeeze test; the rest are checked against
+     * the exact ratio of probabilities, computed with Stirling's series.
+     *
+     * @param n      the number of trials.
+     * @param p      the probability of success of each trial, in (0,0.5],
+     *               where n * p is at least {@link #BINOMIAL_INVERSION_LIMIT}.
+     * @param random the source of random numbers.
+     * @return the number of successes, in the range [0,n].
+     */
+    protected static int binomialRejection(int n, double p, RandomSource random) {
+        double q = 1 - p;
+        double spq = Math.sqrt(n * p * q);
+        double b = 1.15 + 2.53 * spq;
+        double a = -0.0873 + 0.0248 * b + 0.01 * p;
+        double c = n * p + 0.5;
+        double vr = 0.92 - 4.2 / b;
+        double alpha = (2.83 + 5.1 / b) * spq;
+        double lpq = Math.log(p / q);
+        int m = (int) Math.floor((n + 1) * p);
+        double h = logFactorialTail(m) + logFactorialTail(n - m);
+
+        while (true) {
+            double u = random.nextDouble() - 0.5;
+            double v = random.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            int k = (int) Math.floor((2 * a / us + b) * u + c);
+            if (k < 0 || k > n) {
+                continue;
+            }
+            if (us >= 0.07 && v <= vr) {
+                return k;
+            }
+
+            // Accept if v is below the ratio P(k)/P(m), up to the scaling
+            // of the hat function.
+            v = Math.log(v * alpha / (a / (us * us) + b));
+            double bound = h - logFactorialTail(k) - logFactorialTail(n - k) +
+                           (m + 0.5) * Math.log((m + 1.0) / (n - m + 1.0)) +
+                           (n + 1) * Math.log((n - m + 1.0) / (n - k + 1.0)) +
+                           (k + 0.5) * Math.log((n - k + 1.0) / (k + 1.0)) +
+                           (k - m) * lpq;
+            if (v <= bound) {
+                return k;
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the error of Stirling's approximation to log(k!), i.e.
+     * log(k!) - (k + 0.5) * log(k + 1) + (k + 1) - log(sqrt(2 * pi)).
+     *
+     * @param k a non-negative integer.
+     * @return the error term.
+     */
+    protected static double logFactorialTail(int k) {
+        if (k < LOG_FACTORIAL_TAILS.length) {
+            return LOG_FACTORIAL_TAILS[k];
+        }
+        double k1 = k + 1.0;
+        double k1sq = k1 * k1;
+        return (1.0 / 12 - (1.0 / 360 - 1.0 / 1260 / k1sq) / k1sq) / k1;
     }
 
     // ------------------------------------------------------------------------
@@ -469,7 +597,19 @@ public class Util {
     protected static EnumSet<Material> NOT_FULL_BLOCK_MATERIALS;
 
     /**
-     * Random number generator.
+     * Mean below which {@link #binomial(int, double)} samples by inversion
+     * rather than by rejection.
+     */
+    protected static final double BINOMIAL_INVERSION_LIMIT = 10;
+
+    /**
+     * Exact values of {@link #logFactorialTail(int)} for small arguments,
+     * where the series converges slowly.
      */
-    protected static Random _random = new Random();
+    protected static final double[] LOG_FACTORIAL_TAILS = {
+        0.08106146679532726, 0.04134069595540929, 0.02767792568499834,
+        0.02079067210376509, 0.01664469118982119, 0.01387612882307075,
+        0.01189670994589177, 0.01041126526197209, 0.00925546218271273,
+        0.00833056343336287
+    };
 } // class Util
\ No newline at end of file
@@ -14,6 +14,12 @@ import java.util.stream.Collectors;
  * 
  * The probability of choosing a particular element is its weight divided by the
  * sum of all weights.
+ * 
+ * Choices are stored in a map from cumulative weight to choice, from which
+ * {@link #choose()} lazily builds an alias table (Vose's variant of Walker's
+ * alias method) of primitive arrays, so that each selection takes constant
+ * time regardless of the number of choices. The table is rebuilt after the
+ * choices change.
  */
 public class WeightedSelection<E> {
     // --------------------------------------------------------------------------
@@ -34,16 +40,20 @@ public class WeightedSelection<E> {
     // --------------------------------------------------------------------------
     /**
      * Default constructor.
+     * 
+     * Random numbers are drawn from the {@link RandomSource} of the calling
+     * thread.
      */
     public WeightedSelection() {
-        this(new Random());
+        this(null);
     }
 
     // --------------------------------------------------------------------------
     /**
      * Constructor.
      * 
-     * @param random the random number generator to use.
+     * @param random the random number generator to use, or null to use the
+     *        {@link RandomSource} of the calling thread.
      */
     public WeightedSelection(Random random) {
         _random = random;
@@ -56,6 +66,7 @@ public class WeightedSelection<E> {
     public void clear() {
         _total = 0;
         _choices.clear();
+        _aliasChoices = null;
     }
 
     // --------------------------------------------------------------------------
@@ -70,6 +81,7 @@ public class WeightedSelection<E> {
         if (weight > 0) {
             _total += weight;
             _choices.put(_total, choice);
+            _aliasChoices = null;
         }
     }
 
@@ -108,6 +120,7 @@ public class WeightedSelection<E> {
 
         _total = newTotal;
         _choices = newChoices;
+        _aliasChoices = null;
         return removed;
     }
 
@@ -119,15 +132,82 @@ public class WeightedSelection<E> {
      * @return a randomly selected element, or null if there is nothing to
      *         choose.
      */
+    @SuppressWarnings("unchecked")
     public E choose() {
-        double value = _random.nextDouble() * _total;
-
-        // Using floorEntry() is more correct here in the sense that it gives
-        // the lower choice right on the boundary, and Random.nextDouble()
-        // returns[0.0,1.0). But floorEntry() makes it much harder to extract
-        // weights and thresholds from the entries.
-        Entry<Double, E> entry = _choices.ceilingEntry(value);
-        return (entry != null) ? entry.getValue() : null;
+        if (_aliasChoices == null) {
+            buildAliasTable();
+        }
+
+        int count = _aliasChoices.length;
+        if (count == 0) {
+            return null;
+        }
+        Random random = random();
+        int column = random.nextInt(count);
+        return (E) _aliasChoices[(random.nextDouble() < _aliasProbabilities[column]) ? column : _aliases[column]];
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * Build the alias table from the current choices.
+     * 
+     * Each choice has one column, whose probability is the choice's weight
+     * scaled so that the mean is 1. Columns that are under-full are topped up
+     * from over-full columns, which become their aliases, until every column
+     * is full. Choosing a uniformly random column and then either that
+     * column's choice or its alias reproduces the original weights.
+     */
+    protected void buildAliasTable() {
+        int count = _choices.size();
+        Object[] choices = new Object[count];
+        double[] probabilities = new double[count];
+        int[] aliases = new int[count];
+
+        int i = 0;
+        double keyBefore = 0;
+        for (Entry<Double, E> entry : _choices.entrySet()) {
+            choices[i] = entry.getValue();
+            probabilities[i] = (entry.getKey() - keyBefore) * count / _total;
+            keyBefore = entry.getKey();
+            ++i;
+        }
+
+        // Stacks of column indices, sharing one array: under-full columns
+        // grow up from the start and over-full columns down from the end.
+        int[] work = new int[count];
+        int small = 0;
+        int large = count;
+        for (i = 0; i < count; ++i) {
+            if (probabilities[i] < 1.0) {
+                work[small++] = i;
+            } else {
+                work[--large] = i;
+            }
+        }
+
+        while (small > 0 && large < count) {
+            int less = work[--small];
+            int more = work[large++];
+            aliases[less] = more;
+            probabilities[more] = (probabilities[more] + probabilities[less]) - 1.0;
+            if (probabilities[more] < 1.0) {
+                work[small++] = more;
+            } else {
+                work[--large] = more;
+            }
+        }
+
+        // Any remaining columns are full, up to rounding error.
+        while (small > 0) {
+            probabilities[work[--small]] = 1.0;
+        }
+        while (large < count) {
+            probabilities[work[large++]] = 1.0;
+        }
+
+        _aliasProbabilities = probabilities;
+        _aliases = aliases;
+        _aliasChoices = choices;
     }
 
     // --------------------------------------------------------------------------
@@ -166,7 +246,18 @@ public class WeightedSelection<E> {
 
     // --------------------------------------------------------------------------
     /**
-     * The random number generator.
+     * Return the random number generator to use.
+     * 
+     * @return the random number generator to use.
+     */
+    protected Random random() {
+        return (_random != null) ? _random : RandomSource.current();
+    }
+
+    // --------------------------------------------------------------------------
+    /**
+     * The random number generator, or null to use the RandomSource of the
+     * calling thread.
      */
     protected Random _random;
 
@@ -179,4 +270,21 @@ public class WeightedSelection<E> {
      * Sum of all of the weights of all choices.
      */
     protected NavigableMap<Double, E> _choices = new TreeMap<Double, E>();
+
+    /**
+     * The choice of each column of the alias table, or null if the table must
+     * be rebuilt.
+     */
+    protected Object[] _aliasChoices;
+
+    /**
+     * The probability of choosing each column's own choice rather than its
+     * alias.
+     */
+    protected double[] _aliasProbabilities;
+
+    /**
+     * The index of the alias of each column.
+     */
+    protected int[] _aliases;
 } // class WeightedSelection
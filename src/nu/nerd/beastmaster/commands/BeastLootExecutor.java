@@ -32,7 +32,7 @@ public class BeastLootExecutor extends ExecutorBase {
     public BeastLootExecutor() {
         super("beast-loot", "help", "add", "remove", "info", "list",
               "add-drop", "remove-drop", "list-drops",
-              "single", "objective", "logged", "restricted", "always-fits",
+              "single", "distinct", "rolls", "objective", "logged", "restricted", "always-fits",
               "sound", "xp", "invulnerable", "glowing", "direct");
     }
 
@@ -295,6 +295,68 @@ public class BeastLootExecutor extends ExecutorBase {
                                    ChatColor.GOLD + " drop operation.");
                 return true;
 
+            } else if (args[0].equals("distinct")) {
+                if (args.length != 3) {
+                    Commands.invalidArguments(sender, getName() + " distinct <loot-id> <count>");
+                    return true;
+                }
+
+                String lootIdArg = args[1];
+                DropSet dropSet = BeastMaster.LOOTS.getDropSet(lootIdArg);
+                if (dropSet == null) {
+                    Commands.errorNull(sender, "loot table", lootIdArg);
+                    return true;
+                }
+
+                String countArg = args[2];
+                Integer count = Commands.parseNumber(countArg, Commands::parseInt,
+                                                     x -> x >= 0,
+                                                     () -> sender.sendMessage(ChatColor.RED +
+                                                                              "The number of distinct drops must be a non-negative integer."),
+                                                     null);
+                if (count == null) {
+                    return true;
+                }
+
+                dropSet.setDistinctCount(count);
+                BeastMaster.CONFIG.save();
+                sender.sendMessage(ChatColor.GOLD + "Loot table " + ChatColor.YELLOW + lootIdArg +
+                                   ChatColor.GOLD + " is now configured for " +
+                                   ChatColor.YELLOW + (count != 0 ? count + " distinct" : "multiple") +
+                                   ChatColor.GOLD + " drop operation.");
+                return true;
+
+            } else if (args[0].equals("rolls")) {
+                if (args.length != 3) {
+                    Commands.invalidArguments(sender, getName() + " rolls <loot-id> <count>");
+                    return true;
+                }
+
+                String lootIdArg = args[1];
+                DropSet dropSet = BeastMaster.LOOTS.getDropSet(lootIdArg);
+                if (dropSet == null) {
+                    Commands.errorNull(sender, "loot table", lootIdArg);
+                    return true;
+                }
+
+                String countArg = args[2];
+                Integer count = Commands.parseNumber(countArg, Commands::parseInt,
+                                                     x -> x >= 1,
+                                                     () -> sender.sendMessage(ChatColor.RED +
+                                                                              "The number of rolls must be a positive integer."),
+                                                     null);
+                if (count == null) {
+                    return true;
+                }
+
+                dropSet.setRolls(count);
+                BeastMaster.CONFIG.save();
+                sender.sendMessage(ChatColor.GOLD + "Loot table " + ChatColor.YELLOW + lootIdArg +
+                                   ChatColor.GOLD + " will now be rolled " +
+                                   ChatColor.YELLOW + count +
+                                   ChatColor.GOLD + (count == 1 ? " time" : " times") + " per drop.");
+                return true;
+
             } else if (args[0].equals("objective")) {
                 if (args.length != 4) {
                     Commands.invalidArguments(sender, getName() + " objective <loot-id> <item-id> (<obj-id>|none)");
@@ -401,6 +463,7 @@ public class BeastLootExecutor extends ExecutorBase {
                 }
 
                 drop.setRestricted(restricted);
+                dropSet.invalidateWeightedSelection();
                 String change = (restricted ? "Restricted" : "Unrestricted");
                 sender.sendMessage(ChatColor.GOLD + change + " dropping of " + drop.getLongDescription());
                 BeastMaster.CONFIG.save();
@@ -1,5 +1,6 @@
 package nu.nerd.beastmaster.commands;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
@@ -15,6 +16,7 @@ import org.bukkit.Material;
 import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
 import org.bukkit.util.RayTraceResult;
@@ -27,7 +29,9 @@ import nu.nerd.beastmaster.zones.Lexer;
 import nu.nerd.beastmaster.zones.ParseError;
 import nu.nerd.beastmaster.zones.Parser;
 import nu.nerd.beastmaster.zones.Zone;
+import nu.nerd.beastmaster.zones.ZoneAnalyser;
 import nu.nerd.beastmaster.zones.ZonePredicate;
+import nu.nerd.beastmaster.zones.ZoneProfiler;
 
 // ----------------------------------------------------------------------------
 /**
@@ -43,7 +47,7 @@ public class BeastZoneExecutor extends ExecutorBase {
             "add", "remove", "parent", "spec", "list", "move-child", "get",
             "replace-mob", "list-replacements",
             "add-block", "remove-block", "list-blocks",
-            "inherit-replacements", "inherit-blocks", "replaces-spawner-mobs");
+            "inherit-replacements", "inherit-blocks", "replaces-spawner-mobs", "stats", "analyse");
     }
 
     // ------------------------------------------------------------------------
@@ -93,7 +97,7 @@ public class BeastZoneExecutor extends ExecutorBase {
                 String specArg = String.join(" ", Arrays.copyOfRange(args, 3, args.length));
 
                 Zone zone = BeastMaster.ZONES.getZone(zoneArg);
-                if (zone != null) {
+                if (zone != null || BeastMaster.ZONES.getUnloadedZone(zoneArg) != null) {
                     Commands.errorNotNull(sender, "zone", zoneArg);
                     return true;
                 }
@@ -114,6 +118,7 @@ public class BeastZoneExecutor extends ExecutorBase {
                 BeastMaster.CONFIG.save();
                 sender.sendMessage(ChatColor.GOLD + "Added zone " + zone.getDescription() +
                                    ChatColor.GOLD + ".");
+                warnIfInReferenceCycle(sender, zone);
 
                 return true;
 
@@ -213,6 +218,7 @@ public class BeastZoneExecutor extends ExecutorBase {
                 sender.sendMessage(ChatColor.GOLD + "The old specification was " +
                                    ChatColor.WHITE + oldSpecification +
                                    ChatColor.GOLD + ".");
+                warnIfInReferenceCycle(sender, zone);
                 return true;
 
             } else if (args[0].equals("list")) {
@@ -225,7 +231,12 @@ public class BeastZoneExecutor extends ExecutorBase {
                     String parentArg = args[1];
                     Zone parentZone = BeastMaster.ZONES.getZone(parentArg);
                     if (parentZone == null) {
-                        Commands.errorNull(sender, "zone", parentArg);
+                        ConfigurationSection unloadedSection = BeastMaster.ZONES.getUnloadedZone(parentArg);
+                        if (unloadedSection == null) {
+                            Commands.errorNull(sender, "zone", parentArg);
+                        } else {
+                            listUnloadedZone(sender, unloadedSection);
+                        }
                         return true;
                     }
 
@@ -244,6 +255,16 @@ public class BeastZoneExecutor extends ExecutorBase {
                     for (Zone zone : BeastMaster.ZONES.getRootZones()) {
                         sender.sendMessage(zone.getDescription());
                     }
+
+                    List<String> unloadedRootIds = BeastMaster.ZONES.getUnloadedRootIds();
+                    if (!unloadedRootIds.isEmpty()) {
+                        sender.sendMessage(ChatColor.GOLD + "Root zones of unloaded worlds:");
+                        for (String rootId : unloadedRootIds) {
+                            int zoneCount = BeastMaster.ZONES.getUnloadedZoneCount(rootId);
+                            sender.sendMessage(ChatColor.YELLOW + rootId + ChatColor.GRAY +
+                                               " (" + zoneCount + (zoneCount == 1 ? " zone)" : " zones)"));
+                        }
+                    }
                 }
                 return true;
 
@@ -288,6 +309,7 @@ public class BeastZoneExecutor extends ExecutorBase {
 
                 Zone movedZone = zone.children().remove(fromPos - 1);
                 zone.children().add(toPos - 1, movedZone);
+                BeastMaster.ZONES.invalidateCache();
                 BeastMaster.CONFIG.save();
 
                 sender.sendMessage(ChatColor.GOLD + "Zone " + ChatColor.YELLOW + movedZone.getId() +
@@ -611,6 +633,14 @@ public class BeastZoneExecutor extends ExecutorBase {
                                    ChatColor.YELLOW + (replacesSpawnerMobs ? "replace" : "not replace") +
                                    ChatColor.GOLD + " mobs spawned by spawner blocks.");
                 return true;
+
+            } else if (args[0].equals("stats")) {
+                onCommandStats(sender, args);
+                return true;
+
+            } else if (args[0].equals("analyse")) {
+                onCommandAnalyse(sender, args);
+                return true;
             }
         }
 
@@ -796,4 +826,258 @@ public class BeastZoneExecutor extends ExecutorBase {
             return null;
         }
     }
+
+    // ------------------------------------------------------------------------
+    /**
+     * List a Zone in a World that is not loaded, and its children, from the
+     * Zone's configuration.
+     *
+     * @param sender      the command sender.
+     * @param zoneSection the Zone's configuration section.
+     */
+    protected static void listUnloadedZone(CommandSender sender, ConfigurationSection zoneSection) {
+        sender.sendMessage(ChatColor.GOLD + "Zone: " + describeUnloadedZone(zoneSection) +
+                           ChatColor.GRAY + " (world not loaded)");
+        List<String> childIds = zoneSection.getStringList("children");
+        if (!childIds.isEmpty()) {
+            sender.sendMessage(ChatColor.GOLD + "Children:");
+            for (int i = 0; i < childIds.size(); ++i) {
+                ConfigurationSection childSection = BeastMaster.ZONES.getUnloadedZone(childIds.get(i));
+                sender.sendMessage(ChatColor.WHITE + "(" + (i + 1) + ") " +
+                                   (childSection != null ? describeUnloadedZone(childSection)
+                                                         : ChatColor.YELLOW + childIds.get(i)));
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a brief description of a Zone in a World that is not loaded.
+     *
+     * @param zoneSection the Zone's configuration section.
+     * @return the description.
+     */
+    protected static String describeUnloadedZone(ConfigurationSection zoneSection) {
+        StringBuilder s = new StringBuilder();
+        s.append(ChatColor.YELLOW).append(zoneSection.getName());
+        int childCount = zoneSection.getStringList("children").size();
+        if (childCount != 0) {
+            s.append(ChatColor.GRAY).append(" (").append(childCount);
+            s.append(childCount == 1 ? " child)" : " children)");
+        }
+        String specification = zoneSection.getString("specification");
+        if (specification != null && !specification.isEmpty()) {
+            s.append(ChatColor.WHITE).append(": ").append(specification);
+        }
+        return s.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse the "stats" sub-command.
+     *
+     * With no arguments, show zone lookup cache statistics and the most
+     * expensive Zones and predicates measured by the {@link ZoneProfiler}.
+     * "on" and "off" enable and disable profiling; "reset" zeroes the counts.
+     *
+     * @param sender the command sender.
+     * @param args   the command arguments.
+     */
+    protected void onCommandStats(CommandSender sender, String[] args) {
+        if (args.length > 2) {
+            Commands.invalidArguments(sender, getName() + " stats [on|off|reset]");
+            return;
+        }
+
+        if (args.length == 2) {
+            String actionArg = args[1];
+            if (actionArg.equalsIgnoreCase("on") || actionArg.equalsIgnoreCase("off")) {
+                ZoneProfiler.setEnabled(actionArg.equalsIgnoreCase("on"));
+                sender.sendMessage(ChatColor.GOLD + "Zone profiling is now " +
+                                   ChatColor.YELLOW + (ZoneProfiler.isEnabled() ? "on" : "off") +
+                                   ChatColor.GOLD + ".");
+            } else if (actionArg.equalsIgnoreCase("reset")) {
+                ZoneProfiler.reset();
+                sender.sendMessage(ChatColor.GOLD + "Zone profiling counts have been reset.");
+            } else {
+                Commands.invalidArguments(sender, getName() + " stats [on|off|reset]");
+            }
+            return;
+        }
+
+        long hits = BeastMaster.ZONES.getCacheHits();
+        long misses = BeastMaster.ZONES.getCacheMisses();
+        long lookups = hits + misses;
+        sender.sendMessage(ChatColor.GOLD + "Zone lookups: " +
+                           ChatColor.YELLOW + lookups +
+                           ChatColor.GOLD + ", cached: " +
+                           ChatColor.YELLOW + hits +
+                           ChatColor.GOLD + " (" + ChatColor.YELLOW +
+                           String.format("%.1f%%", (lookups != 0) ? 100.0 * hits / lookups : 0.0) +
+                           ChatColor.GOLD + ").");
+        sender.sendMessage(ChatColor.GOLD + "Zone profiling is " +
+                           ChatColor.YELLOW + (ZoneProfiler.isEnabled() ? "on" : "off") +
+                           ChatColor.GOLD + ".");
+        showProfiles(sender, "Zones", ZoneProfiler.getZoneProfiles());
+        showProfiles(sender, "Predicates", ZoneProfiler.getPredicateProfiles());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Show the most expensive of a list of Profiles, in descending order of
+     * total evaluation time.
+     *
+     * @param sender   the command sender.
+     * @param title    the title of the list.
+     * @param profiles the Profiles, sorted by descending total time.
+     */
+    protected static void showProfiles(CommandSender sender, String title, List<ZoneProfiler.Profile> profiles) {
+        if (profiles.isEmpty()) {
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GOLD + title + " by total evaluation time:");
+        for (ZoneProfiler.Profile profile : profiles.subList(0, Math.min(MAX_PROFILES, profiles.size()))) {
+            long evaluations = profile.getEvaluations();
+            sender.sendMessage(ChatColor.YELLOW + profile.getName() +
+                               ChatColor.WHITE + ": " + evaluations + " evaluations, " +
+                               String.format("%.1f%% true, %.2f ms total, %.0f ns mean",
+                                             100.0 * profile.getTrues() / evaluations,
+                                             profile.getNanos() * 1.0e-6,
+                                             profile.getMeanNanos()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Parse the "analyse" sub-command.
+     *
+     * Start a {@link ZoneAnalyser} on the specified World, defaulting to the
+     * player's World, and show the results when it completes.
+     *
+     * @param sender the command sender.
+     * @param args   the command arguments.
+     */
+    protected void onCommandAnalyse(CommandSender sender, String[] args) {
+        if (args.length > 2) {
+            Commands.invalidArguments(sender, getName() + " analyse [<world>]");
+            return;
+        }
+
+        World world;
+        if (args.length == 2) {
+            world = Bukkit.getWorld(args[1]);
+            if (world == null) {
+                sender.sendMessage(ChatColor.RED + "Invalid world name: " + args[1] + ".");
+                return;
+            }
+        } else {
+            if (!isInGame(sender)) {
+                return;
+            }
+            world = ((Player) sender).getWorld();
+        }
+
+        sender.sendMessage(ChatColor.GOLD + "Analysing the zones of " + ChatColor.YELLOW + world.getName() +
+                           ChatColor.GOLD + "...");
+        new ZoneAnalyser(BeastMaster.ZONES.getSnapshot(), world).start(results -> {
+            showAnalysis(sender, world, results);
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Show the results of a {@link ZoneAnalyser}.
+     *
+     * Each child Zone is listed under its parent with the percentages of the
+     * parent's sampled area where it wins, where it is shadowed by an earlier
+     * sibling and where it does not match, followed by the Zones that can be
+     * deleted or moved.
+     *
+     * @param sender  the command sender.
+     * @param world   the analysed World.
+     * @param results the results, or null if the analysis failed.
+     */
+    protected static void showAnalysis(CommandSender sender, World world, List<ZoneAnalyser.Result> results) {
+        if (results == null) {
+            sender.sendMessage(ChatColor.RED + "The analysis of " + world.getName() +
+                               " failed. Check the server log for details.");
+            return;
+        }
+        if (results.isEmpty()) {
+            sender.sendMessage(ChatColor.GOLD + "World " + ChatColor.YELLOW + world.getName() +
+                               ChatColor.GOLD + " has no child zones to analyse.");
+            return;
+        }
+
+        List<String> suggestions = new ArrayList<>();
+        Zone parent = null;
+        for (ZoneAnalyser.Result result : results) {
+            if (result.getParent() != parent) {
+                parent = result.getParent();
+                sender.sendMessage(ChatColor.GOLD + "Children of " + ChatColor.YELLOW + parent.getId() +
+                                   ChatColor.GOLD + (result.getSamples() == 0
+                                       ? " (no area could be sampled):"
+                                       : " (" + result.getSamples() + " samples):"));
+            }
+
+            int samples = result.getSamples();
+            if (samples == 0) {
+                sender.sendMessage(ChatColor.WHITE + "(" + (result.getIndex() + 1) + ") " +
+                                   ChatColor.YELLOW + result.getZone().getId());
+                continue;
+            }
+
+            String shadowedBy = (result.getShadowedBy() != null)
+                ? " (mostly by " + result.getShadowedBy().getId() + ")"
+                : "";
+            sender.sendMessage(ChatColor.WHITE + "(" + (result.getIndex() + 1) + ") " +
+                               ChatColor.YELLOW + result.getZone().getId() + ChatColor.WHITE +
+                               String.format(": wins %.1f%%, shadowed %.1f%%%s, no match %.1f%%",
+                                             100.0 * result.getWins() / samples,
+                                             100.0 * result.getShadowed() / samples,
+                                             shadowedBy,
+                                             100.0 * result.getUnmatched() / samples));
+
+            if (result.isDeletable()) {
+                suggestions.add(ChatColor.YELLOW + result.getZone().getId() + ChatColor.WHITE +
+                                (result.getShadowed() == 0 ? " never matches" : " is always shadowed") +
+                                " in " + parent.getId() + " and can be deleted.");
+            } else if (result.getMoveTo() >= 0) {
+                suggestions.add(ChatColor.YELLOW + result.getZone().getId() + ChatColor.WHITE +
+                                " can move from position " + (result.getIndex() + 1) +
+                                " to " + (result.getMoveTo() + 1) + " in " + parent.getId() +
+                                " to shorten lookups.");
+            }
+        }
+
+        if (suggestions.isEmpty()) {
+            sender.sendMessage(ChatColor.GOLD + "No zones need to be deleted or reordered.");
+        } else {
+            sender.sendMessage(ChatColor.GOLD + "Suggestions (estimated from samples):");
+            suggestions.forEach(sender::sendMessage);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Warn the command sender if a Zone is part of a cycle of zone()
+     * references, which makes references to it false everywhere.
+     *
+     * @param sender the command sender.
+     * @param zone   the Zone.
+     */
+    protected static void warnIfInReferenceCycle(CommandSender sender, Zone zone) {
+        if (BeastMaster.ZONES.isInReferenceCycle(zone)) {
+            sender.sendMessage(ChatColor.RED + "Warning: zone " + zone.getId() +
+                               " is part of a cycle of zone() references, so zone(\"" + zone.getId() +
+                               "\") is false everywhere.");
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Maximum number of Zones or predicates listed by "stats".
+     */
+    protected static final int MAX_PROFILES = 10;
 } // class BeastZoneExecutor
\ No newline at end of file
@@ -33,6 +33,7 @@ import nu.nerd.beastmaster.DropType;
 import nu.nerd.beastmaster.Item;
 import nu.nerd.beastmaster.PotionSet;
 import nu.nerd.beastmaster.SoundEffect;
+import nu.nerd.beastmaster.Util;
 import nu.nerd.entitymeta.EntityMeta;
 
 // ----------------------------------------------------------------------------
@@ -425,7 +426,7 @@ public class MobType {
                 // implicitly 100%.
                 MobProperty percent = getDerivedProperty("passenger-percent");
                 boolean hasPassenger = (percent.getValue() == null) ? true
-                                                                    : (Math.random() * 100 < (Double) percent.getValue());
+                                                                    : (Util.random() * 100 < (Double) percent.getValue());
                 if (!hasPassenger) {
                     return;
                 }
@@ -437,7 +438,7 @@ public class MobType {
                 if (drops != null) {
                     Drop drop = drops.chooseOneDrop(true);
                     if (drop.getDropType() == DropType.MOB) {
-                        mobType = BeastMaster.MOBS.getMobType(drop.getId());
+                        mobType = drop.getMobType();
                     }
                 } else {
                     mobType = BeastMaster.MOBS.getMobType(id);
@@ -466,7 +467,7 @@ public class MobType {
             }));
         addProperty(new MobProperty("baby-percent", DataType.DOUBLE,
             (mob, logger) -> {
-                boolean isBaby = (Math.random() * 100 < (Double) getDerivedProperty("baby-percent").getValue());
+                boolean isBaby = (Util.random() * 100 < (Double) getDerivedProperty("baby-percent").getValue());
                 if (mob instanceof Ageable) {
                     if (isBaby) {
                         ((Ageable) mob).setBaby();
@@ -480,7 +481,7 @@ public class MobType {
         addProperty(new MobProperty("charged-percent", DataType.DOUBLE,
             (mob, logger) -> {
                 if (mob instanceof Creeper) {
-                    ((Creeper) mob).setPowered(Math.random() * 100 < (Double) getDerivedProperty("charged-percent").getValue());
+                    ((Creeper) mob).setPowered(Util.random() * 100 < (Double) getDerivedProperty("charged-percent").getValue());
                 }
             }));
 
@@ -558,7 +559,7 @@ public class MobType {
             }));
         addProperty(new MobProperty("pick-up-percent", DataType.DOUBLE,
             (mob, logger) -> {
-                mob.setCanPickupItems(Math.random() * 100 < (Double) getDerivedProperty("pick-up-percent").getValue());
+                mob.setCanPickupItems(Util.random() * 100 < (Double) getDerivedProperty("pick-up-percent").getValue());
             }));
         addProperty(new MobProperty("potion-buffs", DataType.POTION_SET,
             (mob, logger) -> {
@@ -121,6 +121,7 @@ public class MobTypeManager {
      */
     public void addMobType(MobType type) {
         _idToType.put(type.getId().toLowerCase(), type);
+        ++_version;
     }
 
     // ------------------------------------------------------------------------
@@ -131,6 +132,7 @@ public class MobTypeManager {
      */
     public void removeMobType(String id) {
         _idToType.remove(id.toLowerCase());
+        ++_version;
     }
 
     // ------------------------------------------------------------------------
@@ -143,6 +145,20 @@ public class MobTypeManager {
         removeMobType(type.getId());
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return a number that changes whenever a {@link MobType} is added or
+     * removed.
+     * 
+     * {@link nu.nerd.beastmaster.Drop}s use this to tell when their resolved
+     * MobType is stale.
+     * 
+     * @return the modification count.
+     */
+    public int getVersion() {
+        return _version;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Load all the mob types from the plugin configuration.
@@ -200,6 +216,7 @@ public class MobTypeManager {
         updateAllowedMobEntityTypes();
 
         _idToType.clear();
+        ++_version;
         for (EntityType entityType : _allowedMobEntityTypes.values()) {
             addMobType(new MobType(getMobTypeId(entityType), entityType, true));
         }
@@ -234,4 +251,9 @@ public class MobTypeManager {
      */
     protected TreeMap<String, EntityType> _allowedMobEntityTypes;
 
+    /**
+     * Incremented whenever a {@link MobType} is added or removed.
+     */
+    protected int _version;
+
 } // class MobTypeManager
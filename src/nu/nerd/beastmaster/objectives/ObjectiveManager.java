@@ -319,7 +319,7 @@ public class ObjectiveManager {
      * @return a new objective, or null if it could not be spawned.
      */
     protected Objective spawnNewObjective(ObjectiveType objectiveType, Zone zone, Location dropLocation) {
-        double angleRadians = 2 * Math.PI * Math.random();
+        double angleRadians = 2 * Math.PI * Util.random();
         double range = Util.random(objectiveType.getMinRange(), objectiveType.getMaxRange());
         double dX = range * Math.cos(angleRadians);
         double dZ = range * Math.sin(angleRadians);
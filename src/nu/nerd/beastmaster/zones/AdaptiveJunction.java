@@ -0,0 +1,206 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.Arrays;
+
+import org.bukkit.World;
+
+// ----------------------------------------------------------------------------
+/**
+ * A {@link CompiledExpression} for '&' or '|' that reorders its operands
+ * according to their measured selectivity.
+ *
+ * The operands of a conjunction (disjunction) should be evaluated in
+ * ascending order of cost / P(false) (cost / P(true)), so that cheap operands
+ * that are likely to short-circuit the evaluation run first. Costs are the
+ * static estimates of {@link CostExpressionVisitor}; the probability that
+ * each operand decides the result is counted as the junction is evaluated.
+ * Every {@link #REORDER_PERIOD} evaluations, the operands are sorted by that
+ * ratio and the counts are halved, so that the order follows changes in
+ * where the junction is being tested. When the {@link ZoneProfiler} has
+ * measured the times of all operands, those replace the static estimates.
+ * Operands that are themselves operators, such as nested junctions, are
+ * profiled as a whole by the {@link ExpressionCompiler}, so measured costs
+ * also apply to junctions that mix predicates and sub-expressions.
+ *
+ * Operands are only ever reordered, never removed, so the result is the same
+ * as evaluating them in source order. The counts are advisory: lost updates
+ * from concurrent evaluations cannot affect correctness. Reordering is
+ * synchronized, so that each new order is a permutation of the operands.
+ */
+public class AdaptiveJunction implements CompiledExpression {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param operands      the compiled operands, in their initial order.
+     * @param costs         the estimated cost of each operand.
+     * @param shortCircuits the operand value that decides the result: false
+     *                      for '&', true for '|'.
+     */
+    public AdaptiveJunction(CompiledExpression[] operands, double[] costs, boolean shortCircuits) {
+        _operands = operands.clone();
+        _costs = costs.clone();
+        _shortCircuits = shortCircuits;
+        _tested = new int[operands.length];
+        _decided = new int[operands.length];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.CompiledExpression#test(org.bukkit.World,
+     *      double, double, double)
+     */
+    @Override
+    public boolean test(World world, double x, double y, double z) {
+        if (++_evaluations >= REORDER_PERIOD) {
+            reorder();
+        }
+
+        // Read the operands once; reorder() replaces the arrays wholesale.
+        CompiledExpression[] operands = _operands;
+        int[] tested = _tested;
+        int[] decided = _decided;
+        for (int i = 0; i < operands.length; ++i) {
+            ++tested[i];
+            if (operands[i].test(world, x, y, z) == _shortCircuits) {
+                ++decided[i];
+                return _shortCircuits;
+            }
+        }
+        return !_shortCircuits;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate the operands word by word, in the current order, without
+     * updating the statistics; batches are not representative of single
+     * lookups.
+     *
+     * @see nu.nerd.beastmaster.zones.CompiledExpression#testBatch(org.bukkit.World,
+     *      double[], double[], double[], int, long[])
+     */
+    @Override
+    public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+        BatchKernels.junctionBatch(_operands, _shortCircuits, world, xs, ys, zs, count, result);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the operands in their current order of evaluation.
+     *
+     * @return a copy of the array of operands.
+     */
+    public CompiledExpression[] getOperands() {
+        return _operands.clone();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Sort the operands in ascending order of cost per decisive evaluation and
+     * decay the counts.
+     */
+    protected synchronized void reorder() {
+        if (_evaluations < REORDER_PERIOD) {
+            // Another thread reordered the operands first.
+            return;
+        }
+
+        CompiledExpression[] current = _operands;
+        int count = current.length;
+        double[] measured = getMeasuredCosts(current);
+        double[] effectiveCosts = (measured != null) ? measured : _costs;
+        Integer[] order = new Integer[count];
+        double[] rank = new double[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = i;
+            // Laplace smoothing: operands that have not been tested yet are
+            // assumed to decide half of the time.
+            double pDecides = (_decided[i] + 1.0) / (_tested[i] + 2.0);
+            rank[i] = effectiveCosts[i] / pDecides;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(rank[a], rank[b]));
+
+        CompiledExpression[] operands = new CompiledExpression[count];
+        double[] costs = new double[count];
+        int[] tested = new int[count];
+        int[] decided = new int[count];
+        for (int i = 0; i < count; ++i) {
+            int from = order[i];
+            operands[i] = current[from];
+            costs[i] = _costs[from];
+            tested[i] = _tested[from] / 2;
+            decided[i] = _decided[from] / 2;
+        }
+        _costs = costs;
+        _tested = tested;
+        _decided = decided;
+        _operands = operands;
+        _evaluations = 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the mean evaluation times of the operands measured by the
+     * {@link ZoneProfiler}, if every operand has been profiled enough to
+     * replace the static cost estimates.
+     *
+     * Measured and estimated costs are in different units, so they are never
+     * mixed.
+     *
+     * @param operands the operands.
+     * @return the mean nanoseconds per evaluation of each operand, or null.
+     */
+    protected static double[] getMeasuredCosts(CompiledExpression[] operands) {
+        double[] costs = new double[operands.length];
+        for (int i = 0; i < operands.length; ++i) {
+            ZoneProfiler.Profile profile = operands[i].getProfile();
+            if (profile == null || profile.getEvaluations() < MIN_PROFILED_EVALUATIONS) {
+                return null;
+            }
+            costs[i] = profile.getMeanNanos();
+        }
+        return costs;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Minimum number of profiled evaluations of each operand before measured
+     * costs are used.
+     */
+    protected static final int MIN_PROFILED_EVALUATIONS = 1000;
+
+    /**
+     * Number of evaluations between reorderings of the operands.
+     */
+    protected static final int REORDER_PERIOD = 4096;
+
+    /**
+     * The operand value that decides the result.
+     */
+    protected final boolean _shortCircuits;
+
+    /**
+     * The operands, in current order of evaluation.
+     */
+    protected volatile CompiledExpression[] _operands;
+
+    /**
+     * The estimated costs of the operands, in the same order as _operands.
+     */
+    protected double[] _costs;
+
+    /**
+     * The number of times each operand has been evaluated (decayed).
+     */
+    protected int[] _tested;
+
+    /**
+     * The number of times each operand has decided the result (decayed).
+     */
+    protected int[] _decided;
+
+    /**
+     * The number of evaluations since the operands were last reordered.
+     */
+    protected int _evaluations;
+} // class AdaptiveJunction
\ No newline at end of file
@@ -0,0 +1,474 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.Arrays;
+
+import org.bukkit.World;
+
+// ----------------------------------------------------------------------------
+/**
+ * CompiledExpression implementations that evaluate many points at once, for
+ * {@link CompiledExpression#testBatch(World, double[], double[], double[], int,
+ * long[])}.
+ *
+ * Results are bitsets: bit (i &amp; 63) of word (i &gt;&gt; 6) is the value
+ * at point i. The geometric predicates compute each 64-bit word in a
+ * branch-free loop over the coordinate arrays, which the JIT can unroll and
+ * vectorise. Operators combine the bitsets of their operands word by word;
+ * '&amp;' and '|' stop evaluating operands once every point is decided.
+ *
+ * Each geometric kernel decides a point in a single matches() method, which
+ * both its single point test() and its batch loop call, so both paths give
+ * the same answers. The method is small and final, so the JIT inlines it
+ * into the loop.
+ */
+public class BatchKernels {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of 64-bit words in a bitset of the specified number
+     * of points.
+     *
+     * @param count the number of points.
+     * @return the number of words.
+     */
+    public static int words(int count) {
+        return (count + 63) >>> 6;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the mask of the valid bits in a word of a bitset.
+     *
+     * @param word  the index of the word.
+     * @param count the number of points.
+     * @return the mask, with a 1 bit for each point in the word.
+     */
+    public static long mask(int word, int count) {
+        int bits = count - (word << 6);
+        return (bits >= 64) ? -1L : (1L << bits) - 1;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate a CompiledExpression one point at a time into a bitset.
+     *
+     * @param expression the CompiledExpression.
+     * @param world      the World.
+     * @param xs         the X coordinates.
+     * @param ys         the Y coordinates.
+     * @param zs         the Z coordinates.
+     * @param count      the number of points.
+     * @param result     the bitset of results.
+     */
+    static void testEach(CompiledExpression expression, World world, double[] xs, double[] ys, double[] zs,
+                         int count, long[] result) {
+        int words = words(count);
+        for (int w = 0; w < words; ++w) {
+            int base = w << 6;
+            int end = Math.min(count, base + 64);
+            long bits = 0;
+            for (int i = base; i < end; ++i) {
+                if (expression.test(world, xs[i], ys[i], zs[i])) {
+                    bits |= 1L << (i - base);
+                }
+            }
+            result[w] = bits;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Points within a radius of (cx,cz), or between two radii.
+     */
+    static final class Annulus implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param cx         the centre X coordinate.
+         * @param cz         the centre Z coordinate.
+         * @param minSquared the square of the minimum radius, 0 for a circle.
+         * @param maxSquared the square of the maximum radius.
+         */
+        Annulus(double cx, double cz, double minSquared, double maxSquared) {
+            this.cx = cx;
+            this.cz = cz;
+            this.minSquared = minSquared;
+            this.maxSquared = maxSquared;
+        }
+
+        /**
+         * Return true if the point (x,z) is in the annulus.
+         *
+         * @param x the X coordinate.
+         * @param z the Z coordinate.
+         * @return true if the point is in the annulus.
+         */
+        boolean matches(double x, double z) {
+            double dx = x - cx;
+            double dz = z - cz;
+            double distSquared = dx * dx + dz * dz;
+            return distSquared >= minSquared & distSquared <= maxSquared;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            return matches(x, z);
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            int words = words(count);
+            for (int w = 0; w < words; ++w) {
+                int base = w << 6;
+                int end = Math.min(count, base + 64);
+                long bits = 0;
+                for (int i = base; i < end; ++i) {
+                    long bit = matches(xs[i], zs[i]) ? 1L : 0L;
+                    bits |= bit << (i - base);
+                }
+                result[w] = bits;
+            }
+        }
+
+        /**
+         * The centre X coordinate.
+         */
+        final double cx;
+
+        /**
+         * The centre Z coordinate.
+         */
+        final double cz;
+
+        /**
+         * The square of the minimum radius.
+         */
+        final double minSquared;
+
+        /**
+         * The square of the maximum radius.
+         */
+        final double maxSquared;
+    } // class Annulus
+
+    // ------------------------------------------------------------------------
+    /**
+     * Points within an axis-aligned rectangle, inclusive of its edges.
+     */
+    static final class Rect implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param minX the minimum X coordinate.
+         * @param minZ the minimum Z coordinate.
+         * @param maxX the maximum X coordinate.
+         * @param maxZ the maximum Z coordinate.
+         */
+        Rect(double minX, double minZ, double maxX, double maxZ) {
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+        }
+
+        /**
+         * Return true if the point (x,z) is in the rectangle.
+         *
+         * @param x the X coordinate.
+         * @param z the Z coordinate.
+         * @return true if the point is in the rectangle.
+         */
+        boolean matches(double x, double z) {
+            return minX <= x & x <= maxX & minZ <= z & z <= maxZ;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            return matches(x, z);
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            int words = words(count);
+            for (int w = 0; w < words; ++w) {
+                int base = w << 6;
+                int end = Math.min(count, base + 64);
+                long bits = 0;
+                for (int i = base; i < end; ++i) {
+                    long bit = matches(xs[i], zs[i]) ? 1L : 0L;
+                    bits |= bit << (i - base);
+                }
+                result[w] = bits;
+            }
+        }
+
+        /**
+         * The minimum X coordinate.
+         */
+        final double minX;
+
+        /**
+         * The minimum Z coordinate.
+         */
+        final double minZ;
+
+        /**
+         * The maximum X coordinate.
+         */
+        final double maxX;
+
+        /**
+         * The maximum Z coordinate.
+         */
+        final double maxZ;
+    } // class Rect
+
+    // ------------------------------------------------------------------------
+    /**
+     * Points whose Y coordinate is in a range, inclusive.
+     */
+    static final class YRange implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param min the minimum Y coordinate.
+         * @param max the maximum Y coordinate.
+         */
+        YRange(double min, double max) {
+            this.min = min;
+            this.max = max;
+        }
+
+        /**
+         * Return true if the Y coordinate is in the range.
+         *
+         * @param y the Y coordinate.
+         * @return true if the Y coordinate is in the range.
+         */
+        boolean matches(double y) {
+            return min <= y & y <= max;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            return matches(y);
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            int words = words(count);
+            for (int w = 0; w < words; ++w) {
+                int base = w << 6;
+                int end = Math.min(count, base + 64);
+                long bits = 0;
+                for (int i = base; i < end; ++i) {
+                    long bit = matches(ys[i]) ? 1L : 0L;
+                    bits |= bit << (i - base);
+                }
+                result[w] = bits;
+            }
+        }
+
+        /**
+         * The minimum Y coordinate.
+         */
+        final double min;
+
+        /**
+         * The maximum Y coordinate.
+         */
+        final double max;
+    } // class YRange
+
+    // ------------------------------------------------------------------------
+    /**
+     * The same value everywhere.
+     */
+    static final class Constant implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param value the value.
+         */
+        Constant(boolean value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            return value;
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            int words = words(count);
+            for (int w = 0; w < words; ++w) {
+                result[w] = value ? mask(w, count) : 0L;
+            }
+        }
+
+        /**
+         * The value.
+         */
+        final boolean value;
+    } // class Constant
+
+    // ------------------------------------------------------------------------
+    /**
+     * The negation of an operand.
+     */
+    static final class Not implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param operand the operand.
+         */
+        Not(CompiledExpression operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            return !operand.test(world, x, y, z);
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            operand.testBatch(world, xs, ys, zs, count, result);
+            int words = words(count);
+            for (int w = 0; w < words; ++w) {
+                result[w] = ~result[w] & mask(w, count);
+            }
+        }
+
+        /**
+         * The operand.
+         */
+        final CompiledExpression operand;
+    } // class Not
+
+    // ------------------------------------------------------------------------
+    /**
+     * '&amp;' or '|' of operands in a fixed order.
+     */
+    static final class Junction implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param operands      the operands, in order of evaluation.
+         * @param shortCircuits the operand value that decides the result:
+         *                      false for '&amp;', true for '|'.
+         */
+        Junction(CompiledExpression[] operands, boolean shortCircuits) {
+            this.operands = operands;
+            this.shortCircuits = shortCircuits;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            for (CompiledExpression operand : operands) {
+                if (operand.test(world, x, y, z) == shortCircuits) {
+                    return shortCircuits;
+                }
+            }
+            return !shortCircuits;
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            junctionBatch(operands, shortCircuits, world, xs, ys, zs, count, result);
+        }
+
+        /**
+         * The operands.
+         */
+        final CompiledExpression[] operands;
+
+        /**
+         * The operand value that decides the result.
+         */
+        final boolean shortCircuits;
+    } // class Junction
+
+    // ------------------------------------------------------------------------
+    /**
+     * '^' of operands.
+     */
+    static final class Xor implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param operands the operands.
+         */
+        Xor(CompiledExpression[] operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            boolean result = false;
+            for (CompiledExpression operand : operands) {
+                result ^= operand.test(world, x, y, z);
+            }
+            return result;
+        }
+
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            int words = words(count);
+            long[] operandBits = new long[words];
+            Arrays.fill(result, 0, words, 0L);
+            for (CompiledExpression operand : operands) {
+                operand.testBatch(world, xs, ys, zs, count, operandBits);
+                for (int w = 0; w < words; ++w) {
+                    result[w] ^= operandBits[w];
+                }
+            }
+        }
+
+        /**
+         * The operands.
+         */
+        final CompiledExpression[] operands;
+    } // class Xor
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate '&amp;' or '|' of operands in order over a batch of points,
+     * stopping once every point is decided.
+     *
+     * @param operands      the operands, in order of evaluation.
+     * @param shortCircuits the operand value that decides the result: false
+     *                      for '&amp;', true for '|'.
+     * @param world         the World.
+     * @param xs            the X coordinates.
+     * @param ys            the Y coordinates.
+     * @param zs            the Z coordinates.
+     * @param count         the number of points.
+     * @param result        the bitset of results.
+     */
+    static void junctionBatch(CompiledExpression[] operands, boolean shortCircuits, World world,
+                              double[] xs, double[] ys, double[] zs, int count, long[] result) {
+        int words = words(count);
+        long[] operandBits = new long[words];
+        // Accumulate the points that are decided: false for '&', true for '|'.
+        Arrays.fill(result, 0, words, 0L);
+        for (CompiledExpression operand : operands) {
+            operand.testBatch(world, xs, ys, zs, count, operandBits);
+            boolean allDecided = true;
+            for (int w = 0; w < words; ++w) {
+                long mask = mask(w, count);
+                long decided = shortCircuits ? operandBits[w] : ~operandBits[w] & mask;
+                result[w] |= decided;
+                allDecided &= (result[w] == mask);
+            }
+            if (allDecided) {
+                break;
+            }
+        }
+        if (!shortCircuits) {
+            for (int w = 0; w < words; ++w) {
+                result[w] = ~result[w] & mask(w, count);
+            }
+        }
+    }
+} // class BatchKernels
\ No newline at end of file
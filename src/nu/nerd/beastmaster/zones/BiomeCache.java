@@ -0,0 +1,193 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+import org.bukkit.block.Biome;
+
+// ----------------------------------------------------------------------------
+/**
+ * Caches the biomes of loaded chunks, so that biome lookups don't need to
+ * create Blocks or query the chunk on the main thread.
+ *
+ * Minecraft stores biomes at a resolution of one per 4x4x4 block cell, so each
+ * chunk is sampled once per cell from a ChunkSnapshot when it loads, into an
+ * array of 1024 Biome ordinals. Entries are dropped when chunks unload.
+ * Lookups in chunks that are not cached fall back to World.getBiome() in the
+ * main thread.
+ *
+ * The cache is filled in the main thread, but cached biomes can be read from
+ * any thread. The World is not thread-safe, so lookups in other threads in
+ * chunks that are not cached do not fall back to it; they fail safe by
+ * returning null, and are counted as misses (see {@link #getMisses()}) so
+ * that callers can discard the affected results.
+ */
+public class BiomeCache {
+    // ------------------------------------------------------------------------
+    /**
+     * Sample and cache the biomes of a newly loaded chunk.
+     *
+     * The snapshot is shared with the {@link HeightCache}, so that each chunk
+     * load copies the chunk's data only once.
+     *
+     * @param chunk    the Chunk.
+     * @param snapshot a snapshot of the chunk that includes biomes.
+     */
+    public void load(Chunk chunk, ChunkSnapshot snapshot) {
+        byte[] cells = new byte[CELLS_PER_CHUNK];
+        for (int cellY = 0; cellY < CELL_LAYERS; ++cellY) {
+            for (int cellZ = 0; cellZ < 4; ++cellZ) {
+                for (int cellX = 0; cellX < 4; ++cellX) {
+                    Biome biome = snapshot.getBiome(cellX << 2, cellY << 2, cellZ << 2);
+                    cells[cellIndex(cellX, cellY, cellZ)] = (byte) biome.ordinal();
+                }
+            }
+        }
+
+        ConcurrentHashMap<Long, byte[]> worldCells = _cells.computeIfAbsent(chunk.getWorld().getUID(),
+                                                                            k -> new ConcurrentHashMap<>());
+        worldCells.put(chunkKey(chunk.getX(), chunk.getZ()), cells);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached biomes of an unloaded chunk.
+     *
+     * @param chunk the Chunk.
+     */
+    public void unload(Chunk chunk) {
+        ConcurrentHashMap<Long, byte[]> worldCells = _cells.get(chunk.getWorld().getUID());
+        if (worldCells != null) {
+            worldCells.remove(chunkKey(chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Biome at the specified block coordinates.
+     *
+     * @param world the World.
+     * @param x     the block X coordinate.
+     * @param y     the block Y coordinate.
+     * @param z     the block Z coordinate.
+     * @return the Biome, or null if the chunk is not cached and this is not
+     *         the main thread.
+     */
+    public Biome getBiome(World world, int x, int y, int z) {
+        Biome biome = getCachedBiome(world, x, y, z);
+        if (biome != null) {
+            return biome;
+        }
+        if (!Bukkit.isPrimaryThread()) {
+            countMiss();
+            return null;
+        }
+        return world.getBiome(x, y, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Biome at the specified block coordinates, only if the chunk
+     * is cached.
+     *
+     * @param world the World.
+     * @param x     the block X coordinate.
+     * @param y     the block Y coordinate.
+     * @param z     the block Z coordinate.
+     * @return the Biome, or null if the chunk is not cached.
+     */
+    public Biome getCachedBiome(World world, int x, int y, int z) {
+        ConcurrentHashMap<Long, byte[]> worldCells = _cells.get(world.getUID());
+        if (worldCells == null) {
+            return null;
+        }
+        byte[] cells = worldCells.get(chunkKey(x >> 4, z >> 4));
+        if (cells == null) {
+            return null;
+        }
+
+        // Like Minecraft, clamp the Y coordinate to the cells of the chunk.
+        int cellY = Math.max(0, Math.min(CELL_LAYERS - 1, y >> 2));
+        return BIOMES[cells[cellIndex((x >> 2) & 3, cellY, (z >> 2) & 3)] & 0xFF];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of lookups in the current thread, other than the main
+     * thread, that could not be answered because the chunk was not cached.
+     *
+     * Misses of both this cache and the {@link HeightCache} are counted. The
+     * count only ever increases; compare it before and after an evaluation to
+     * tell whether any lookup missed.
+     *
+     * @return the number of misses in the current thread.
+     */
+    public static int getMisses() {
+        return MISSES.get()[0];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Count a lookup in the current thread that could not be answered.
+     */
+    static void countMiss() {
+        ++MISSES.get()[0];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the index of a cell in the array of a chunk.
+     *
+     * @param cellX the cell X coordinate within the chunk, [0,3].
+     * @param cellY the cell Y coordinate, [0,63].
+     * @param cellZ the cell Z coordinate within the chunk, [0,3].
+     * @return the index.
+     */
+    protected static int cellIndex(int cellX, int cellY, int cellZ) {
+        return (cellY << 4) | (cellZ << 2) | cellX;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the key of a chunk.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the key.
+     */
+    protected static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Number of 4-block high layers of cells in a chunk.
+     */
+    protected static final int CELL_LAYERS = 64;
+
+    /**
+     * Number of cells in a chunk.
+     */
+    protected static final int CELLS_PER_CHUNK = 16 * CELL_LAYERS;
+
+    /**
+     * All Biomes, indexed by ordinal.
+     */
+    protected static final Biome[] BIOMES = Biome.values();
+
+    /**
+     * The number of off-main-thread lookups of each thread that missed the
+     * biome or height caches.
+     */
+    protected static final ThreadLocal<int[]> MISSES = ThreadLocal.withInitial(() -> new int[1]);
+
+    /**
+     * Map from World UUID to map from chunk key to Biome ordinals by cell
+     * index.
+     */
+    protected ConcurrentHashMap<UUID, ConcurrentHashMap<Long, byte[]>> _cells = new ConcurrentHashMap<>();
+} // class BiomeCache
\ No newline at end of file
@@ -0,0 +1,183 @@
+package nu.nerd.beastmaster.zones;
+
+// ----------------------------------------------------------------------------
+/**
+ * An immutable, closed, axis-aligned box in world coordinates.
+ *
+ * Boxes are used to reason about the value of a Zone Specification over a
+ * whole volume, such as a Y-band of a chunk, without evaluating it at every
+ * block.
+ */
+public class Box {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Box enclosing a 16x16x16 section of a chunk.
+     *
+     * The maximum coordinates are the largest doubles less than those of the
+     * far faces of the blocks, so every Location in the section, and no
+     * Location outside it, is inside the box.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param band   the section index, i.e. the block Y coordinate / 16.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the Box.
+     */
+    public static Box ofChunkSection(int chunkX, int band, int chunkZ) {
+        double x = chunkX * 16.0;
+        double y = band * 16.0;
+        double z = chunkZ * 16.0;
+        return new Box(x, y, z, Math.nextDown(x + 16), Math.nextDown(y + 16), Math.nextDown(z + 16));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param minX the minimum X coordinate.
+     * @param minY the minimum Y coordinate.
+     * @param minZ the minimum Z coordinate.
+     * @param maxX the maximum X coordinate.
+     * @param maxY the maximum Y coordinate.
+     * @param maxZ the maximum Z coordinate.
+     */
+    public Box(double minX, double minY, double minZ, double maxX, double maxY, double maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if this box contains no points.
+     *
+     * @return true if this box contains no points.
+     */
+    public boolean isEmpty() {
+        return minX > maxX || minY > maxY || minZ > maxZ;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if this box has finite extent in both X and Z.
+     *
+     * @return true if this box has finite extent in both X and Z.
+     */
+    public boolean isBoundedXZ() {
+        return minX > Double.NEGATIVE_INFINITY && maxX < Double.POSITIVE_INFINITY &&
+               minZ > Double.NEGATIVE_INFINITY && maxZ < Double.POSITIVE_INFINITY;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the box containing the points common to this box and another.
+     *
+     * @param other the other box.
+     * @return the intersection, which may be empty.
+     */
+    public Box intersection(Box other) {
+        return new Box(Math.max(minX, other.minX), Math.max(minY, other.minY), Math.max(minZ, other.minZ),
+                       Math.min(maxX, other.maxX), Math.min(maxY, other.maxY), Math.min(maxZ, other.maxZ));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the smallest box containing both this box and another.
+     *
+     * @param other the other box.
+     * @return the bounding box of the union.
+     */
+    public Box union(Box other) {
+        if (isEmpty()) {
+            return other;
+        } else if (other.isEmpty()) {
+            return this;
+        }
+        return new Box(Math.min(minX, other.minX), Math.min(minY, other.minY), Math.min(minZ, other.minZ),
+                       Math.max(maxX, other.maxX), Math.max(maxY, other.maxY), Math.max(maxZ, other.maxZ));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the smallest squared horizontal distance from (x,z) to any point
+     * in this box.
+     *
+     * @param x the X coordinate.
+     * @param z the Z coordinate.
+     * @return the smallest squared horizontal distance.
+     */
+    public double minDistanceSquared(double x, double z) {
+        double dx = Math.max(0, Math.max(minX - x, x - maxX));
+        double dz = Math.max(0, Math.max(minZ - z, z - maxZ));
+        return dx * dx + dz * dz;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the largest squared horizontal distance from (x,z) to any point
+     * in this box.
+     *
+     * @param x the X coordinate.
+     * @param z the Z coordinate.
+     * @return the largest squared horizontal distance.
+     */
+    public double maxDistanceSquared(double x, double z) {
+        double dx = Math.max(Math.abs(x - minX), Math.abs(x - maxX));
+        double dz = Math.max(Math.abs(z - minZ), Math.abs(z - maxZ));
+        return dx * dx + dz * dz;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "(" + minX + "," + minY + "," + minZ + ") - (" + maxX + "," + maxY + "," + maxZ + ")";
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The box containing all points.
+     */
+    public static final Box EVERYWHERE = new Box(Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY,
+                                                 Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+
+    /**
+     * A box containing no points.
+     */
+    public static final Box NOWHERE = new Box(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY,
+                                              Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+    /**
+     * The minimum X coordinate.
+     */
+    public final double minX;
+
+    /**
+     * The minimum Y coordinate.
+     */
+    public final double minY;
+
+    /**
+     * The minimum Z coordinate.
+     */
+    public final double minZ;
+
+    /**
+     * The maximum X coordinate.
+     */
+    public final double maxX;
+
+    /**
+     * The maximum Y coordinate.
+     */
+    public final double maxY;
+
+    /**
+     * The maximum Z coordinate.
+     */
+    public final double maxZ;
+} // class Box
\ No newline at end of file
@@ -0,0 +1,136 @@
+package nu.nerd.beastmaster.zones;
+
+import org.bukkit.World;
+
+import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
+import nu.nerd.beastmaster.zones.nodes.NotExpression;
+import nu.nerd.beastmaster.zones.nodes.NumberExpression;
+import nu.nerd.beastmaster.zones.nodes.OrExpression;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+import nu.nerd.beastmaster.zones.nodes.StringExpression;
+import nu.nerd.beastmaster.zones.nodes.XorExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * An ExpressionVisitor implementation that computes the value of an
+ * Expression over a whole {@link Box}, by interval arithmetic.
+ *
+ * The result is a {@link Tristate}: TRUE if the Expression is true at every
+ * point in the box, FALSE if it is false at every point, or MAYBE if it might
+ * vary or cannot be determined. TRUE and FALSE results are guaranteed; MAYBE
+ * is conservative.
+ *
+ * The context of the visit() method should be the Box to test.
+ */
+public class BoxExpressionVisitor implements ExpressionVisitor {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param world the World containing the boxes to test, or null if not
+     *              known. If null, predicates that depend on world data always
+     *              evaluate as MAYBE.
+     */
+    public BoxExpressionVisitor(World world) {
+        _world = world;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.AndExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(AndExpression node, Object context) {
+        Tristate result = Tristate.TRUE;
+        for (int i = 0; i < node.getChildCount() && result != Tristate.FALSE; ++i) {
+            result = result.and((Tristate) node.getChild(i).visit(this, context));
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.OrExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(OrExpression node, Object context) {
+        Tristate result = Tristate.FALSE;
+        for (int i = 0; i < node.getChildCount() && result != Tristate.TRUE; ++i) {
+            result = result.or((Tristate) node.getChild(i).visit(this, context));
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.XorExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(XorExpression node, Object context) {
+        Tristate result = Tristate.FALSE;
+        for (int i = 0; i < node.getChildCount() && result != Tristate.MAYBE; ++i) {
+            result = result.xor((Tristate) node.getChild(i).visit(this, context));
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NotExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NotExpression node, Object context) {
+        return ((Tristate) node.firstChild().visit(this, context)).not();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.PredicateExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(PredicateExpression node, Object context) {
+        return node.getZonePredicate().evaluate(_world, node.args, (Box) context);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NumberExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NumberExpression node, Object context) {
+        return Tristate.MAYBE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.StringExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(StringExpression node, Object context) {
+        return Tristate.MAYBE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        return Tristate.of(node.getValue());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The World containing the boxes to test, or null if not known.
+     */
+    protected World _world;
+} // class BoxExpressionVisitor
\ No newline at end of file
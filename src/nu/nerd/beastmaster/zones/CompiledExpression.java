@@ -0,0 +1,80 @@
+package nu.nerd.beastmaster.zones;
+
+import org.bukkit.World;
+
+// ----------------------------------------------------------------------------
+/**
+ * The executable form of a Zone Specification {@link Expression}.
+ *
+ * Instances are produced by the {@link ExpressionCompiler} from the tree
+ * returned by {@link Parser#parse()}. Predicate arguments are bound at compile
+ * time as primitive final fields, so evaluation does no boxing, no argument
+ * list lookups and no visitor dispatch. Expressions can also be evaluated
+ * over arrays of coordinates with testBatch().
+ */
+@FunctionalInterface
+public interface CompiledExpression {
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the expression is true at the specified coordinates.
+     *
+     * @param world the World containing the coordinates.
+     * @param x     the X coordinate.
+     * @param y     the Y coordinate.
+     * @param z     the Z coordinate.
+     * @return true if the expression is true at the specified coordinates.
+     */
+    public boolean test(World world, double x, double y, double z);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate the expression at many points, setting bit (i & 63) of
+     * result[i >> 6] to the value at point i.
+     *
+     * The first {@link BatchKernels#words(int)} words of the result are
+     * overwritten; bits beyond count are cleared. The default implementation
+     * tests one point at a time; {@link BatchKernels} override it with loops
+     * over the coordinate arrays.
+     *
+     * @param world  the World containing the points.
+     * @param xs     the X coordinates.
+     * @param ys     the Y coordinates.
+     * @param zs     the Z coordinates.
+     * @param count  the number of points.
+     * @param result the bitset of results.
+     */
+    public default void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+        BatchKernels.testEach(this, world, xs, ys, zs, count, result);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate the expression at many points, setting result[i] to the value
+     * at point i.
+     *
+     * @param world  the World containing the points.
+     * @param xs     the X coordinates.
+     * @param ys     the Y coordinates.
+     * @param zs     the Z coordinates.
+     * @param count  the number of points.
+     * @param result the results.
+     */
+    public default void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, boolean[] result) {
+        long[] bits = new long[BatchKernels.words(count)];
+        testBatch(world, xs, ys, zs, count, bits);
+        for (int i = 0; i < count; ++i) {
+            result[i] = (bits[i >> 6] & (1L << i)) != 0;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Profile that records evaluations of this expression, if it
+     * is profiled by the {@link ZoneProfiler}.
+     *
+     * @return the Profile, or null if this expression is not profiled.
+     */
+    public default ZoneProfiler.Profile getProfile() {
+        return null;
+    }
+} // class CompiledExpression
\ No newline at end of file
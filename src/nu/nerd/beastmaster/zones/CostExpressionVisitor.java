@@ -0,0 +1,135 @@
+package nu.nerd.beastmaster.zones;
+
+import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
+import nu.nerd.beastmaster.zones.nodes.NotExpression;
+import nu.nerd.beastmaster.zones.nodes.NumberExpression;
+import nu.nerd.beastmaster.zones.nodes.OrExpression;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+import nu.nerd.beastmaster.zones.nodes.StringExpression;
+import nu.nerd.beastmaster.zones.nodes.XorExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * An ExpressionVisitor implementation that estimates the cost of evaluating
+ * an Expression at one location.
+ *
+ * The cost of a predicate is {@link ZonePredicate#getCost()}. Operators cost
+ * the sum of their operands, which is the worst case, when no operand
+ * short-circuits evaluation.
+ *
+ * The context of the visit() method is not used. The result is a Double.
+ */
+public class CostExpressionVisitor implements ExpressionVisitor {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the estimated cost of evaluating the specified Expression.
+     *
+     * @param expression the Expression.
+     * @return the estimated cost.
+     */
+    public static double cost(Expression expression) {
+        return (Double) expression.visit(INSTANCE, null);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.AndExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(AndExpression node, Object context) {
+        return sumChildren(node);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.OrExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(OrExpression node, Object context) {
+        return sumChildren(node);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.XorExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(XorExpression node, Object context) {
+        return sumChildren(node);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NotExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NotExpression node, Object context) {
+        return node.firstChild().visit(this, context);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.PredicateExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(PredicateExpression node, Object context) {
+        return node.getZonePredicate().getCost();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NumberExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NumberExpression node, Object context) {
+        return 0.0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.StringExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(StringExpression node, Object context) {
+        return 0.0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        return 0.0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the total cost of all children of an operator node.
+     *
+     * @param node the operator node.
+     * @return the sum of the costs of the children.
+     */
+    protected Double sumChildren(Expression node) {
+        double total = 0;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            total += (Double) node.getChild(i).visit(this, null);
+        }
+        return total;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The visitor is stateless, so a single instance is shared.
+     */
+    protected static final CostExpressionVisitor INSTANCE = new CostExpressionVisitor();
+} // class CostExpressionVisitor
\ No newline at end of file
@@ -3,6 +3,7 @@ package nu.nerd.beastmaster.zones;
 import org.bukkit.Location;
 
 import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
 import nu.nerd.beastmaster.zones.nodes.NotExpression;
 import nu.nerd.beastmaster.zones.nodes.NumberExpression;
 import nu.nerd.beastmaster.zones.nodes.OrExpression;
@@ -38,20 +39,25 @@ public class EvalExpressionVisitor implements ExpressionVisitor {
     @Override
     public Object visit(AndExpression node, Object context) {
         if (_trace != null) {
-            Boolean left = (Boolean) node.firstChild().visit(this, context);
-            showBoolean(_trace, left);
-            Boolean right = (Boolean) node.secondChild().visit(this, context);
-            showBoolean(_trace, right);
-            _trace.append("&");
-            return left && right;
+            boolean result = true;
+            for (int i = 0; i < node.getChildCount(); ++i) {
+                Boolean operand = (Boolean) node.getChild(i).visit(this, context);
+                showBoolean(_trace, operand);
+                if (i > 0) {
+                    _trace.append("&");
+                }
+                result &= operand;
+            }
+            return result;
         }
 
-        Boolean left = (Boolean) node.firstChild().visit(this, context);
-        if (!left) {
-            return false;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            Boolean operand = (Boolean) node.getChild(i).visit(this, context);
+            if (!operand) {
+                return false;
+            }
         }
-        Boolean right = (Boolean) node.secondChild().visit(this, context);
-        return right;
+        return true;
     }
 
     // ------------------------------------------------------------------------
@@ -62,20 +68,25 @@ public class EvalExpressionVisitor implements ExpressionVisitor {
     @Override
     public Object visit(OrExpression node, Object context) {
         if (_trace != null) {
-            Boolean left = (Boolean) node.firstChild().visit(this, context);
-            showBoolean(_trace, left);
-            Boolean right = (Boolean) node.secondChild().visit(this, context);
-            showBoolean(_trace, right);
-            _trace.append("|");
-            return left || right;
+            boolean result = false;
+            for (int i = 0; i < node.getChildCount(); ++i) {
+                Boolean operand = (Boolean) node.getChild(i).visit(this, context);
+                showBoolean(_trace, operand);
+                if (i > 0) {
+                    _trace.append("|");
+                }
+                result |= operand;
+            }
+            return result;
         }
 
-        Boolean left = (Boolean) node.firstChild().visit(this, context);
-        if (left) {
-            return true;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            Boolean operand = (Boolean) node.getChild(i).visit(this, context);
+            if (operand) {
+                return true;
+            }
         }
-        Boolean right = (Boolean) node.secondChild().visit(this, context);
-        return right;
+        return false;
     }
 
     // ------------------------------------------------------------------------
@@ -85,17 +96,18 @@ public class EvalExpressionVisitor implements ExpressionVisitor {
      */
     @Override
     public Object visit(XorExpression node, Object context) {
-        Boolean left = (Boolean) node.firstChild().visit(this, context);
-        if (_trace != null) {
-            showBoolean(_trace, left);
-        }
-        Boolean right = (Boolean) node.secondChild().visit(this, context);
-        if (_trace != null) {
-            showBoolean(_trace, right);
-            _trace.append("^");
-
+        boolean result = false;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            Boolean operand = (Boolean) node.getChild(i).visit(this, context);
+            if (_trace != null) {
+                showBoolean(_trace, operand);
+                if (i > 0) {
+                    _trace.append("^");
+                }
+            }
+            result ^= operand;
         }
-        return left ^ right;
+        return result;
     }
 
     // ------------------------------------------------------------------------
@@ -161,6 +173,19 @@ public class EvalExpressionVisitor implements ExpressionVisitor {
         return node.getText();
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        if (_trace != null) {
+            _trace.append(node.getValue());
+        }
+        return node.getValue();
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Append the value of a boolean expression to the trace.
@@ -0,0 +1,253 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
+import nu.nerd.beastmaster.zones.nodes.NotExpression;
+import nu.nerd.beastmaster.zones.nodes.NumberExpression;
+import nu.nerd.beastmaster.zones.nodes.OrExpression;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+import nu.nerd.beastmaster.zones.nodes.StringExpression;
+import nu.nerd.beastmaster.zones.nodes.XorExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * An {@link ExpressionVisitor} that translates an {@link Expression} tree into
+ * a {@link CompiledExpression}.
+ *
+ * Each visit() returns the CompiledExpression for the visited node. Boolean
+ * operators keep the short-circuit semantics of the
+ * {@link EvalExpressionVisitor}, but the operands of '&' and '|' are
+ * evaluated cheapest first (see {@link ZonePredicate#getCost()}). Only the
+ * compiled form is reordered; the Expression tree, and hence the formatted
+ * Zone Specification, is left as written. Predicates are compiled by their
+ * {@link ZonePredicate}, which binds the arguments once, here, rather than on
+ * every evaluation. Compiled operators and predicates are shared between
+ * structurally identical nodes of all Zone Specifications through
+ * {@link SharedExpressions}; predicates are profiled by the
+ * {@link ZoneProfiler}. Operators and geometric predicates compile to
+ * {@link BatchKernels}, which also evaluate whole arrays of coordinates.
+ *
+ * The context argument of visit() is not used.
+ */
+public class ExpressionCompiler implements ExpressionVisitor {
+    // ------------------------------------------------------------------------
+    /**
+     * Compile the specified Expression.
+     *
+     * @param expression the Expression; must not be null.
+     * @return the corresponding CompiledExpression.
+     */
+    public static CompiledExpression compile(Expression expression) {
+        return (CompiledExpression) expression.visit(INSTANCE, null);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.AndExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(AndExpression node, Object context) {
+        return share(node, () -> compileJunction(node, false));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.OrExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(OrExpression node, Object context) {
+        return share(node, () -> compileJunction(node, true));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.XorExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(XorExpression node, Object context) {
+        return share(node, () -> compileXor(node));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NotExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NotExpression node, Object context) {
+        return share(node, () -> {
+            CompiledExpression child = (CompiledExpression) node.firstChild().visit(this, context);
+            return new BatchKernels.Not(child);
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.PredicateExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(PredicateExpression node, Object context) {
+        String text = format(node);
+        return SharedExpressions.intern(text, CostExpressionVisitor.cost(node),
+                                        () -> ZoneProfiler.profilePredicate(text, node.getZonePredicate().compile(node.args)));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Compile an '^' node.
+     *
+     * @param node the operator node.
+     * @return the CompiledExpression.
+     */
+    protected CompiledExpression compileXor(Expression node) {
+        return new BatchKernels.Xor(compileChildren(node));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Predicate arguments are bound by the predicate; they are never compiled
+     * on their own.
+     *
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NumberExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NumberExpression node, Object context) {
+        throw new IllegalStateException("numbers are only valid as predicate arguments");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Predicate arguments are bound by the predicate; they are never compiled
+     * on their own.
+     *
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.StringExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(StringExpression node, Object context) {
+        throw new IllegalStateException("strings are only valid as predicate arguments");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        return new BatchKernels.Constant(node.getValue());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Compile an '&' or '|' node.
+     *
+     * Both operators are commutative, so the operands are compiled in
+     * ascending order of estimated cost, rather than source order. If any
+     * operand is expensive, the operands are wrapped in an
+     * {@link AdaptiveJunction} that refines their order according to how
+     * often each one decides the result, and operands that are not predicates
+     * are profiled as a whole.
+     *
+     * @param node          the operator node.
+     * @param shortCircuits the operand value that decides the result: false
+     *                      for '&', true for '|'.
+     * @return the CompiledExpression.
+     */
+    protected CompiledExpression compileJunction(Expression node, boolean shortCircuits) {
+        int count = node.getChildCount();
+        Integer[] order = new Integer[count];
+        double[] childCosts = new double[count];
+        for (int i = 0; i < count; ++i) {
+            order[i] = i;
+            childCosts[i] = CostExpressionVisitor.cost(node.getChild(i));
+        }
+        // Stable sort: operands of equal cost stay in source order.
+        Arrays.sort(order, (a, b) -> Double.compare(childCosts[a], childCosts[b]));
+
+        CompiledExpression[] operands = new CompiledExpression[count];
+        double[] costs = new double[count];
+        for (int i = 0; i < count; ++i) {
+            operands[i] = (CompiledExpression) node.getChild(order[i]).visit(this, null);
+            costs[i] = childCosts[order[i]];
+        }
+
+        if (costs[count - 1] >= ADAPTIVE_MIN_COST) {
+            // Give every operand a Profile, so that measured costs can be
+            // used even when some operands are themselves operators.
+            for (int i = 0; i < count; ++i) {
+                operands[i] = ZoneProfiler.profileOperand(format(node.getChild(order[i])), operands[i]);
+            }
+            return new AdaptiveJunction(operands, costs, shortCircuits);
+        }
+
+        return (count == 1) ? operands[0] : new BatchKernels.Junction(operands, shortCircuits);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the shared CompiledExpression of an operator or predicate node,
+     * compiling it only if no structurally identical node has been compiled.
+     *
+     * @param node     the node.
+     * @param compiler compiles the node.
+     * @return the shared CompiledExpression.
+     */
+    protected CompiledExpression share(Expression node, Supplier<CompiledExpression> compiler) {
+        return SharedExpressions.intern(format(node), CostExpressionVisitor.cost(node), compiler);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the formatted text of a node, which identifies structurally
+     * identical subexpressions.
+     *
+     * @param node the node.
+     * @return the formatted text.
+     */
+    protected static String format(Expression node) {
+        StringBuilder text = new StringBuilder();
+        node.visit(FORMAT, text);
+        return text.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Compile all children of a node, in order.
+     *
+     * @param node the node.
+     * @return the compiled children.
+     */
+    protected CompiledExpression[] compileChildren(Expression node) {
+        CompiledExpression[] operands = new CompiledExpression[node.getChildCount()];
+        for (int i = 0; i < operands.length; ++i) {
+            operands[i] = (CompiledExpression) node.getChild(i).visit(this, null);
+        }
+        return operands;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Junctions with an operand costing at least this much are reordered
+     * adaptively; cheaper ones are not worth the bookkeeping.
+     */
+    protected static final double ADAPTIVE_MIN_COST = 10;
+
+    /**
+     * Formats nodes to identify structurally identical subexpressions.
+     */
+    protected static final FormatExpressionVisitor FORMAT = new FormatExpressionVisitor();
+
+    /**
+     * The compiler is stateless, so a single instance is shared.
+     */
+    protected static final ExpressionCompiler INSTANCE = new ExpressionCompiler();
+} // class ExpressionCompiler
\ No newline at end of file
@@ -0,0 +1,306 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
+import nu.nerd.beastmaster.zones.nodes.NotExpression;
+import nu.nerd.beastmaster.zones.nodes.NumberExpression;
+import nu.nerd.beastmaster.zones.nodes.OrExpression;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+import nu.nerd.beastmaster.zones.nodes.StringExpression;
+import nu.nerd.beastmaster.zones.nodes.XorExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * An ExpressionVisitor implementation that returns a simplified copy of an
+ * Expression tree, with the same value at every location.
+ *
+ * The following rewrites are applied, bottom up:
+ * <ul>
+ * <li>nested operators of the same kind are flattened into one n-ary node:
+ * (a & b) & c becomes a & b & c.</li>
+ * <li>double negation is removed: !!a becomes a.</li>
+ * <li>duplicate operands of '&' and '|' are removed, and pairs of identical
+ * operands of '^' cancel.</li>
+ * <li>complementary operands are folded: a & !a is false and a | !a is
+ * true.</li>
+ * <li>predicates whose value does not depend on the location are replaced
+ * by a {@link ConstantExpression}, and constants are folded into their parent
+ * operators.</li>
+ * </ul>
+ *
+ * Operands are compared by their formatted text. The original tree is not
+ * modified, but predicate nodes are shared with the copy. The copy is for
+ * evaluation only; Zones keep and format the tree as written.
+ *
+ * The context of the visit() method is not used. The result is the
+ * simplified Expression.
+ */
+public class ExpressionSimplifier implements ExpressionVisitor {
+    // ------------------------------------------------------------------------
+    /**
+     * Return a simplified copy of the specified Expression.
+     *
+     * @param expression the Expression; must not be null.
+     * @return the simplified Expression.
+     */
+    public static Expression simplify(Expression expression) {
+        return (Expression) expression.visit(INSTANCE, null);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.AndExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(AndExpression node, Object context) {
+        return simplifyJunction(node, false);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.OrExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(OrExpression node, Object context) {
+        return simplifyJunction(node, true);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Negated operands are rewritten as negation of the whole: !a ^ b is
+     * !(a ^ b). Then identical pairs of operands cancel, since a ^ a is false,
+     * and constants are folded into the negation.
+     *
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.XorExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(XorExpression node, Object context) {
+        boolean negated = false;
+        Map<String, Expression> operands = new LinkedHashMap<>();
+        for (Expression operand : simplifyOperands(node)) {
+            if (operand instanceof NotExpression) {
+                negated = !negated;
+                operand = operand.firstChild();
+            }
+
+            if (operand instanceof ConstantExpression) {
+                negated ^= ((ConstantExpression) operand).getValue();
+            } else if (operand instanceof XorExpression) {
+                // Exposed by removing a negation; already simplified.
+                for (int i = 0; i < operand.getChildCount(); ++i) {
+                    toggle(operands, operand.getChild(i));
+                }
+            } else {
+                toggle(operands, operand);
+            }
+        }
+
+        Expression result;
+        if (operands.isEmpty()) {
+            return new ConstantExpression(negated);
+        } else if (operands.size() == 1) {
+            result = operands.values().iterator().next();
+        } else {
+            result = new XorExpression();
+            for (Expression operand : operands.values()) {
+                result.addChild(operand);
+            }
+        }
+        return negated ? negate(result) : result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NotExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NotExpression node, Object context) {
+        return negate((Expression) node.firstChild().visit(this, context));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Predicates that have the same value everywhere are replaced by a
+     * constant.
+     *
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.PredicateExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(PredicateExpression node, Object context) {
+        ZonePredicate predicate = node.getZonePredicate();
+        if (predicate.getExtent(node.args).isEmpty()) {
+            return new ConstantExpression(false);
+        }
+        Tristate value = predicate.evaluate(null, node.args, Box.EVERYWHERE);
+        return value.isDefinite() ? new ConstantExpression(value == Tristate.TRUE) : node;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NumberExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NumberExpression node, Object context) {
+        return node;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.StringExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(StringExpression node, Object context) {
+        return node;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        return node;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Simplify an '&' or '|' node.
+     *
+     * @param node          the operator node.
+     * @param shortCircuits the operand value that decides the result: false
+     *                      for '&', true for '|'.
+     * @return the simplified Expression.
+     */
+    protected Expression simplifyJunction(Expression node, boolean shortCircuits) {
+        Map<String, Expression> operands = new LinkedHashMap<>();
+        HashMap<String, Boolean> negatedKeys = new HashMap<>();
+        for (Expression operand : simplifyOperands(node)) {
+            if (operand instanceof ConstantExpression) {
+                if (((ConstantExpression) operand).getValue() == shortCircuits) {
+                    return operand;
+                }
+                // The identity element (true for '&', false for '|') is
+                // dropped.
+                continue;
+            }
+
+            String key = format(operand);
+            boolean negated = (operand instanceof NotExpression);
+            String positiveKey = negated ? format(operand.firstChild()) : key;
+            Boolean existing = negatedKeys.get(positiveKey);
+            if (existing != null && existing != negated) {
+                // a & !a is false; a | !a is true.
+                return new ConstantExpression(shortCircuits);
+            }
+            negatedKeys.put(positiveKey, negated);
+            operands.putIfAbsent(key, operand);
+        }
+
+        if (operands.isEmpty()) {
+            return new ConstantExpression(!shortCircuits);
+        } else if (operands.size() == 1) {
+            return operands.values().iterator().next();
+        }
+        Expression result = shortCircuits ? new OrExpression() : new AndExpression();
+        for (Expression operand : operands.values()) {
+            result.addChild(operand);
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Simplify the operands of an operator node, flattening operands that are
+     * the same kind of operator into the returned list.
+     *
+     * @param node the operator node.
+     * @return the simplified operands.
+     */
+    protected List<Expression> simplifyOperands(Expression node) {
+        List<Expression> operands = new ArrayList<>();
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            Expression operand = (Expression) node.getChild(i).visit(this, null);
+            if (operand.getClass() == node.getClass()) {
+                for (int j = 0; j < operand.getChildCount(); ++j) {
+                    operands.add(operand.getChild(j));
+                }
+            } else {
+                operands.add(operand);
+            }
+        }
+        return operands;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add an operand of '^' to a map of operands keyed by formatted text, or
+     * remove it if already present, since a ^ a is false.
+     *
+     * @param operands the operands.
+     * @param operand  the operand to add or remove.
+     */
+    protected static void toggle(Map<String, Expression> operands, Expression operand) {
+        String key = format(operand);
+        if (operands.remove(key) == null) {
+            operands.put(key, operand);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the negation of a simplified Expression, removing double
+     * negation and folding constants.
+     *
+     * @param expression the simplified Expression.
+     * @return the negated Expression.
+     */
+    protected static Expression negate(Expression expression) {
+        if (expression instanceof NotExpression) {
+            return expression.firstChild();
+        } else if (expression instanceof ConstantExpression) {
+            return new ConstantExpression(!((ConstantExpression) expression).getValue());
+        }
+        Expression not = new NotExpression();
+        not.addChild(expression);
+        return not;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the formatted text of an Expression, used to identify duplicate
+     * operands.
+     *
+     * @param expression the Expression.
+     * @return the formatted text.
+     */
+    protected static String format(Expression expression) {
+        StringBuilder sb = new StringBuilder();
+        expression.visit(FORMAT, sb);
+        return sb.toString();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The simplifier is stateless, so a single instance is shared.
+     */
+    protected static final ExpressionSimplifier INSTANCE = new ExpressionSimplifier();
+
+    /**
+     * Formats operands to compare them.
+     */
+    protected static final FormatExpressionVisitor FORMAT = new FormatExpressionVisitor();
+} // class ExpressionSimplifier
\ No newline at end of file
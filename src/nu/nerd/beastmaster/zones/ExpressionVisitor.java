@@ -1,6 +1,7 @@
 package nu.nerd.beastmaster.zones;
 
 import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
 import nu.nerd.beastmaster.zones.nodes.NotExpression;
 import nu.nerd.beastmaster.zones.nodes.NumberExpression;
 import nu.nerd.beastmaster.zones.nodes.OrExpression;
@@ -98,4 +99,14 @@ public interface ExpressionVisitor {
      * @return an object representing the result of visiting the node.
      */
     public Object visit(StringExpression node, Object context);
+
+    /**
+     * Visit and {@link ConstantExpression} node.
+     * 
+     * @param node the {@link Expression} node.
+     * @param context context information representing the state of the
+     *        traversal prior to visiting the node.
+     * @return an object representing the result of visiting the node.
+     */
+    public Object visit(ConstantExpression node, Object context);
 } // class ExpressionVisitor
\ No newline at end of file
@@ -0,0 +1,115 @@
+package nu.nerd.beastmaster.zones;
+
+import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
+import nu.nerd.beastmaster.zones.nodes.NotExpression;
+import nu.nerd.beastmaster.zones.nodes.NumberExpression;
+import nu.nerd.beastmaster.zones.nodes.OrExpression;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+import nu.nerd.beastmaster.zones.nodes.StringExpression;
+import nu.nerd.beastmaster.zones.nodes.XorExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * An ExpressionVisitor implementation that computes a conservative bounding
+ * {@link Box} of the points where an Expression can be true.
+ *
+ * AND intersects the extents of its operands, while OR and XOR take the
+ * bounding box of their union. The complement of a bounded region is
+ * unbounded, so NOT yields {@link Box#EVERYWHERE}.
+ *
+ * The context of the visit() method is not used. The result is a Box.
+ */
+public class ExtentExpressionVisitor implements ExpressionVisitor {
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.AndExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(AndExpression node, Object context) {
+        Box extent = Box.EVERYWHERE;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            extent = extent.intersection((Box) node.getChild(i).visit(this, context));
+        }
+        return extent;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.OrExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(OrExpression node, Object context) {
+        Box extent = Box.NOWHERE;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            extent = extent.union((Box) node.getChild(i).visit(this, context));
+        }
+        return extent;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.XorExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(XorExpression node, Object context) {
+        Box extent = Box.NOWHERE;
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            extent = extent.union((Box) node.getChild(i).visit(this, context));
+        }
+        return extent;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NotExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NotExpression node, Object context) {
+        return Box.EVERYWHERE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.PredicateExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(PredicateExpression node, Object context) {
+        return node.getZonePredicate().getExtent(node.args);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.NumberExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(NumberExpression node, Object context) {
+        return Box.EVERYWHERE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.StringExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(StringExpression node, Object context) {
+        return Box.EVERYWHERE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        return node.getValue() ? Box.EVERYWHERE : Box.NOWHERE;
+    }
+} // class ExtentExpressionVisitor
\ No newline at end of file
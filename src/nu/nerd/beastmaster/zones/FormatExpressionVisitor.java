@@ -1,6 +1,7 @@
 package nu.nerd.beastmaster.zones;
 
 import nu.nerd.beastmaster.zones.nodes.AndExpression;
+import nu.nerd.beastmaster.zones.nodes.ConstantExpression;
 import nu.nerd.beastmaster.zones.nodes.NotExpression;
 import nu.nerd.beastmaster.zones.nodes.NumberExpression;
 import nu.nerd.beastmaster.zones.nodes.OrExpression;
@@ -22,13 +23,7 @@ public class FormatExpressionVisitor implements ExpressionVisitor {
      */
     @Override
     public Object visit(AndExpression node, Object context) {
-        StringBuilder sb = (StringBuilder) context;
-        sb.append('(');
-        node.firstChild().visit(this, context);
-        sb.append(" & ");
-        node.secondChild().visit(this, context);
-        sb.append(')');
-        return null;
+        return formatOperator(node, " & ", (StringBuilder) context);
     }
 
     // ------------------------------------------------------------------------
@@ -38,13 +33,7 @@ public class FormatExpressionVisitor implements ExpressionVisitor {
      */
     @Override
     public Object visit(OrExpression node, Object context) {
-        StringBuilder sb = (StringBuilder) context;
-        sb.append('(');
-        node.firstChild().visit(this, context);
-        sb.append(" | ");
-        node.secondChild().visit(this, context);
-        sb.append(')');
-        return null;
+        return formatOperator(node, " | ", (StringBuilder) context);
     }
 
     // ------------------------------------------------------------------------
@@ -54,13 +43,7 @@ public class FormatExpressionVisitor implements ExpressionVisitor {
      */
     @Override
     public Object visit(XorExpression node, Object context) {
-        StringBuilder sb = (StringBuilder) context;
-        sb.append('(');
-        node.firstChild().visit(this, context);
-        sb.append(" ^ ");
-        node.secondChild().visit(this, context);
-        sb.append(')');
-        return null;
+        return formatOperator(node, " ^ ", (StringBuilder) context);
     }
 
     // ------------------------------------------------------------------------
@@ -121,4 +104,40 @@ public class FormatExpressionVisitor implements ExpressionVisitor {
         sb.append('"');
         return null;
     }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constants have no Zone Specification syntax; they are formatted as
+     * "true" or "false" for debugging only.
+     *
+     * @see nu.nerd.beastmaster.zones.ExpressionVisitor#visit(nu.nerd.beastmaster.zones.nodes.ConstantExpression,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ConstantExpression node, Object context) {
+        StringBuilder sb = (StringBuilder) context;
+        sb.append(node.getValue());
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Append a parenthesised binary operator and all of its operands.
+     *
+     * @param node     the operator node.
+     * @param operator the operator, with surrounding spaces.
+     * @param sb       the StringBuilder.
+     * @return null.
+     */
+    protected Object formatOperator(Expression node, String operator, StringBuilder sb) {
+        sb.append('(');
+        for (int i = 0; i < node.getChildCount(); ++i) {
+            if (i > 0) {
+                sb.append(operator);
+            }
+            node.getChild(i).visit(this, sb);
+        }
+        sb.append(')');
+        return null;
+    }
 } // class FormatExpressionVisitor
\ No newline at end of file
@@ -0,0 +1,226 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.World;
+
+import nu.nerd.beastmaster.BeastMaster;
+
+// ----------------------------------------------------------------------------
+/**
+ * Caches the surface height of every block column in loaded chunks, for the
+ * DEPTH Zone Specification predicate.
+ *
+ * The surface is the Y coordinate of the highest motion-blocking block in the
+ * column, as returned by World.getHighestBlockYAt(). Each chunk's heights are
+ * read from the heightmap of a ChunkSnapshot when it loads, into an array of
+ * 256 shorts, and dropped when it unloads. Only Worlds with a Zone
+ * Specification that uses DEPTH are cached (see
+ * {@link ZoneSnapshot#usesDepth(UUID)}); when that changes, the World's
+ * loaded chunks are cached or discarded all at once. When a block is placed or broken
+ * at or above the surface, the column is read again from the World (see
+ * {@link #update(World, int, int)}) and, if its height changed, the chunk's
+ * cached zone lookups are discarded. Other changes to terrain, such as
+ * explosions or growing trees, are only seen when the chunk next loads.
+ * Lookups in chunks that are not cached fall back to
+ * World.getHighestBlockYAt() in the main thread.
+ *
+ * The cache is filled in the main thread, but cached heights can be read
+ * from any thread. In other threads, lookups in chunks that are not cached
+ * return {@link #UNCACHED} rather than touching the World, and are counted
+ * by {@link BiomeCache#getMisses()}.
+ */
+public class HeightCache {
+    // ------------------------------------------------------------------------
+    /**
+     * Read and cache the surface heights of a newly loaded chunk.
+     *
+     * The snapshot is shared with the {@link BiomeCache}, so that each chunk
+     * load copies the chunk's data only once.
+     *
+     * @param chunk    the Chunk.
+     * @param snapshot a snapshot of the chunk that includes its heightmap.
+     */
+    public void load(Chunk chunk, ChunkSnapshot snapshot) {
+        short[] heights = new short[COLUMNS_PER_CHUNK];
+        for (int z = 0; z < 16; ++z) {
+            for (int x = 0; x < 16; ++x) {
+                // The snapshot's heightmap holds the Y of the first free
+                // block, one above World.getHighestBlockYAt().
+                heights[columnIndex(x, z)] = (short) (snapshot.getHighestBlockYAt(x, z) - 1);
+            }
+        }
+
+        ConcurrentHashMap<Long, short[]> worldHeights = _heights.computeIfAbsent(chunk.getWorld().getUID(),
+                                                                                k -> new ConcurrentHashMap<>());
+        worldHeights.put(BiomeCache.chunkKey(chunk.getX(), chunk.getZ()), heights);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Read and cache the surface heights of every loaded chunk of a World.
+     *
+     * This is called when a Zone Specification in the World starts using
+     * DEPTH, since chunks that loaded earlier were not cached.
+     *
+     * @param world the World.
+     */
+    public void load(World world) {
+        for (Chunk chunk : world.getLoadedChunks()) {
+            load(chunk, chunk.getChunkSnapshot(true, false, false));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached heights of every chunk of a World, when no Zone
+     * Specification in the World uses DEPTH any more.
+     *
+     * @param worldId the UUID of the World.
+     */
+    public void clear(UUID worldId) {
+        _heights.remove(worldId);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached heights of an unloaded chunk.
+     *
+     * @param chunk the Chunk.
+     */
+    public void unload(Chunk chunk) {
+        ConcurrentHashMap<Long, short[]> worldHeights = _heights.get(chunk.getWorld().getUID());
+        if (worldHeights != null) {
+            worldHeights.remove(BiomeCache.chunkKey(chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if a block change at the specified coordinates could change
+     * the cached surface height of its column.
+     *
+     * @param world the World.
+     * @param x     the block X coordinate.
+     * @param y     the block Y coordinate.
+     * @param z     the block Z coordinate.
+     * @return true if the column is cached and the block is at or above the
+     *         surface.
+     */
+    public boolean affectsSurface(World world, int x, int y, int z) {
+        int surface = getCachedSurface(world, x, z);
+        return surface != UNCACHED && y >= surface;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Read the surface height of a cached column again from the World, after
+     * a block changed.
+     *
+     * If the height changed, cached zone lookups in the chunk are discarded,
+     * since they may depend on it.
+     *
+     * @param world the World.
+     * @param x     the block X coordinate.
+     * @param z     the block Z coordinate.
+     */
+    public void update(World world, int x, int z) {
+        short[] heights = getHeights(world, x >> 4, z >> 4);
+        if (heights != null) {
+            short surface = (short) world.getHighestBlockYAt(x, z);
+            int index = columnIndex(x & 15, z & 15);
+            if (heights[index] != surface) {
+                heights[index] = surface;
+                BeastMaster.ZONES.getSnapshot().evictChunk(world.getUID(), x >> 4, z >> 4);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the surface height of the specified block column.
+     *
+     * @param world the World.
+     * @param x     the block X coordinate.
+     * @param z     the block Z coordinate.
+     * @return the Y coordinate of the highest motion-blocking block, or
+     *         {@link #UNCACHED} if the chunk is not cached and this is not
+     *         the main thread.
+     */
+    public int getSurface(World world, int x, int z) {
+        int surface = getCachedSurface(world, x, z);
+        if (surface != UNCACHED) {
+            return surface;
+        }
+        if (!Bukkit.isPrimaryThread()) {
+            BiomeCache.countMiss();
+            return UNCACHED;
+        }
+        return world.getHighestBlockYAt(x, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the surface height of the specified block column, only if the
+     * chunk is cached.
+     *
+     * @param world the World.
+     * @param x     the block X coordinate.
+     * @param z     the block Z coordinate.
+     * @return the Y coordinate of the highest motion-blocking block, or
+     *         {@link #UNCACHED} if the chunk is not cached.
+     */
+    public int getCachedSurface(World world, int x, int z) {
+        short[] heights = getHeights(world, x >> 4, z >> 4);
+        return (heights != null) ? heights[columnIndex(x & 15, z & 15)] : UNCACHED;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the cached heights of a chunk.
+     *
+     * @param world  the World.
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the heights, indexed by {@link #columnIndex(int, int)}, or null
+     *         if the chunk is not cached.
+     */
+    protected short[] getHeights(World world, int chunkX, int chunkZ) {
+        ConcurrentHashMap<Long, short[]> worldHeights = _heights.get(world.getUID());
+        return (worldHeights != null) ? worldHeights.get(BiomeCache.chunkKey(chunkX, chunkZ)) : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the index of a column in the array of a chunk.
+     *
+     * @param x the X coordinate within the chunk, [0,15].
+     * @param z the Z coordinate within the chunk, [0,15].
+     * @return the index.
+     */
+    protected static int columnIndex(int x, int z) {
+        return (z << 4) | x;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The value returned by {@link #getCachedSurface(World, int, int)} for
+     * columns that are not cached.
+     */
+    public static final int UNCACHED = Integer.MIN_VALUE;
+
+    /**
+     * Number of block columns in a chunk.
+     */
+    protected static final int COLUMNS_PER_CHUNK = 16 * 16;
+
+    /**
+     * Map from World UUID to map from chunk key to surface heights by column
+     * index.
+     */
+    protected ConcurrentHashMap<UUID, ConcurrentHashMap<Long, short[]>> _heights = new ConcurrentHashMap<>();
+} // class HeightCache
\ No newline at end of file
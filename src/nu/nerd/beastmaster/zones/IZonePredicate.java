@@ -2,11 +2,11 @@ package nu.nerd.beastmaster.zones;
 
 import java.util.List;
 
-import org.bukkit.Location;
+import org.bukkit.World;
 
 // ----------------------------------------------------------------------------
 /**
- * Validates the constraints on and evaluates a Zone Specification predicate.
+ * Validates the constraints on and compiles a Zone Specification predicate.
  * 
  * Constraints are validated when the predicate is parsed; for example, in
  * circle(x,z,radius) to check that radius >= 0.
@@ -26,11 +26,45 @@ public interface IZonePredicate {
 
     // ------------------------------------------------------------------------
     /**
-     * Return true if the predicate matches the specified Location.
+     * Return a {@link CompiledExpression} that evaluates the predicate with
+     * the specified arguments.
      * 
-     * @param loc the Location.
-     * @param args the predicate arguments (of type String and Double, only).
-     * @return the value of the predicate at the specifeid Location.
+     * Arguments should be unpacked into local (effectively final) primitives
+     * here, so that they are captured once rather than read from the list on
+     * every evaluation.
+     * 
+     * @param args the validated predicate arguments (of type String and
+     *        Double, or as replaced by validateArgs()).
+     * @return the compiled predicate.
+     */
+    public CompiledExpression compile(List<Object> args);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value of the predicate over the whole of the specified Box.
+     * 
+     * Implementations must only return TRUE or FALSE if the predicate has
+     * that value at every point in the box, and may return MAYBE whenever
+     * they cannot be sure.
+     * 
+     * @param world the World containing the Box, or null if not known;
+     *        predicates that depend on world data return MAYBE if null.
+     * @param args the validated predicate arguments.
+     * @param box the Box.
+     * @return TRUE or FALSE if the predicate has that value everywhere in the
+     *         box, or MAYBE.
+     */
+    public Tristate evaluate(World world, List<Object> args, Box box);
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a Box containing every point where the predicate could be true.
+     * 
+     * The result is conservative; for predicates that do not depend on
+     * coordinates, it is {@link Box#EVERYWHERE}.
+     * 
+     * @param args the validated predicate arguments.
+     * @return the extent of the predicate.
      */
-    public boolean matches(Location loc, List<Object> args);
+    public Box getExtent(List<Object> args);
 } // class IZonePredicate
\ No newline at end of file
@@ -120,15 +120,17 @@ public class Parser {
      */
     Expression orExpr() {
         Expression left = xorExpr();
-        if (take(Token.Type.OR)) {
-            Expression right = xorExpr();
-            Expression operator = new OrExpression();
-            operator.addChild(left);
-            operator.addChild(right);
-            return operator;
-        } else {
+        if (!have(Token.Type.OR)) {
             return left;
         }
+
+        // A chain of the same operator becomes a single n-ary node.
+        Expression operator = new OrExpression();
+        operator.addChild(left);
+        while (take(Token.Type.OR)) {
+            operator.addChild(xorExpr());
+        }
+        return operator;
     }
 
     // ------------------------------------------------------------------------
@@ -142,15 +144,17 @@ public class Parser {
      */
     Expression xorExpr() {
         Expression left = andExpr();
-        if (take(Token.Type.XOR)) {
-            Expression right = andExpr();
-            Expression operator = new XorExpression();
-            operator.addChild(left);
-            operator.addChild(right);
-            return operator;
-        } else {
+        if (!have(Token.Type.XOR)) {
             return left;
         }
+
+        // A chain of the same operator becomes a single n-ary node.
+        Expression operator = new XorExpression();
+        operator.addChild(left);
+        while (take(Token.Type.XOR)) {
+            operator.addChild(andExpr());
+        }
+        return operator;
     }
 
     // ------------------------------------------------------------------------
@@ -164,15 +168,17 @@ public class Parser {
      */
     Expression andExpr() {
         Expression left = primary();
-        if (take(Token.Type.AND)) {
-            Expression right = primary();
-            Expression operator = new AndExpression();
-            operator.addChild(left);
-            operator.addChild(right);
-            return operator;
-        } else {
+        if (!have(Token.Type.AND)) {
             return left;
         }
+
+        // A chain of the same operator becomes a single n-ary node.
+        Expression operator = new AndExpression();
+        operator.addChild(left);
+        while (take(Token.Type.AND)) {
+            operator.addChild(primary());
+        }
+        return operator;
     }
 
     // ------------------------------------------------------------------------
@@ -237,7 +243,7 @@ public class Parser {
 
         // Validate number and types of arguments before expecting the R_PAREN
         // for a more informative error message.
-        ZonePredicate zonePred = ZonePredicate.byIdent(predExpr.getIdent());
+        ZonePredicate zonePred = predExpr.getZonePredicate();
         if (zonePred == null) {
             // TODO: replace ParseError with a call to an error() function with
             // an error ID to allow us to show suggestions for predicate names.
@@ -245,9 +251,10 @@ public class Parser {
         }
 
         int expectedArgCount = zonePred.getParameters().size();
-        if (expectedArgCount != argTokens.size()) {
+        boolean variadic = zonePred.getParameters().isVariadic();
+        if (variadic ? argTokens.size() < expectedArgCount : argTokens.size() != expectedArgCount) {
             String plural = (expectedArgCount == 1) ? "" : "s";
-            throw new ParseError("expecting " + expectedArgCount +
+            throw new ParseError("expecting " + (variadic ? "at least " : "") + expectedArgCount +
                                  " predicate argument" + plural + " but got " + argTokens.size(),
                 rParen);
         }
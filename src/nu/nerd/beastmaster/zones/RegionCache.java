@@ -0,0 +1,415 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.World;
+
+import com.sk89q.worldedit.bukkit.BukkitAdapter;
+import com.sk89q.worldedit.math.BlockVector3;
+import com.sk89q.worldguard.WorldGuard;
+import com.sk89q.worldguard.protection.managers.RegionManager;
+import com.sk89q.worldguard.protection.regions.ProtectedCuboidRegion;
+import com.sk89q.worldguard.protection.regions.ProtectedRegion;
+import com.sk89q.worldguard.protection.regions.RegionContainer;
+
+import nu.nerd.beastmaster.BeastMaster;
+
+// ----------------------------------------------------------------------------
+/**
+ * Caches the WorldGuard regions that intersect each chunk, for the WG Zone
+ * Specification predicate.
+ *
+ * Region IDs are interned to small integers when specifications are parsed.
+ * For each chunk, the regions that contain the whole chunk column are
+ * recorded as a BitSet of interned IDs, so testing them is a bit lookup. The
+ * remaining regions that intersect the chunk are kept in a short list and
+ * tested with ProtectedRegion.contains().
+ *
+ * WorldGuard does not announce changes to regions, so a World's cached
+ * regions are cleared when region commands that change regions are run in
+ * it, and all Worlds' are cleared periodically, after a configurable time to
+ * live. Clearing a World's regions also discards the ZoneManager's cached
+ * chunk sections in that World that may have been resolved using region
+ * data.
+ *
+ * Cached regions may be read from any thread; a chunk that is looked up
+ * concurrently may be loaded more than once, which is harmless.
+ */
+public class RegionCache {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the interned integer ID of a WorldGuard region ID.
+     *
+     * @param regionId the region ID.
+     * @return the corresponding integer, which is the same for every call
+     *         with the same region ID.
+     */
+    public synchronized int intern(String regionId) {
+        Integer id = _regionIds.get(regionId);
+        if (id == null) {
+            id = _regionIds.size();
+            _regionIds.put(regionId, id);
+        }
+        return id;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the block at the specified coordinates is in the region
+     * with the specified interned ID.
+     *
+     * @param world the World.
+     * @param id    the interned region ID, or {@link #ANY_REGION} to match any
+     *              (non-global) region.
+     * @param x     the block X coordinate.
+     * @param y     the block Y coordinate.
+     * @param z     the block Z coordinate.
+     * @return true if the block is in the region.
+     */
+    public boolean contains(World world, int id, int x, int y, int z) {
+        if (y < 0 || y >= CACHE_HEIGHT) {
+            // Rare: outside the cached column; ask WorldGuard directly.
+            RegionManager regionManager = getRegionManager(world);
+            if (regionManager != null) {
+                for (ProtectedRegion region : regionManager.getApplicableRegions(BlockVector3.at(x, y, z))) {
+                    if (id == ANY_REGION || intern(region.getId()) == id) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        ChunkRegions regions = getChunkRegions(world, x >> 4, z >> 4);
+        if (id == ANY_REGION ? !regions.containing.isEmpty() : regions.containing.get(id)) {
+            return true;
+        }
+        for (int i = 0; i < regions.partialIds.length; ++i) {
+            if ((id == ANY_REGION || regions.partialIds[i] == id) && regions.partial[i].contains(x, y, z)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value of the WG predicate over a whole Box.
+     *
+     * Only boxes within a single chunk, in the range of valid Y coordinates,
+     * are analysed.
+     *
+     * @param world the World.
+     * @param id    the interned region ID, or {@link #ANY_REGION}.
+     * @param box   the Box.
+     * @return TRUE if the region contains the whole box, FALSE if it does not
+     *         intersect the chunk, otherwise MAYBE.
+     */
+    public Tristate evaluate(World world, int id, Box box) {
+        if (!box.isBoundedXZ() || box.minY < 0 || box.maxY >= CACHE_HEIGHT) {
+            return Tristate.MAYBE;
+        }
+        int chunkX = (int) Math.floor(box.minX) >> 4;
+        int chunkZ = (int) Math.floor(box.minZ) >> 4;
+        if (chunkX != (int) Math.floor(box.maxX) >> 4 || chunkZ != (int) Math.floor(box.maxZ) >> 4) {
+            return Tristate.MAYBE;
+        }
+
+        ChunkRegions regions = getChunkRegions(world, chunkX, chunkZ);
+        if (id == ANY_REGION) {
+            if (!regions.containing.isEmpty()) {
+                return Tristate.TRUE;
+            }
+            return (regions.partialIds.length == 0) ? Tristate.FALSE : Tristate.MAYBE;
+        }
+
+        if (regions.containing.get(id)) {
+            return Tristate.TRUE;
+        }
+        for (int partialId : regions.partialIds) {
+            if (partialId == id) {
+                return Tristate.MAYBE;
+            }
+        }
+        return Tristate.FALSE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached regions of an unloaded chunk.
+     *
+     * @param chunk the Chunk.
+     */
+    public void unload(Chunk chunk) {
+        ConcurrentHashMap<Long, ChunkRegions> worldChunks = _chunks.get(chunk.getWorld().getUID());
+        if (worldChunks != null) {
+            worldChunks.remove(chunkKey(chunk.getX(), chunk.getZ()));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard all cached region data if it is older than the configured time
+     * to live.
+     *
+     * This method is intended to be called periodically.
+     *
+     * @param ttlSeconds the time to live in seconds; if 0 or less, the cache
+     *                   never expires.
+     */
+    public void expire(int ttlSeconds) {
+        if (ttlSeconds > 0 && System.currentTimeMillis() - _loadTime >= ttlSeconds * 1000L) {
+            invalidate();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the specified command line (without a leading '/') is a
+     * WorldGuard region command that may add, remove, resize or reload
+     * regions.
+     *
+     * Commands that only show or change region properties, such as info,
+     * list, select, flag and addmember, return false.
+     *
+     * @param commandLine the command line.
+     * @return true if the command may change the shape of regions.
+     */
+    public static boolean isRegionCommand(String commandLine) {
+        String[] words = commandLine.trim().toLowerCase().split("\\s+");
+        String command = words[0];
+        if (command.startsWith("worldguard:")) {
+            command = command.substring("worldguard:".length());
+        }
+        if (!command.equals("rg") && !command.equals("region") && !command.equals("regions")) {
+            return false;
+        }
+        return words.length > 1 && MODIFYING_SUBCOMMANDS.contains(words[1]);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the World whose regions are affected by a region command.
+     *
+     * That is the World named by a "-w" flag, if present, and otherwise the
+     * World of the sender. The load and migrate subcommands affect all Worlds
+     * unless a World is named.
+     *
+     * @param commandLine the command line, for which
+     *                    {@link #isRegionCommand(String)} returned true.
+     * @param senderWorld the World of the command sender, or null for the
+     *                    console.
+     * @return the World, or null if all Worlds may be affected.
+     */
+    public static World getCommandWorld(String commandLine, World senderWorld) {
+        String[] words = commandLine.trim().split("\\s+");
+        for (int i = 2; i < words.length - 1; ++i) {
+            if (words[i].equals("-w")) {
+                return Bukkit.getWorld(words[i + 1]);
+            }
+        }
+        String subcommand = words[1].toLowerCase();
+        return (subcommand.equals("load") || subcommand.equals("reload") || subcommand.startsWith("migrate"))
+            ? null
+            : senderWorld;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached regions of every World.
+     *
+     * Zone lookup results that may have been derived from them are also
+     * discarded.
+     */
+    public void invalidate() {
+        _loadTime = System.currentTimeMillis();
+        for (UUID worldId : new ArrayList<>(_chunks.keySet())) {
+            invalidate(worldId);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the cached regions of one World.
+     *
+     * If any regions were cached, zone lookup results in that World that may
+     * have been derived from them are also discarded.
+     *
+     * @param worldId the UUID of the World.
+     */
+    public void invalidate(UUID worldId) {
+        ConcurrentHashMap<Long, ChunkRegions> worldChunks = _chunks.remove(worldId);
+        if (worldChunks != null && !worldChunks.isEmpty()) {
+            BeastMaster.ZONES.invalidateRegions(worldId);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the cached regions of a chunk, computing them if necessary.
+     *
+     * @param world  the World.
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the regions intersecting the chunk.
+     */
+    protected ChunkRegions getChunkRegions(World world, int chunkX, int chunkZ) {
+        ConcurrentHashMap<Long, ChunkRegions> worldChunks = _chunks.computeIfAbsent(world.getUID(),
+                                                                                    k -> new ConcurrentHashMap<>());
+
+        long key = chunkKey(chunkX, chunkZ);
+        ChunkRegions regions = worldChunks.get(key);
+        if (regions == null) {
+            regions = loadChunkRegions(world, chunkX, chunkZ);
+            worldChunks.put(key, regions);
+        }
+        return regions;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Query WorldGuard for the regions intersecting a chunk.
+     *
+     * @param world  the World.
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the regions intersecting the chunk.
+     */
+    protected ChunkRegions loadChunkRegions(World world, int chunkX, int chunkZ) {
+        BitSet containing = new BitSet();
+        List<ProtectedRegion> partial = new ArrayList<>();
+
+        RegionManager regionManager = getRegionManager(world);
+        if (regionManager != null) {
+            int minX = chunkX << 4;
+            int minZ = chunkZ << 4;
+            ProtectedCuboidRegion chunkRegion = new ProtectedCuboidRegion("__beastmaster_chunk__",
+                BlockVector3.at(minX, 0, minZ),
+                BlockVector3.at(minX + 15, CACHE_HEIGHT - 1, minZ + 15));
+            // applicableRegions does NOT include the global region.
+            for (ProtectedRegion region : regionManager.getApplicableRegions(chunkRegion)) {
+                if (region instanceof ProtectedCuboidRegion &&
+                    region.getMinimumPoint().getX() <= minX && region.getMaximumPoint().getX() >= minX + 15 &&
+                    region.getMinimumPoint().getZ() <= minZ && region.getMaximumPoint().getZ() >= minZ + 15 &&
+                    region.getMinimumPoint().getY() <= 0 && region.getMaximumPoint().getY() >= CACHE_HEIGHT - 1) {
+                    containing.set(intern(region.getId()));
+                } else {
+                    partial.add(region);
+                }
+            }
+        }
+        return new ChunkRegions(containing, partial);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the key of a chunk.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param chunkZ the chunk Z coordinate.
+     * @return the key.
+     */
+    protected static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the WorldGuard RegionManager of a World.
+     *
+     * @param world the World.
+     * @return the RegionManager, or null if regions are disabled in the World.
+     */
+    protected static RegionManager getRegionManager(World world) {
+        RegionContainer container = WorldGuard.getInstance().getPlatform().getRegionContainer();
+        return container.get(BukkitAdapter.adapt(world));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The regions intersecting one chunk.
+     */
+    protected final class ChunkRegions {
+        /**
+         * Constructor.
+         *
+         * @param containing the interned IDs of regions containing the whole
+         *                   chunk column.
+         * @param partial    the other regions intersecting the chunk.
+         */
+        ChunkRegions(BitSet containing, List<ProtectedRegion> partial) {
+            this.containing = containing;
+            this.partial = partial.toArray(new ProtectedRegion[partial.size()]);
+            partialIds = new int[this.partial.length];
+            for (int i = 0; i < this.partial.length; ++i) {
+                partialIds[i] = intern(this.partial[i].getId());
+            }
+        }
+
+        /**
+         * The interned IDs of regions containing the whole chunk column.
+         */
+        final BitSet containing;
+
+        /**
+         * The other regions intersecting the chunk.
+         */
+        final ProtectedRegion[] partial;
+
+        /**
+         * The interned IDs of the regions in partial.
+         */
+        final int[] partialIds;
+    } // class ChunkRegions
+
+    // ------------------------------------------------------------------------
+    /**
+     * The interned ID signifying any (non-global) region, as written "*" in
+     * Zone Specifications.
+     */
+    public static final int ANY_REGION = -1;
+
+    /**
+     * Height of the cached chunk columns; Y coordinates are in [0,
+     * CACHE_HEIGHT).
+     */
+    protected static final int CACHE_HEIGHT = 256;
+
+    /**
+     * WorldGuard region subcommands, and their aliases, that may add, remove,
+     * resize or reload regions.
+     */
+    protected static final HashSet<String> MODIFYING_SUBCOMMANDS = new HashSet<>(Arrays.asList(
+        "define", "def", "d", "create",
+        "redefine", "update", "move",
+        "claim",
+        "remove", "rem", "delete", "del",
+        "load", "reload",
+        "migratedb", "migrateuuid", "migrateheights"));
+
+    /**
+     * Map from WorldGuard region ID to interned integer ID.
+     */
+    protected HashMap<String, Integer> _regionIds = new HashMap<>();
+
+    /**
+     * Map from World UUID to map from chunk key to regions intersecting the
+     * chunk.
+     */
+    protected ConcurrentHashMap<UUID, ConcurrentHashMap<Long, ChunkRegions>> _chunks = new ConcurrentHashMap<>();
+
+    /**
+     * The time, in milliseconds since the epoch, when the cache was last
+     * cleared.
+     */
+    protected volatile long _loadTime = System.currentTimeMillis();
+} // class RegionCache
\ No newline at end of file
@@ -0,0 +1,333 @@
+package nu.nerd.beastmaster.zones;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.function.Supplier;
+
+import org.bukkit.World;
+
+// ----------------------------------------------------------------------------
+/**
+ * Hash-conses compiled subexpressions across all Zones, and memoises the
+ * values of expensive ones during a single zone lookup.
+ *
+ * The {@link ExpressionCompiler} registers every compiled operator and
+ * predicate here, keyed by its formatted (simplified) text, so structurally
+ * identical subexpressions in different Zone Specifications share one
+ * CompiledExpression. Shared subexpressions whose estimated cost is at least
+ * {@link #MEMO_MIN_COST} are wrapped so that, within one lookup, each is
+ * evaluated at most once: for example, wg("spawn") | circle(0,0,500) copied
+ * into several sibling Zones is only tested once per Location.
+ *
+ * Memoised values are kept in a small scratch array per thread, indexed by
+ * the ID of the shared subexpression and validated by a generation number.
+ * The generation advances at the start of every lookup (see
+ * {@link #beginLookup()}) and whenever an expression is tested at different
+ * coordinates, so a value is never reused for another Location.
+ *
+ * Shared subexpressions are only weakly referenced here; they are kept alive
+ * by the Zones that use them, so that unloading a World's Zones releases
+ * their compiled specifications. The IDs of memoised subexpressions are
+ * recycled once they have been garbage collected, so the scratch arrays only
+ * grow to the number of memoised subexpressions in use at once.
+ */
+public class SharedExpressions {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the shared CompiledExpression for the specified key, compiling
+     * it if it is not already known.
+     *
+     * @param key      the formatted text of the simplified subexpression.
+     * @param cost     the estimated cost of evaluating the subexpression.
+     * @param compiler compiles the subexpression if it is not already known.
+     * @return the shared CompiledExpression.
+     */
+    public static synchronized CompiledExpression intern(String key, double cost,
+                                                         Supplier<CompiledExpression> compiler) {
+        WeakReference<CompiledExpression> reference = _shared.get(key);
+        CompiledExpression shared = (reference != null) ? reference.get() : null;
+        if (shared == null) {
+            shared = compiler.get();
+            if (cost >= MEMO_MIN_COST) {
+                recycleIds();
+                int id = _freeIds.isEmpty() ? _nextId++ : _freeIds.pop();
+                Memoised memoised = new Memoised(id, shared);
+                MemoisedReference memoisedReference = new MemoisedReference(memoised);
+                _memoisedReferences.add(memoisedReference);
+                _shared.put(key, memoisedReference);
+                shared = memoised;
+            } else {
+                _shared.put(key, new WeakReference<>(shared));
+            }
+        }
+        return shared;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Forget all shared subexpressions, when all Zones are reloaded.
+     *
+     * Zones compiled earlier keep working; they just stop sharing
+     * subexpressions with Zones compiled later.
+     */
+    public static synchronized void clear() {
+        _shared.clear();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Forget shared subexpressions that are no longer used by any Zone, after
+     * Zones are unloaded.
+     */
+    public static synchronized void purge() {
+        recycleIds();
+        _shared.values().removeIf(reference -> reference.get() == null);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Signify the start of a zone lookup in the current thread, discarding
+     * memoised values from any previous lookup.
+     */
+    public static void beginLookup() {
+        MEMO.get().advance();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Make the IDs of memoised subexpressions that have been garbage
+     * collected available for reuse.
+     *
+     * No Zone can still be evaluating a collected subexpression, so its ID
+     * cannot be confused with that of a new subexpression in the same
+     * lookup.
+     */
+    protected static void recycleIds() {
+        for (Reference<?> collected = _collected.poll(); collected != null; collected = _collected.poll()) {
+            MemoisedReference reference = (MemoisedReference) collected;
+            _memoisedReferences.remove(reference);
+            _freeIds.push(reference.id);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A weak reference to a Memoised subexpression that remembers its ID, so
+     * that the ID can be recycled once the subexpression is collected.
+     */
+    protected static final class MemoisedReference extends WeakReference<CompiledExpression> {
+        /**
+         * Constructor.
+         *
+         * @param memoised the memoised subexpression.
+         */
+        MemoisedReference(Memoised memoised) {
+            super(memoised, _collected);
+            id = memoised.id;
+        }
+
+        /**
+         * The ID of the memoised subexpression.
+         */
+        final int id;
+    } // class MemoisedReference
+
+    // ------------------------------------------------------------------------
+    /**
+     * A shared subexpression whose value is memoised per lookup.
+     */
+    protected static final class Memoised implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param id         the index of this subexpression in the scratch
+         *                   arrays.
+         * @param expression the subexpression.
+         */
+        Memoised(int id, CompiledExpression expression) {
+            this.id = id;
+            this.expression = expression;
+        }
+
+        /**
+         * @see nu.nerd.beastmaster.zones.CompiledExpression#test(org.bukkit.World,
+         *      double, double, double)
+         */
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            return MEMO.get().test(this, world, x, y, z);
+        }
+
+        /**
+         * Batches are not memoised; each point is only evaluated once.
+         *
+         * @see nu.nerd.beastmaster.zones.CompiledExpression#testBatch(org.bukkit.World,
+         *      double[], double[], double[], int, long[])
+         */
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            expression.testBatch(world, xs, ys, zs, count, result);
+        }
+
+        /**
+         * @see nu.nerd.beastmaster.zones.CompiledExpression#getProfile()
+         */
+        @Override
+        public ZoneProfiler.Profile getProfile() {
+            return expression.getProfile();
+        }
+
+        /**
+         * The index of this subexpression in the scratch arrays.
+         */
+        final int id;
+
+        /**
+         * The subexpression.
+         */
+        final CompiledExpression expression;
+    } // class Memoised
+
+    // ------------------------------------------------------------------------
+    /**
+     * The memoised values of one thread.
+     */
+    protected static final class Memo {
+        /**
+         * Discard all memoised values.
+         */
+        void advance() {
+            if (++generation == 0) {
+                Arrays.fill(stamps, 0);
+                generation = 1;
+            }
+        }
+
+        /**
+         * Return the value of a memoised subexpression, evaluating it if it
+         * has not been evaluated in the current lookup.
+         *
+         * @param memoised the subexpression.
+         * @param world    the World.
+         * @param x        the X coordinate.
+         * @param y        the Y coordinate.
+         * @param z        the Z coordinate.
+         * @return the value of the subexpression.
+         */
+        boolean test(Memoised memoised, World world, double x, double y, double z) {
+            if (world != this.world || x != this.x || y != this.y || z != this.z) {
+                this.world = world;
+                this.x = x;
+                this.y = y;
+                this.z = z;
+                advance();
+            }
+
+            int id = memoised.id;
+            if (id >= stamps.length) {
+                int length = Math.max(id + 1, stamps.length * 2);
+                stamps = Arrays.copyOf(stamps, length);
+                values = Arrays.copyOf(values, length);
+            }
+            if (stamps[id] == generation) {
+                return values[id];
+            }
+
+            int expected = generation;
+            boolean value = memoised.expression.test(world, x, y, z);
+            // Nested evaluation never changes the coordinates, but it may
+            // grow the arrays.
+            if (generation == expected) {
+                stamps[id] = generation;
+                values[id] = value;
+            }
+            return value;
+        }
+
+        /**
+         * The World of the current lookup.
+         */
+        World world;
+
+        /**
+         * The X coordinate of the current lookup.
+         */
+        double x = Double.NaN;
+
+        /**
+         * The Y coordinate of the current lookup.
+         */
+        double y = Double.NaN;
+
+        /**
+         * The Z coordinate of the current lookup.
+         */
+        double z = Double.NaN;
+
+        /**
+         * The current generation; values with a different stamp are stale.
+         */
+        int generation = 1;
+
+        /**
+         * The generation of each memoised value, by subexpression ID.
+         */
+        int[] stamps = new int[INITIAL_SIZE];
+
+        /**
+         * The memoised values, by subexpression ID.
+         */
+        boolean[] values = new boolean[INITIAL_SIZE];
+    } // class Memo
+
+    // ------------------------------------------------------------------------
+    /**
+     * Subexpressions with at least this estimated cost are memoised; cheaper
+     * ones cost less to evaluate than to look up.
+     */
+    protected static final double MEMO_MIN_COST = 10;
+
+    /**
+     * Initial length of the scratch arrays.
+     */
+    protected static final int INITIAL_SIZE = 64;
+
+    /**
+     * The memoised values of each thread.
+     */
+    protected static final ThreadLocal<Memo> MEMO = ThreadLocal.withInitial(Memo::new);
+
+    /**
+     * Map from formatted subexpression to shared CompiledExpression.
+     */
+    protected static final HashMap<String, WeakReference<CompiledExpression>> _shared = new HashMap<>();
+
+    /**
+     * References to all memoised subexpressions that have not been collected
+     * and recycled, including those forgotten by {@link #clear()}; a
+     * reference must stay reachable to be enqueued when its subexpression is
+     * collected.
+     */
+    protected static final HashSet<MemoisedReference> _memoisedReferences = new HashSet<>();
+
+    /**
+     * Receives the references of memoised subexpressions that have been
+     * garbage collected.
+     */
+    protected static final ReferenceQueue<CompiledExpression> _collected = new ReferenceQueue<>();
+
+    /**
+     * IDs of collected memoised subexpressions, available for reuse.
+     */
+    protected static final ArrayDeque<Integer> _freeIds = new ArrayDeque<>();
+
+    /**
+     * The ID of the next memoised subexpression, if there are no free IDs.
+     */
+    protected static int _nextId;
+} // class SharedExpressions
\ No newline at end of file
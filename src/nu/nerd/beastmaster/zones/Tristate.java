@@ -0,0 +1,93 @@
+package nu.nerd.beastmaster.zones;
+
+// ----------------------------------------------------------------------------
+/**
+ * The value of a Zone Specification over a whole region: true everywhere,
+ * false everywhere, or possibly different at different points.
+ *
+ * The operators implement Kleene's three-valued logic, which is exact for
+ * TRUE and FALSE operands and conservative for MAYBE.
+ */
+public enum Tristate {
+    FALSE, TRUE, MAYBE;
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Tristate corresponding to a boolean.
+     *
+     * @param value the boolean.
+     * @return TRUE or FALSE.
+     */
+    public static Tristate of(boolean value) {
+        return value ? TRUE : FALSE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if this value is the same at every point, i.e. not MAYBE.
+     *
+     * @return true if this value is TRUE or FALSE.
+     */
+    public boolean isDefinite() {
+        return this != MAYBE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the conjunction of this value and another.
+     *
+     * @param other the other value.
+     * @return this AND other.
+     */
+    public Tristate and(Tristate other) {
+        if (this == FALSE || other == FALSE) {
+            return FALSE;
+        }
+        return (this == TRUE && other == TRUE) ? TRUE : MAYBE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the disjunction of this value and another.
+     *
+     * @param other the other value.
+     * @return this OR other.
+     */
+    public Tristate or(Tristate other) {
+        if (this == TRUE || other == TRUE) {
+            return TRUE;
+        }
+        return (this == FALSE && other == FALSE) ? FALSE : MAYBE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the exclusive-or of this value and another.
+     *
+     * @param other the other value.
+     * @return this XOR other.
+     */
+    public Tristate xor(Tristate other) {
+        if (this == MAYBE || other == MAYBE) {
+            return MAYBE;
+        }
+        return of(this != other);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the negation of this value.
+     *
+     * @return NOT this.
+     */
+    public Tristate not() {
+        switch (this) {
+        case FALSE:
+            return TRUE;
+        case TRUE:
+            return FALSE;
+        default:
+            return MAYBE;
+        }
+    }
+} // class Tristate
\ No newline at end of file
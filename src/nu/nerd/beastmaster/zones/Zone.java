@@ -1,6 +1,7 @@
 package nu.nerd.beastmaster.zones;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,7 +40,10 @@ public class Zone {
      * @param world the World where this Zone is the root of the Zone hierarchy.
      */
     public Zone(World world) {
-        this(world.getName(), null, null);
+        _id = world.getName();
+        _world = world;
+        _inheritsBlocks = true;
+        _inheritsReplacements = true;
     }
 
     // ------------------------------------------------------------------------
@@ -95,6 +99,8 @@ public class Zone {
         }
         parent.children().add(this);
         _parent = parent;
+        BeastMaster.ZONES.invalidateCache();
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -121,10 +127,27 @@ public class Zone {
     /**
      * Return the World that this Zone belongs to.
      *
-     * @return the World that this Zone belongs to.
+     * The World is cached by the root Zone once it has been resolved by name.
+     *
+     * @return the World that this Zone belongs to, or null if it is not
+     *         loaded.
      */
     public World getWorld() {
-        return Bukkit.getWorld(getRoot().getId());
+        Zone root = getRoot();
+        if (root._world == null) {
+            root._world = Bukkit.getWorld(root.getId());
+        }
+        return root._world;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set the World of a root Zone, when that World is loaded.
+     *
+     * @param world the World, or null if it has been unloaded.
+     */
+    public void setWorld(World world) {
+        _world = world;
     }
 
     // ------------------------------------------------------------------------
@@ -154,11 +177,22 @@ public class Zone {
      * Set the Zone Specification Language expression corresponding to this
      * Zone.
      *
+     * The expression is simplified by the {@link ExpressionSimplifier} and
+     * then compiled to the {@link CompiledExpression} used by
+     * {@link #contains(World, double, double, double)} and profiled by the
+     * {@link ZoneProfiler}. The specification text is formatted from the
+     * expression as written.
+     *
      * @param expression the expression.
      */
     public void setExpression(Expression expression) {
         _expression = expression;
         _specification = formatExpression(expression);
+        _simplified = (expression != null) ? ExpressionSimplifier.simplify(expression) : null;
+        _compiled = (expression != null) ? ZoneProfiler.profileZone(_id, ExpressionCompiler.compile(_simplified))
+                                         : null;
+        _extent = (expression != null) ? (Box) _simplified.visit(EXTENT, null) : Box.EVERYWHERE;
+        BeastMaster.ZONES.invalidateCache();
     }
 
     // ------------------------------------------------------------------------
@@ -171,6 +205,40 @@ public class Zone {
         return _expression;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the simplified Expression used to evaluate this Zone, or null if
+     * this is a root Zone.
+     *
+     * @return the simplified Expression, or null.
+     */
+    public Expression getSimplifiedExpression() {
+        return _simplified;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the CompiledExpression used to test this Zone, or null if this is
+     * a root Zone.
+     *
+     * @return the CompiledExpression, or null.
+     */
+    public CompiledExpression getCompiledExpression() {
+        return _compiled;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a Box containing every point where this Zone's Expression could
+     * be true.
+     *
+     * @return the conservative extent of this Zone; {@link Box#EVERYWHERE}
+     *         for root Zones.
+     */
+    public Box getExtent() {
+        return _extent;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Return true if this Zone contains the specified Location.
@@ -179,8 +247,39 @@ public class Zone {
      * @return true if the Location is in this Zone.
      */
     public boolean contains(Location loc) {
-        return (_expression == null) ? getWorld().equals(loc.getWorld())
-                                     : (Boolean) _expression.visit(EVALUATOR, loc);
+        return contains(loc.getWorld(), loc.getX(), loc.getY(), loc.getZ());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if this Zone contains the specified coordinates.
+     *
+     * @param world the World.
+     * @param x     the X coordinate.
+     * @param y     the Y coordinate.
+     * @param z     the Z coordinate.
+     * @return true if the coordinates are in this Zone.
+     */
+    public boolean contains(World world, double x, double y, double z) {
+        SharedExpressions.beginLookup();
+        return (_compiled == null) ? getWorld().equals(world)
+                                   : _compiled.test(world, x, y, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value of {@link #contains(World, double, double, double)}
+     * over the whole of the specified Box, which must be in this Zone's
+     * World.
+     *
+     * @param world the World containing the Box.
+     * @param box   the Box.
+     * @return TRUE or FALSE if this Zone's Expression has that value
+     *         everywhere in the box, or MAYBE.
+     */
+    public Tristate evaluate(World world, Box box) {
+        return (_simplified == null) ? Tristate.TRUE
+                                     : (Tristate) _simplified.visit(new BoxExpressionVisitor(world), box);
     }
 
     // ------------------------------------------------------------------------
@@ -192,6 +291,7 @@ public class Zone {
      */
     public void setInheritsBlocks(boolean inheritsBlocks) {
         _inheritsBlocks = inheritsBlocks;
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -213,6 +313,7 @@ public class Zone {
      */
     public void setInheritsReplacements(boolean inheritsReplacements) {
         _inheritsReplacements = inheritsReplacements;
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -240,6 +341,7 @@ public class Zone {
         } else {
             _miningDropsIds.put(material, dropSetId);
         }
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -266,7 +368,7 @@ public class Zone {
     // ------------------------------------------------------------------------
     /**
      * Return the {@link DropSet} controlling drops when the specified Material
-     * is mined.
+     * is mined, from a precomputed table.
      *
      * @param material the type of the mined block.
      * @param inherit  if true, mining drops inherited from the parent zone are
@@ -275,7 +377,8 @@ public class Zone {
      *         is mined, or null if this Zone does not override the drops.
      */
     public DropSet getMiningDrops(Material material, boolean inherit) {
-        return BeastMaster.LOOTS.getDropSet(getMiningDropsId(material, inherit));
+        updateRules();
+        return (inherit ? _effectiveMiningDrops : _ownMiningDrops).get(material);
     }
 
     // ------------------------------------------------------------------------
@@ -330,6 +433,7 @@ public class Zone {
         } else {
             _mobReplacementDropSetIDs.put(entityType, dropSetId);
         }
+        BeastMaster.ZONES.invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -355,7 +459,7 @@ public class Zone {
     // ------------------------------------------------------------------------
     /**
      * Return the DropSet of replacements for newly spawned mobs of the
-     * specified EntityType in this zone.
+     * specified EntityType in this zone, from a precomputed table.
      *
      * @param entityType the EntityType of a newly spawned mob.
      * @param inherit    if true, mob replacements inherited from the parent
@@ -364,7 +468,8 @@ public class Zone {
      *         specified EntityType in this zone.
      */
     public DropSet getMobReplacementDropSet(EntityType entityType, boolean inherit) {
-        return BeastMaster.LOOTS.getDropSet(getMobReplacementDropSetId(entityType, inherit));
+        updateRules();
+        return (inherit ? _effectiveMobReplacements : _ownMobReplacements).get(entityType);
     }
 
     // ------------------------------------------------------------------------
@@ -427,6 +532,49 @@ public class Zone {
         return _replacesSpawnerMobs;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Rebuild the tables of DropSets returned by
+     * {@link #getMiningDrops(Material, boolean)} and
+     * {@link #getMobReplacementDropSet(EntityType, boolean)}, if they are out of
+     * date.
+     *
+     * Inherited entries are copied from the parent's effective tables, which
+     * are updated first, and then overridden by this Zone's own entries. An
+     * own entry naming a missing loot table maps to null, hiding any
+     * inherited entry, as when the IDs are resolved one at a time.
+     */
+    protected void updateRules() {
+        int version = BeastMaster.ZONES.getRulesVersion();
+        if (_rulesVersion == version) {
+            return;
+        }
+
+        _ownMiningDrops.clear();
+        for (Entry<Material, String> entry : _miningDropsIds.entrySet()) {
+            _ownMiningDrops.put(entry.getKey(), BeastMaster.LOOTS.getDropSet(entry.getValue()));
+        }
+        _ownMobReplacements.clear();
+        for (Entry<EntityType, String> entry : _mobReplacementDropSetIDs.entrySet()) {
+            _ownMobReplacements.put(entry.getKey(), BeastMaster.LOOTS.getDropSet(entry.getValue()));
+        }
+
+        _effectiveMiningDrops.clear();
+        _effectiveMobReplacements.clear();
+        if (_parent != null) {
+            _parent.updateRules();
+            if (_inheritsBlocks) {
+                _effectiveMiningDrops.putAll(_parent._effectiveMiningDrops);
+            }
+            if (_inheritsReplacements) {
+                _effectiveMobReplacements.putAll(_parent._effectiveMobReplacements);
+            }
+        }
+        _effectiveMiningDrops.putAll(_ownMiningDrops);
+        _effectiveMobReplacements.putAll(_ownMobReplacements);
+        _rulesVersion = version;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Load the properties of this Zone from the specified configuration
@@ -444,6 +592,9 @@ public class Zone {
 
         _specification = null;
         _expression = null;
+        _simplified = null;
+        _compiled = null;
+        _extent = Box.EVERYWHERE;
         String specification = zoneSection.getString("specification");
         if (specification != null && !specification.isEmpty()) {
             try {
@@ -657,9 +808,9 @@ public class Zone {
 
     // ------------------------------------------------------------------------
     /**
-     * Visitor that evaluates {@link Expression}s.
+     * Visitor that computes the extents of {@link Expression}s.
      */
-    protected static EvalExpressionVisitor EVALUATOR = new EvalExpressionVisitor(null);
+    protected static ExtentExpressionVisitor EXTENT = new ExtentExpressionVisitor();
 
     /**
      * Visitor that formats {@link Expression}s as Strings.
@@ -676,6 +827,12 @@ public class Zone {
      */
     protected Zone _parent;
 
+    /**
+     * The World of a root Zone, cached when resolved; always null in child
+     * Zones.
+     */
+    protected World _world;
+
     /**
      * The children of this Zone.
      */
@@ -691,6 +848,22 @@ public class Zone {
      */
     protected Expression _expression;
 
+    /**
+     * The simplified copy of _expression that is evaluated; null for root
+     * Zones.
+     */
+    protected Expression _simplified;
+
+    /**
+     * The executable form of _simplified; null for root Zones.
+     */
+    protected CompiledExpression _compiled;
+
+    /**
+     * A Box containing every point where _expression could be true.
+     */
+    protected Box _extent = Box.EVERYWHERE;
+
     /**
      * Map from mined block type to ID of corresponding {@link DropSet}.
      */
@@ -701,6 +874,34 @@ public class Zone {
      */
     protected HashMap<EntityType, String> _mobReplacementDropSetIDs = new HashMap<>();
 
+    /**
+     * Map from mined block type to this Zone's own DropSet, or null if the ID
+     * does not name a loot table.
+     */
+    protected EnumMap<Material, DropSet> _ownMiningDrops = new EnumMap<>(Material.class);
+
+    /**
+     * Map from mined block type to DropSet, including inherited entries.
+     */
+    protected EnumMap<Material, DropSet> _effectiveMiningDrops = new EnumMap<>(Material.class);
+
+    /**
+     * Map from EntityType to this Zone's own replacement DropSet, or null if
+     * the ID does not name a loot table.
+     */
+    protected EnumMap<EntityType, DropSet> _ownMobReplacements = new EnumMap<>(EntityType.class);
+
+    /**
+     * Map from EntityType to replacement DropSet, including inherited entries.
+     */
+    protected EnumMap<EntityType, DropSet> _effectiveMobReplacements = new EnumMap<>(EntityType.class);
+
+    /**
+     * The {@link ZoneManager#getRulesVersion()} when the DropSet tables were
+     * last built.
+     */
+    protected int _rulesVersion = -1;
+
     /**
      * True if this Zone inherits mining drops from its parent Zone.
      */
@@ -0,0 +1,702 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.WorldBorder;
+
+import nu.nerd.beastmaster.BeastMaster;
+import nu.nerd.beastmaster.zones.ZoneSnapshot.Node;
+import nu.nerd.beastmaster.zones.ZoneSnapshot.WorldZones;
+
+// ----------------------------------------------------------------------------
+/**
+ * Estimates, by random sampling, how the children of each Zone in a World
+ * divide their parent's area, in order to find child Zones that are never
+ * reached or that could be reordered to shorten lookups.
+ *
+ * Children are tested in priority order, so a child only "wins" the points
+ * that it matches and that no earlier sibling matches; the points that it
+ * matches but that an earlier sibling also matches are "shadowed". A child
+ * that wins no points can be deleted without changing any lookup. A child
+ * that matches none of the points that an earlier sibling wins can be moved
+ * ahead of that sibling without changing any lookup, which shortens lookups
+ * if the child wins more often.
+ *
+ * The analysis works on a {@link ZoneSnapshot}, so it does not race with
+ * edits to the Zones. Each parent Zone is sampled by a separate task on
+ * {@link ZoneManager#getPool()}, away from the main thread. The points
+ * sampled for a parent are uniformly distributed over the intersection of
+ * the parent's extent, the union of its children's extents and the world
+ * border, at Y coordinates [0,255], and are then filtered down to the points
+ * where a lookup would reach the parent. Zone Specifications that depend on
+ * World data (see {@link ZonePredicate#dependsOnWorld()}) are only sampled
+ * in the chunks that were loaded when the analysis started, so that their
+ * predicates are answered from the biome and height caches. The World is
+ * never accessed off the main thread: such Specifications are evaluated one
+ * point at a time, and any point where a lookup misses the caches, e.g.
+ * because its chunk unloaded during the analysis, is not counted as sampled.
+ *
+ * Since results are estimates, a Zone that matches only a tiny fraction of
+ * its parent may be reported as never matching.
+ */
+public class ZoneAnalyser {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * This must be called in the main thread, since it captures the state of
+     * the World.
+     *
+     * @param snapshot the snapshot of the Zone hierarchy to analyse.
+     * @param world    the World.
+     */
+    public ZoneAnalyser(ZoneSnapshot snapshot, World world) {
+        _worldZones = snapshot._worlds.get(world.getUID());
+
+        WorldBorder border = world.getWorldBorder();
+        Location center = border.getCenter();
+        double radius = border.getSize() / 2;
+        _border = new Box(center.getX() - radius, 0, center.getZ() - radius,
+                          center.getX() + radius, MAX_Y, center.getZ() + radius);
+
+        Chunk[] chunks = world.getLoadedChunks();
+        _loadedChunkXs = new int[chunks.length];
+        _loadedChunkZs = new int[chunks.length];
+        for (int i = 0; i < chunks.length; ++i) {
+            _loadedChunkXs[i] = chunks[i].getX();
+            _loadedChunkZs[i] = chunks[i].getZ();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Start the analysis on the zone pool.
+     *
+     * When the analysis is complete, the callback is called in the main
+     * thread with the Results, grouped by parent Zone in depth-first order,
+     * or with null if the analysis failed.
+     *
+     * @param callback the callback.
+     */
+    public void start(Consumer<List<Result>> callback) {
+        BeastMaster.ZONES.getPool().execute(() -> {
+            List<Result> results;
+            try {
+                results = analyse();
+            } catch (Exception ex) {
+                BeastMaster.PLUGIN.getLogger().severe("Error analysing zones: " + ex.getMessage());
+                results = null;
+            }
+            List<Result> finalResults = results;
+            Bukkit.getScheduler().runTask(BeastMaster.PLUGIN, () -> callback.accept(finalResults));
+        });
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Analyse every Zone that has children, one task per parent Zone, and
+     * return the Results.
+     *
+     * This method must be called in a task of a ForkJoinPool.
+     *
+     * @return the Results of all child Zones.
+     */
+    public List<Result> analyse() {
+        List<ParentTask> tasks = new ArrayList<>();
+        if (_worldZones != null) {
+            addTasks(new ArrayList<>(), _worldZones.root, tasks);
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        List<Result> results = new ArrayList<>();
+        for (ParentTask task : tasks) {
+            results.addAll(task.results);
+        }
+        return results;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add a task for each Node with children, in a depth-first traversal.
+     *
+     * @param path  the Nodes from the root to the parent of node.
+     * @param node  the Node.
+     * @param tasks the list of tasks to add to.
+     */
+    protected void addTasks(List<Node> path, Node node, List<ParentTask> tasks) {
+        path.add(node);
+        if (node.children.length != 0) {
+            tasks.add(new ParentTask(path.toArray(new Node[path.size()])));
+        }
+        for (Node child : node.children) {
+            addTasks(path, child, tasks);
+        }
+        path.remove(path.size() - 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the Zone of a Node depends on World data.
+     *
+     * @param node the Node.
+     * @return true if the Node's Zone Specification depends on World data.
+     */
+    protected static boolean dependsOnWorld(Node node) {
+        return node.simplified != null && ZoneBaker.dependsOnWorld(node.simplified);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The estimated division of a parent Zone's area by one of its children.
+     */
+    public static final class Result {
+        /**
+         * Constructor.
+         *
+         * @param parent the parent Zone.
+         * @param zone   the child Zone.
+         * @param index  the index of the child in its parent's children.
+         */
+        Result(Zone parent, Zone zone, int index) {
+            this.parent = parent;
+            this.zone = zone;
+            this.index = index;
+        }
+
+        /**
+         * Return the parent Zone.
+         *
+         * @return the parent Zone.
+         */
+        public Zone getParent() {
+            return parent;
+        }
+
+        /**
+         * Return the child Zone.
+         *
+         * @return the child Zone.
+         */
+        public Zone getZone() {
+            return zone;
+        }
+
+        /**
+         * Return the index of the child in its parent's children.
+         *
+         * @return the 0-based index.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Return the number of sampled points in the parent Zone.
+         *
+         * @return the number of samples; 0 if the parent could not be
+         *         sampled.
+         */
+        public int getSamples() {
+            return samples;
+        }
+
+        /**
+         * Return the number of sampled points where this Zone is the first
+         * child to match.
+         *
+         * @return the number of winning samples.
+         */
+        public int getWins() {
+            return wins;
+        }
+
+        /**
+         * Return the number of sampled points that this Zone matches but an
+         * earlier sibling wins.
+         *
+         * @return the number of shadowed samples.
+         */
+        public int getShadowed() {
+            return shadowed;
+        }
+
+        /**
+         * Return the number of sampled points that this Zone does not match.
+         *
+         * @return the number of unmatched samples.
+         */
+        public int getUnmatched() {
+            return samples - wins - shadowed;
+        }
+
+        /**
+         * Return the earlier sibling that wins most of this Zone's shadowed
+         * points.
+         *
+         * @return the shadowing Zone, or null if no points are shadowed.
+         */
+        public Zone getShadowedBy() {
+            return shadowedBy;
+        }
+
+        /**
+         * Return true if this Zone never wins, so it can be deleted without
+         * changing the result of any lookup.
+         *
+         * @return true if the Zone can be deleted.
+         */
+        public boolean isDeletable() {
+            return samples != 0 && wins == 0;
+        }
+
+        /**
+         * Return the index that this Zone should move to in order to shorten
+         * lookups, without changing their results.
+         *
+         * @return the new 0-based index, or -1 if the Zone should stay where
+         *         it is.
+         */
+        public int getMoveTo() {
+            return moveTo;
+        }
+
+        /**
+         * The parent Zone.
+         */
+        final Zone parent;
+
+        /**
+         * The child Zone.
+         */
+        final Zone zone;
+
+        /**
+         * The index of the child in its parent's children.
+         */
+        final int index;
+
+        /**
+         * The number of sampled points in the parent Zone.
+         */
+        int samples;
+
+        /**
+         * The number of points where this Zone is the first child to match.
+         */
+        int wins;
+
+        /**
+         * The number of points that this Zone matches but an earlier sibling
+         * wins.
+         */
+        int shadowed;
+
+        /**
+         * The earlier sibling that wins most of the shadowed points.
+         */
+        Zone shadowedBy;
+
+        /**
+         * The index to move the Zone to, or -1.
+         */
+        int moveTo = -1;
+    } // class Result
+
+    // ------------------------------------------------------------------------
+    /**
+     * Samples the area of one parent Zone and computes the Results of its
+     * children.
+     */
+    protected final class ParentTask extends RecursiveAction {
+        /**
+         * Constructor.
+         *
+         * @param path the Nodes from the root to the parent Node, inclusive.
+         */
+        ParentTask(Node[] path) {
+            this.path = path;
+            parent = path[path.length - 1];
+        }
+
+        /**
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            Node[] children = parent.children;
+            for (int i = 0; i < children.length; ++i) {
+                results.add(new Result(parent.zone, children[i].zone, i));
+            }
+
+            Box area = Box.NOWHERE;
+            boolean worldDependent = false;
+            for (Node child : children) {
+                area = area.union(child.extent);
+                worldDependent |= dependsOnWorld(child);
+            }
+            for (Node node : path) {
+                area = area.intersection(node.extent);
+                worldDependent |= dependsOnWorld(node);
+            }
+            area = area.intersection(_border);
+            if (!sample(area, worldDependent)) {
+                return;
+            }
+            this.worldDependent = worldDependent;
+            missed = new long[BatchKernels.words(count)];
+
+            // Restrict the samples to the points where a lookup reaches the
+            // parent: at every level, the ancestor is the first match.
+            int words = BatchKernels.words(count);
+            long[] inParent = new long[words];
+            for (int w = 0; w < words; ++w) {
+                inParent[w] = -1L;
+            }
+            clearUnused(inParent);
+            for (int level = 1; level < path.length; ++level) {
+                Node[] siblings = path[level - 1].children;
+                for (Node sibling : siblings) {
+                    long[] bits = test(sibling);
+                    if (sibling == path[level]) {
+                        and(inParent, bits);
+                        break;
+                    }
+                    andNot(inParent, bits);
+                }
+            }
+
+            // Test all children before counting, so that points that missed
+            // the caches in any test are excluded from every count.
+            long[][] matches = new long[children.length][];
+            for (int i = 0; i < children.length; ++i) {
+                matches[i] = test(children[i]);
+            }
+            andNot(inParent, missed);
+
+            int samples = popCount(inParent);
+            long[][] won = new long[children.length][];
+            long[] earlier = new long[words];
+            for (int i = 0; i < children.length; ++i) {
+                Result result = results.get(i);
+                and(matches[i], inParent);
+                won[i] = matches[i].clone();
+                andNot(won[i], earlier);
+                or(earlier, matches[i]);
+
+                result.samples = samples;
+                result.wins = popCount(won[i]);
+                result.shadowed = popCount(matches[i]) - result.wins;
+                int mostShadowed = 0;
+                for (int j = 0; j < i && result.shadowed != 0; ++j) {
+                    int shadowedByJ = popCountAnd(matches[i], won[j]);
+                    if (shadowedByJ > mostShadowed) {
+                        mostShadowed = shadowedByJ;
+                        result.shadowedBy = children[j].zone;
+                    }
+                }
+            }
+
+            if (samples != 0) {
+                suggestMoves(matches, won);
+            }
+        }
+
+        /**
+         * Fill the sample arrays with points in the specified area.
+         *
+         * @param area           the area to sample.
+         * @param worldDependent if true, only sample loaded chunks.
+         * @return true if any points were sampled.
+         */
+        boolean sample(Box area, boolean worldDependent) {
+            if (area.isEmpty() || !area.isBoundedXZ()) {
+                return false;
+            }
+            int minX = (int) Math.ceil(area.minX);
+            int minY = (int) Math.max(0, Math.ceil(area.minY));
+            int minZ = (int) Math.ceil(area.minZ);
+            int maxX = (int) Math.floor(area.maxX);
+            int maxY = (int) Math.min(MAX_Y, Math.floor(area.maxY));
+            int maxZ = (int) Math.floor(area.maxZ);
+            if (minX > maxX || minY > maxY || minZ > maxZ) {
+                return false;
+            }
+
+            SplittableRandom random = new SplittableRandom(parent.zone.getId().toLowerCase().hashCode());
+            if (!worldDependent) {
+                for (count = 0; count < SAMPLES; ++count) {
+                    xs[count] = random.nextInt(minX, maxX + 1);
+                    ys[count] = random.nextInt(minY, maxY + 1);
+                    zs[count] = random.nextInt(minZ, maxZ + 1);
+                }
+                return true;
+            }
+
+            // Sample only loaded chunks that intersect the area, rejecting
+            // the points outside the area.
+            List<Integer> chunks = new ArrayList<>();
+            for (int i = 0; i < _loadedChunkXs.length; ++i) {
+                int chunkMinX = _loadedChunkXs[i] << 4;
+                int chunkMinZ = _loadedChunkZs[i] << 4;
+                if (chunkMinX <= maxX && chunkMinX + 15 >= minX &&
+                    chunkMinZ <= maxZ && chunkMinZ + 15 >= minZ) {
+                    chunks.add(i);
+                }
+            }
+            if (chunks.isEmpty()) {
+                return false;
+            }
+            count = 0;
+            for (int attempt = 0; attempt < MAX_ATTEMPTS && count < SAMPLES; ++attempt) {
+                int chunk = chunks.get(random.nextInt(chunks.size()));
+                int x = (_loadedChunkXs[chunk] << 4) + random.nextInt(16);
+                int z = (_loadedChunkZs[chunk] << 4) + random.nextInt(16);
+                if (x >= minX && x <= maxX && z >= minZ && z <= maxZ) {
+                    xs[count] = x;
+                    ys[count] = random.nextInt(minY, maxY + 1);
+                    zs[count] = z;
+                    ++count;
+                }
+            }
+            return count != 0;
+        }
+
+        /**
+         * Set moveTo in the Result of each child that could move ahead of
+         * earlier siblings, without changing the result of any lookup, to
+         * reduce the number of Zone Specifications evaluated per lookup.
+         *
+         * Moving child i ahead of siblings k..i-1 is only possible if none of
+         * their won points is matched by child i. It saves (i-k) evaluations
+         * for every point that child i wins and costs one extra evaluation
+         * for every point that each of the passed siblings wins.
+         *
+         * @param matches the bitsets of points matched by each child.
+         * @param won     the bitsets of points won by each child.
+         */
+        void suggestMoves(long[][] matches, long[][] won) {
+            for (int i = 1; i < matches.length; ++i) {
+                Result result = results.get(i);
+                int bestSaving = 0;
+                int passedWins = 0;
+                for (int k = i - 1; k >= 0; --k) {
+                    if (popCountAnd(matches[i], won[k]) != 0) {
+                        break;
+                    }
+                    passedWins += results.get(k).wins;
+                    int saving = result.wins * (i - k) - passedWins;
+                    if (saving > bestSaving) {
+                        bestSaving = saving;
+                        result.moveTo = k;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Return the bitset of sampled points where a Node's Zone
+         * Specification is true.
+         *
+         * Specifications that depend on World data are tested one point at a
+         * time, and the points where a lookup missed the biome or height
+         * caches are added to the missed bitset, since their results are
+         * meaningless.
+         *
+         * @param node the Node.
+         * @return the bitset.
+         */
+        long[] test(Node node) {
+            long[] bits = new long[BatchKernels.words(count)];
+            if (worldDependent && dependsOnWorld(node)) {
+                World world = _worldZones.world;
+                for (int i = 0; i < count; ++i) {
+                    int misses = BiomeCache.getMisses();
+                    if (node.compiled.test(world, xs[i], ys[i], zs[i])) {
+                        bits[i >>> 6] |= 1L << i;
+                    }
+                    if (BiomeCache.getMisses() != misses) {
+                        missed[i >>> 6] |= 1L << i;
+                    }
+                }
+            } else {
+                node.compiled.testBatch(_worldZones.world, xs, ys, zs, count, bits);
+            }
+            clearUnused(bits);
+            return bits;
+        }
+
+        /**
+         * Clear the bits of a bitset past the sample count.
+         *
+         * @param bits the bitset.
+         */
+        void clearUnused(long[] bits) {
+            if ((count & 63) != 0) {
+                bits[bits.length - 1] &= (1L << (count & 63)) - 1;
+            }
+        }
+
+        /**
+         * The Nodes from the root to the parent Node, inclusive.
+         */
+        final Node[] path;
+
+        /**
+         * The parent Node.
+         */
+        final Node parent;
+
+        /**
+         * The Results of the children, in order.
+         */
+        final List<Result> results = new ArrayList<>();
+
+        /**
+         * The X coordinates of sampled points.
+         */
+        final double[] xs = new double[SAMPLES];
+
+        /**
+         * The Y coordinates of sampled points.
+         */
+        final double[] ys = new double[SAMPLES];
+
+        /**
+         * The Z coordinates of sampled points.
+         */
+        final double[] zs = new double[SAMPLES];
+
+        /**
+         * The number of sampled points.
+         */
+        int count;
+
+        /**
+         * True if any Zone Specification on the path or among the children
+         * depends on World data.
+         */
+        boolean worldDependent;
+
+        /**
+         * The bitset of sampled points where a lookup missed the biome or
+         * height caches.
+         */
+        long[] missed;
+    } // class ParentTask
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set a bitset to the intersection of itself and another.
+     *
+     * @param bits  the bitset to modify.
+     * @param other the other bitset.
+     */
+    protected static void and(long[] bits, long[] other) {
+        for (int w = 0; w < bits.length; ++w) {
+            bits[w] &= other[w];
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Remove the bits of another bitset from a bitset.
+     *
+     * @param bits  the bitset to modify.
+     * @param other the other bitset.
+     */
+    protected static void andNot(long[] bits, long[] other) {
+        for (int w = 0; w < bits.length; ++w) {
+            bits[w] &= ~other[w];
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set a bitset to the union of itself and another.
+     *
+     * @param bits  the bitset to modify.
+     * @param other the other bitset.
+     */
+    protected static void or(long[] bits, long[] other) {
+        for (int w = 0; w < bits.length; ++w) {
+            bits[w] |= other[w];
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of set bits in a bitset.
+     *
+     * @param bits the bitset.
+     * @return the number of set bits.
+     */
+    protected static int popCount(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of bits set in both of two bitsets.
+     *
+     * @param bits  the first bitset.
+     * @param other the second bitset.
+     * @return the size of the intersection.
+     */
+    protected static int popCountAnd(long[] bits, long[] other) {
+        int count = 0;
+        for (int w = 0; w < bits.length; ++w) {
+            count += Long.bitCount(bits[w] & other[w]);
+        }
+        return count;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The number of points sampled per parent Zone.
+     */
+    protected static final int SAMPLES = 16384;
+
+    /**
+     * The maximum number of random points tried per parent Zone when
+     * sampling loaded chunks.
+     */
+    protected static final int MAX_ATTEMPTS = 4 * SAMPLES;
+
+    /**
+     * The maximum sampled Y coordinate.
+     */
+    protected static final int MAX_Y = 255;
+
+    /**
+     * The Zones of the analysed World, or null if the World has no Zones.
+     */
+    protected final WorldZones _worldZones;
+
+    /**
+     * The area inside the world border.
+     */
+    protected final Box _border;
+
+    /**
+     * The X coordinates of the chunks that were loaded.
+     */
+    protected final int[] _loadedChunkXs;
+
+    /**
+     * The Z coordinates of the chunks that were loaded.
+     */
+    protected final int[] _loadedChunkZs;
+} // class ZoneAnalyser
\ No newline at end of file
@@ -0,0 +1,886 @@
+package nu.nerd.beastmaster.zones;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Logger;
+
+import org.bukkit.World;
+
+import nu.nerd.beastmaster.BeastMaster;
+import nu.nerd.beastmaster.zones.ZoneSnapshot.Node;
+import nu.nerd.beastmaster.zones.ZoneSnapshot.WorldZones;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * Rasterises the Zone hierarchies of Worlds into tiles, so that looking up a
+ * Zone is a single read.
+ *
+ * Only Worlds whose Zone Specifications depend purely on coordinates (see
+ * {@link ZonePredicate#dependsOnWorld()}) and whose child Zones have a
+ * bounded extent are baked. The area covered by the extents of the top-level
+ * child Zones is divided into 512x512 block regions, as in Minecraft's region
+ * files; Locations outside that area are in the root Zone.
+ *
+ * Each region is stored in a memory-mapped file under the plugin's data
+ * folder, holding one unsigned short per block column per 16 block high band:
+ * an index into the World's palette of Zones, or {@link #UNRESOLVED} if the
+ * Zone varies within the band, in which case the lookup falls back to
+ * evaluating the {@link ZoneSnapshot}. Regions are baked in parallel on a
+ * ForkJoinPool, away from the main thread.
+ *
+ * Each baked World records the snapshot it was baked from. Tiles are only
+ * used while that snapshot is current, so a stale tile is never read. When a
+ * new snapshot is published, only the regions intersecting the old or new
+ * extent of an added, removed or edited Zone are rebaked; the other tiles
+ * are carried over into the new baked World. Once the palette is mostly
+ * made up of removed Zones, the whole World is rebaked with a compact
+ * palette.
+ *
+ * Tiles are a cache: they are discarded when the plugin is disabled and
+ * rebuilt when it is enabled.
+ */
+public class ZoneBaker {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zone containing the specified block, if the World is baked.
+     *
+     * @param snapshot the current snapshot of the Zone hierarchy.
+     * @param worldId  the UUID of the World.
+     * @param x        the block X coordinate.
+     * @param y        the block Y coordinate.
+     * @param z        the block Z coordinate.
+     * @return the Zone, or null if the World is not baked from the current
+     *         snapshot or the tile doesn't resolve the Zone of the block.
+     */
+    public Zone getZone(ZoneSnapshot snapshot, UUID worldId, int x, int y, int z) {
+        BakedWorld baked = _worlds.get(worldId);
+        if (baked == null || baked.snapshot != snapshot || y < 0 || y >= BAKED_HEIGHT) {
+            return null;
+        }
+
+        int regionX = (x >> REGION_SHIFT) - baked.minRegionX;
+        int regionZ = (z >> REGION_SHIFT) - baked.minRegionZ;
+        if (regionX < 0 || regionX >= baked.regionsX || regionZ < 0 || regionZ >= baked.regionsZ) {
+            return baked.palette[ROOT_INDEX];
+        }
+        int value = baked.tiles[regionX * baked.regionsZ + regionZ].get(tileIndex(x, y, z)) & 0xFFFF;
+        return (value == UNRESOLVED) ? null : baked.palette[value];
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Schedule baking of a newly published snapshot.
+     *
+     * Baking happens asynchronously. If another snapshot is published while
+     * one is being baked, only the latest is baked next.
+     *
+     * @param snapshot the snapshot.
+     */
+    public synchronized void schedule(ZoneSnapshot snapshot) {
+        if (!BeastMaster.CONFIG.ZONE_BAKING_ENABLED && !_running && _worlds.isEmpty()) {
+            return;
+        }
+
+        _pending = snapshot;
+        if (!_running) {
+            _running = true;
+            getPool().execute(this::run);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stop baking and delete all tiles.
+     *
+     * This method is called when the plugin is disabled.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            _pending = null;
+            if (_pool != null) {
+                _pool.shutdownNow();
+                _pool = null;
+            }
+        }
+        for (UUID worldId : new ArrayList<>(_worlds.keySet())) {
+            discard(worldId);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Bake pending snapshots until there are none left.
+     */
+    protected void run() {
+        for (;;) {
+            ZoneSnapshot snapshot;
+            synchronized (this) {
+                snapshot = _pending;
+                _pending = null;
+                if (snapshot == null) {
+                    _running = false;
+                    return;
+                }
+            }
+
+            try {
+                bake(snapshot);
+            } catch (Exception ex) {
+                getLogger().severe("Error baking zones: " + ex.getMessage());
+                for (UUID worldId : new ArrayList<>(_worlds.keySet())) {
+                    discard(worldId);
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Bake all Worlds of a snapshot, discarding the tiles of Worlds that can
+     * no longer be baked.
+     *
+     * @param snapshot the snapshot.
+     */
+    protected void bake(ZoneSnapshot snapshot) {
+        boolean enabled = BeastMaster.CONFIG.ZONE_BAKING_ENABLED;
+        for (UUID worldId : new ArrayList<>(_worlds.keySet())) {
+            if (!enabled || !snapshot._worlds.containsKey(worldId)) {
+                discard(worldId);
+            }
+        }
+        if (!enabled) {
+            return;
+        }
+
+        if (!_cleaned) {
+            // Remove tiles left behind by a server crash.
+            deleteTree(getFolder());
+            _cleaned = true;
+        }
+
+        ++_generation;
+        for (Map.Entry<UUID, WorldZones> entry : snapshot._worlds.entrySet()) {
+            UUID worldId = entry.getKey();
+            WorldZones worldZones = entry.getValue();
+            BakedWorld old = _worlds.get(worldId);
+            BakedWorld baked = bakeWorld(snapshot, worldId, worldZones, old);
+            if (baked == null) {
+                discard(worldId);
+            } else {
+                _worlds.put(worldId, baked);
+                if (old != null) {
+                    deleteReplacedTiles(old, baked);
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Bake the Zones of one World.
+     *
+     * @param snapshot   the snapshot.
+     * @param worldId    the UUID of the World.
+     * @param worldZones the Zones of the World in the snapshot.
+     * @param old        the previously baked state of the World, or null.
+     * @return the new baked state, or null if the World cannot be baked.
+     */
+    protected BakedWorld bakeWorld(ZoneSnapshot snapshot, UUID worldId, WorldZones worldZones, BakedWorld old) {
+        String worldName = worldZones.world.getName();
+        Node root = worldZones.root;
+        IdentityHashMap<Zone, Signature> signatures = new IdentityHashMap<>();
+        if (!addSignatures(root, null, 0, signatures)) {
+            return notBaked(worldId, worldName, "zone specifications use biome() or wg()");
+        }
+
+        Box area = Box.NOWHERE;
+        for (Node child : root.children) {
+            area = area.union(child.extent);
+        }
+        int minRegionX = 0;
+        int minRegionZ = 0;
+        int regionsX = 0;
+        int regionsZ = 0;
+        if (!area.isEmpty()) {
+            if (!area.isBoundedXZ()) {
+                return notBaked(worldId, worldName, "zones are not bounded horizontally");
+            }
+            minRegionX = (int) Math.floor(area.minX) >> REGION_SHIFT;
+            minRegionZ = (int) Math.floor(area.minZ) >> REGION_SHIFT;
+            regionsX = ((int) Math.floor(area.maxX) >> REGION_SHIFT) - minRegionX + 1;
+            regionsZ = ((int) Math.floor(area.maxZ) >> REGION_SHIFT) - minRegionZ + 1;
+            int maxRegions = BeastMaster.CONFIG.ZONE_BAKING_MAX_REGIONS;
+            if ((long) regionsX * regionsZ > maxRegions) {
+                return notBaked(worldId, worldName, "zones span more than " + maxRegions + " regions");
+            }
+        }
+
+        // Palette indices of Zones are kept while the root Zone is the same,
+        // so that tiles carried over from the old baked World stay valid.
+        // Entries of removed Zones are only reclaimed by a full bake, which
+        // builds a compact palette; do one when they would make up most of
+        // the palette, or when it would overflow.
+        boolean incremental = (old != null && old.palette[ROOT_INDEX] == root.zone);
+        if (incremental) {
+            int paletteSize = old.palette.length;
+            for (Zone zone : signatures.keySet()) {
+                if (!old.paletteIndices.containsKey(zone)) {
+                    ++paletteSize;
+                }
+            }
+            if (paletteSize >= UNRESOLVED || paletteSize > 2 * signatures.size() + PALETTE_SLACK) {
+                incremental = false;
+            }
+        }
+        List<Zone> palette = new ArrayList<>();
+        IdentityHashMap<Zone, Integer> paletteIndices = new IdentityHashMap<>();
+        List<Box> dirty = new ArrayList<>();
+        if (incremental) {
+            Collections.addAll(palette, old.palette);
+            paletteIndices.putAll(old.paletteIndices);
+            Set<Zone> zones = Collections.newSetFromMap(new IdentityHashMap<>());
+            zones.addAll(signatures.keySet());
+            zones.addAll(old.signatures.keySet());
+            for (Zone zone : zones) {
+                Signature oldSignature = old.signatures.get(zone);
+                Signature newSignature = signatures.get(zone);
+                if (!Objects.equals(oldSignature, newSignature)) {
+                    if (oldSignature != null) {
+                        dirty.add(oldSignature.extent);
+                    }
+                    if (newSignature != null) {
+                        dirty.add(newSignature.extent);
+                    }
+                }
+            }
+        } else {
+            palette.add(root.zone);
+            paletteIndices.put(root.zone, ROOT_INDEX);
+        }
+        for (Zone zone : signatures.keySet()) {
+            if (!paletteIndices.containsKey(zone)) {
+                paletteIndices.put(zone, palette.size());
+                palette.add(zone);
+            }
+        }
+        if (palette.size() >= UNRESOLVED) {
+            return notBaked(worldId, worldName, "too many zones");
+        }
+
+        ShortBuffer[] tiles = new ShortBuffer[regionsX * regionsZ];
+        File[] files = new File[tiles.length];
+        List<RegionTask> tasks = new ArrayList<>();
+        for (int i = 0; i < regionsX; ++i) {
+            for (int j = 0; j < regionsZ; ++j) {
+                int regionX = minRegionX + i;
+                int regionZ = minRegionZ + j;
+                int slot = i * regionsZ + j;
+                int oldSlot = incremental ? old.getSlot(regionX, regionZ) : -1;
+                if (oldSlot >= 0 && !intersectsAny(dirty, regionX, regionZ)) {
+                    tiles[slot] = old.tiles[oldSlot];
+                    files[slot] = old.files[oldSlot];
+                } else {
+                    files[slot] = new File(getFolder(), worldId + File.separator +
+                                                        "r." + regionX + "." + regionZ + "." + _generation + ".tile");
+                    tasks.add(new RegionTask(worldZones, paletteIndices, regionX, regionZ, files[slot], tiles, slot));
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        ForkJoinTask.invokeAll(tasks);
+        if (!tasks.isEmpty()) {
+            getLogger().info("Baked " + tasks.size() + " of " + tiles.length + " zone tiles of world " +
+                             worldName + " in " + (System.nanoTime() - start) / 1000000 + " ms.");
+        }
+        _notBakedReasons.remove(worldId);
+        return new BakedWorld(snapshot, palette.toArray(new Zone[palette.size()]), paletteIndices, signatures,
+                              minRegionX, minRegionZ, regionsX, regionsZ, tiles, files);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Record the Signatures of a Node and its descendants.
+     *
+     * @param node       the Node.
+     * @param parent     the parent Zone, or null for the root.
+     * @param index      the index of the Node in its parent's children.
+     * @param signatures the map to add Signatures to.
+     * @return false if any Zone Specification depends on World data, so the
+     *         World cannot be baked.
+     */
+    protected static boolean addSignatures(Node node, Zone parent, int index, Map<Zone, Signature> signatures) {
+        if (parent != null && (node.simplified == null || dependsOnWorld(node.simplified))) {
+            return false;
+        }
+        signatures.put(node.zone, new Signature(node, parent, index));
+        for (int i = 0; i < node.children.length; ++i) {
+            if (!addSignatures(node.children[i], node.zone, i, signatures)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if an Expression uses any predicate whose value depends on
+     * World data.
+     *
+     * @param expression the Expression.
+     * @return true if the Expression depends on World data.
+     */
+    protected static boolean dependsOnWorld(Expression expression) {
+        if (expression instanceof PredicateExpression) {
+            return ((PredicateExpression) expression).getZonePredicate().dependsOnWorld();
+        }
+        for (int i = 0; i < expression.getChildCount(); ++i) {
+            if (dependsOnWorld(expression.getChild(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if any of the specified Boxes intersects a region.
+     *
+     * @param boxes   the Boxes.
+     * @param regionX the region X coordinate.
+     * @param regionZ the region Z coordinate.
+     * @return true if the region intersects any Box.
+     */
+    protected static boolean intersectsAny(List<Box> boxes, int regionX, int regionZ) {
+        double minX = regionX * (double) REGION_SIZE;
+        double minZ = regionZ * (double) REGION_SIZE;
+        Box region = new Box(minX, Double.NEGATIVE_INFINITY, minZ,
+                             Math.nextDown(minX + REGION_SIZE), Double.POSITIVE_INFINITY, Math.nextDown(minZ + REGION_SIZE));
+        for (Box box : boxes) {
+            if (!box.intersection(region).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stop using the tiles of a World, log the reason if it has changed, and
+     * return null.
+     *
+     * @param worldId   the UUID of the World.
+     * @param worldName the name of the World.
+     * @param reason    why the World cannot be baked.
+     * @return null.
+     */
+    protected BakedWorld notBaked(UUID worldId, String worldName, String reason) {
+        if (!reason.equals(_notBakedReasons.put(worldId, reason))) {
+            getLogger().info("Zones of world " + worldName + " are not baked: " + reason + ".");
+        }
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stop using the tiles of a World and delete them.
+     *
+     * @param worldId the UUID of the World.
+     */
+    protected void discard(UUID worldId) {
+        BakedWorld baked = _worlds.remove(worldId);
+        if (baked != null) {
+            for (File file : baked.files) {
+                delete(file);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Delete the tile files of an old baked World that were not carried over
+     * into the new one.
+     *
+     * @param old   the old baked World.
+     * @param baked the new baked World.
+     */
+    protected static void deleteReplacedTiles(BakedWorld old, BakedWorld baked) {
+        Set<File> kept = Collections.newSetFromMap(new IdentityHashMap<>());
+        Collections.addAll(kept, baked.files);
+        for (File file : old.files) {
+            if (!kept.contains(file)) {
+                delete(file);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Delete a tile file.
+     *
+     * Lookups that started before the tile was replaced may still read its
+     * mapping, which remains valid after the file is deleted. Where the
+     * platform doesn't allow mapped files to be deleted, the file is deleted
+     * when the server exits.
+     *
+     * @param file the file.
+     */
+    protected static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            file.deleteOnExit();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Delete a directory and its contents.
+     *
+     * @param dir the directory.
+     */
+    protected static void deleteTree(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteTree(file);
+            }
+        }
+        delete(dir);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the index of a block column band in a tile.
+     *
+     * @param x the block X coordinate.
+     * @param y the block Y coordinate, [0,255].
+     * @param z the block Z coordinate.
+     * @return the index.
+     */
+    protected static int tileIndex(int x, int y, int z) {
+        return ((y >> 4) << (2 * REGION_SHIFT)) | ((z & (REGION_SIZE - 1)) << REGION_SHIFT) | (x & (REGION_SIZE - 1));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the pool that bakes tiles, creating it if necessary.
+     *
+     * @return the ForkJoinPool.
+     */
+    protected synchronized ForkJoinPool getPool() {
+        if (_pool == null) {
+            _pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return _pool;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the directory containing tile files.
+     *
+     * @return the directory containing tile files.
+     */
+    protected static File getFolder() {
+        return new File(BeastMaster.PLUGIN.getDataFolder(), "baked");
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the plugin's logger.
+     *
+     * @return the plugin's logger.
+     */
+    protected static Logger getLogger() {
+        return BeastMaster.PLUGIN.getLogger();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Bakes one region of a World into a new memory-mapped tile, one band per
+     * subtask.
+     */
+    protected static final class RegionTask extends RecursiveAction {
+        /**
+         * Constructor.
+         *
+         * @param worldZones     the Zones of the World.
+         * @param paletteIndices map from Zone to palette index.
+         * @param regionX        the region X coordinate.
+         * @param regionZ        the region Z coordinate.
+         * @param file           the tile file to create.
+         * @param tiles          the array to store the tile in.
+         * @param slot           the index in tiles.
+         */
+        RegionTask(WorldZones worldZones, Map<Zone, Integer> paletteIndices, int regionX, int regionZ,
+                   File file, ShortBuffer[] tiles, int slot) {
+            this.worldZones = worldZones;
+            this.paletteIndices = paletteIndices;
+            this.regionX = regionX;
+            this.regionZ = regionZ;
+            this.file = file;
+            this.tiles = tiles;
+            this.slot = slot;
+        }
+
+        /**
+         * @see java.util.concurrent.RecursiveAction#compute()
+         */
+        @Override
+        protected void compute() {
+            ShortBuffer tile = map(file);
+
+            List<RecursiveAction> bands = new ArrayList<>();
+            for (int band = 0; band < BAKED_HEIGHT >> 4; ++band) {
+                int b = band;
+                bands.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        bakeBand(tile, b);
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(bands);
+            tiles[slot] = tile;
+        }
+
+        /**
+         * Create a tile file and map it into memory.
+         *
+         * @param file the file.
+         * @return the mapped tile.
+         */
+        static ShortBuffer map(File file) {
+            file.getParentFile().mkdirs();
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                        StandardOpenOption.TRUNCATE_EXISTING,
+                                                        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(MapMode.READ_WRITE, 0, TILE_ENTRIES * 2L).asShortBuffer();
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        /**
+         * Bake one band of the region.
+         *
+         * Chunk sections that are wholly in one Zone are filled without
+         * examining individual columns.
+         *
+         * @param tile the tile.
+         * @param band the band index.
+         */
+        void bakeBand(ShortBuffer tile, int band) {
+            World world = worldZones.world;
+            Node root = worldZones.root;
+            int minX = regionX << REGION_SHIFT;
+            int minZ = regionZ << REGION_SHIFT;
+            int y = band << 4;
+            for (int chunkX = minX >> 4; chunkX < (minX + REGION_SIZE) >> 4; ++chunkX) {
+                for (int chunkZ = minZ >> 4; chunkZ < (minZ + REGION_SIZE) >> 4; ++chunkZ) {
+                    Zone sectionZone = ZoneSnapshot.resolveSection(world, root, Box.ofChunkSection(chunkX, band, chunkZ));
+                    for (int x = chunkX << 4; x < (chunkX + 1) << 4; ++x) {
+                        for (int z = chunkZ << 4; z < (chunkZ + 1) << 4; ++z) {
+                            Zone zone = sectionZone;
+                            if (zone == null) {
+                                Box column = new Box(x, y, z, Math.nextDown(x + 1.0), Math.nextDown(y + 16.0),
+                                                     Math.nextDown(z + 1.0));
+                                zone = ZoneSnapshot.resolveSection(world, root, column);
+                            }
+                            int value = (zone != null) ? paletteIndices.get(zone) : UNRESOLVED;
+                            tile.put(tileIndex(x, y, z), (short) value);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * The Zones of the World.
+         */
+        final WorldZones worldZones;
+
+        /**
+         * Map from Zone to palette index.
+         */
+        final Map<Zone, Integer> paletteIndices;
+
+        /**
+         * The region X coordinate.
+         */
+        final int regionX;
+
+        /**
+         * The region Z coordinate.
+         */
+        final int regionZ;
+
+        /**
+         * The tile file to create.
+         */
+        final File file;
+
+        /**
+         * The array to store the tile in.
+         */
+        final ShortBuffer[] tiles;
+
+        /**
+         * The index in tiles.
+         */
+        final int slot;
+    } // class RegionTask
+
+    // ------------------------------------------------------------------------
+    /**
+     * The properties of a Zone that determine where it is, compared between
+     * snapshots to find the Zones that were edited.
+     */
+    protected static final class Signature {
+        /**
+         * Constructor.
+         *
+         * @param node   the Node of the Zone.
+         * @param parent the parent Zone, or null.
+         * @param index  the index of the Zone in its parent's children.
+         */
+        Signature(Node node, Zone parent, int index) {
+            simplified = node.simplified;
+            extent = node.extent;
+            this.parent = parent;
+            this.index = index;
+        }
+
+        /**
+         * @see java.lang.Object#equals(java.lang.Object)
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Signature)) {
+                return false;
+            }
+            // Setting a Zone Specification always creates a new Expression.
+            Signature signature = (Signature) other;
+            return simplified == signature.simplified && parent == signature.parent && index == signature.index;
+        }
+
+        /**
+         * @see java.lang.Object#hashCode()
+         */
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(simplified) * 31 + index;
+        }
+
+        /**
+         * The simplified Zone Specification.
+         */
+        final Expression simplified;
+
+        /**
+         * The extent of the Zone.
+         */
+        final Box extent;
+
+        /**
+         * The parent Zone.
+         */
+        final Zone parent;
+
+        /**
+         * The index of the Zone in its parent's children.
+         */
+        final int index;
+    } // class Signature
+
+    // ------------------------------------------------------------------------
+    /**
+     * The baked tiles of one World; immutable once published.
+     */
+    protected static final class BakedWorld {
+        /**
+         * Constructor.
+         *
+         * @param snapshot       the snapshot the tiles were baked from.
+         * @param palette        the Zones, by palette index.
+         * @param paletteIndices map from Zone to palette index.
+         * @param signatures     the Signatures of the Zones in the snapshot.
+         * @param minRegionX     the minimum region X coordinate.
+         * @param minRegionZ     the minimum region Z coordinate.
+         * @param regionsX       the number of regions along the X axis.
+         * @param regionsZ       the number of regions along the Z axis.
+         * @param tiles          the tiles, indexed by X offset * regionsZ + Z
+         *                       offset.
+         * @param files          the tile files, in the same order as tiles.
+         */
+        BakedWorld(ZoneSnapshot snapshot, Zone[] palette, Map<Zone, Integer> paletteIndices,
+                   Map<Zone, Signature> signatures, int minRegionX, int minRegionZ, int regionsX, int regionsZ,
+                   ShortBuffer[] tiles, File[] files) {
+            this.snapshot = snapshot;
+            this.palette = palette;
+            this.paletteIndices = paletteIndices;
+            this.signatures = signatures;
+            this.minRegionX = minRegionX;
+            this.minRegionZ = minRegionZ;
+            this.regionsX = regionsX;
+            this.regionsZ = regionsZ;
+            this.tiles = tiles;
+            this.files = files;
+        }
+
+        /**
+         * Return the index of a region's tile, or -1 if it is not baked.
+         *
+         * @param regionX the region X coordinate.
+         * @param regionZ the region Z coordinate.
+         * @return the index in tiles, or -1.
+         */
+        int getSlot(int regionX, int regionZ) {
+            int i = regionX - minRegionX;
+            int j = regionZ - minRegionZ;
+            return (i < 0 || i >= regionsX || j < 0 || j >= regionsZ) ? -1 : i * regionsZ + j;
+        }
+
+        /**
+         * The snapshot the tiles were baked from.
+         */
+        final ZoneSnapshot snapshot;
+
+        /**
+         * The Zones, by palette index; the root Zone is at
+         * {@link ZoneBaker#ROOT_INDEX}.
+         */
+        final Zone[] palette;
+
+        /**
+         * Map from Zone to palette index.
+         */
+        final Map<Zone, Integer> paletteIndices;
+
+        /**
+         * The Signatures of the Zones in the snapshot.
+         */
+        final Map<Zone, Signature> signatures;
+
+        /**
+         * The minimum region X coordinate.
+         */
+        final int minRegionX;
+
+        /**
+         * The minimum region Z coordinate.
+         */
+        final int minRegionZ;
+
+        /**
+         * The number of regions along the X axis.
+         */
+        final int regionsX;
+
+        /**
+         * The number of regions along the Z axis.
+         */
+        final int regionsZ;
+
+        /**
+         * The tiles.
+         */
+        final ShortBuffer[] tiles;
+
+        /**
+         * The tile files, in the same order as tiles.
+         */
+        final File[] files;
+    } // class BakedWorld
+
+    // ------------------------------------------------------------------------
+    /**
+     * Base 2 logarithm of the width of a region in blocks.
+     */
+    protected static final int REGION_SHIFT = 9;
+
+    /**
+     * Width of a region in blocks.
+     */
+    protected static final int REGION_SIZE = 1 << REGION_SHIFT;
+
+    /**
+     * Height of the world, in blocks, covered by tiles.
+     */
+    protected static final int BAKED_HEIGHT = 256;
+
+    /**
+     * Number of entries in a tile.
+     */
+    protected static final int TILE_ENTRIES = REGION_SIZE * REGION_SIZE * (BAKED_HEIGHT >> 4);
+
+    /**
+     * Palette index of the root Zone.
+     */
+    protected static final int ROOT_INDEX = 0;
+
+    /**
+     * Tile value of a block column band that is not wholly in one Zone.
+     */
+    protected static final int UNRESOLVED = 0xFFFF;
+
+    /**
+     * Number of palette entries of removed Zones, beyond the number of live
+     * Zones, that are tolerated before a full bake compacts the palette.
+     */
+    protected static final int PALETTE_SLACK = 64;
+
+    /**
+     * Map from World UUID to the baked tiles of that World.
+     */
+    protected final ConcurrentHashMap<UUID, BakedWorld> _worlds = new ConcurrentHashMap<>();
+
+    /**
+     * Map from World UUID to the reason its Zones were last not baked, so that
+     * the reason is only logged when it changes. Only accessed when baking.
+     */
+    protected final HashMap<UUID, String> _notBakedReasons = new HashMap<>();
+
+    /**
+     * The pool that bakes tiles; created on demand.
+     */
+    protected ForkJoinPool _pool;
+
+    /**
+     * The latest snapshot waiting to be baked, or null.
+     */
+    protected ZoneSnapshot _pending;
+
+    /**
+     * True while snapshots are being baked.
+     */
+    protected boolean _running;
+
+    /**
+     * True once stale tiles from previous runs have been deleted.
+     */
+    protected boolean _cleaned;
+
+    /**
+     * Number of bakes started, used to give each new tile file a distinct
+     * name.
+     */
+    protected long _generation;
+} // class ZoneBaker
\ No newline at end of file
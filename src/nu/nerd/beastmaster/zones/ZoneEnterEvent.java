@@ -0,0 +1,88 @@
+package nu.nerd.beastmaster.zones;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+// ----------------------------------------------------------------------------
+/**
+ * Event raised by the {@link ZoneTracker} when a player's current Zone (the
+ * most specific Zone containing the player) changes, and the player has
+ * entered a Zone.
+ *
+ * When the current Zone changes, a {@link ZoneLeaveEvent} is raised
+ * before this event. Moving into a child Zone is reported as leaving the
+ * parent and entering the child, and vice versa. By the time either event is
+ * raised, {@link ZoneManager#getPlayerZone(Player)} already returns the new
+ * Zone.
+ */
+public class ZoneEnterEvent extends PlayerEvent {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the list of handlers of this event type.
+     *
+     * @return the list of handlers of this event type.
+     */
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param player    the player.
+     * @param zone      the Zone that the player entered.
+     * @param fromZone the Zone that the player left.
+     */
+    public ZoneEnterEvent(Player player, Zone zone, Zone fromZone) {
+        super(player);
+        _zone = zone;
+        _fromZone = fromZone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zone that the player entered.
+     *
+     * @return the Zone that the player entered.
+     */
+    public Zone getZone() {
+        return _zone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zone that the player left.
+     *
+     * @return the Zone that the player left.
+     */
+    public Zone getFromZone() {
+        return _fromZone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see org.bukkit.event.Event#getHandlers()
+     */
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The handlers of this event type.
+     */
+    protected static final HandlerList HANDLERS = new HandlerList();
+
+    /**
+     * The Zone that the player entered.
+     */
+    protected final Zone _zone;
+
+    /**
+     * The Zone that the player left.
+     */
+    protected final Zone _fromZone;
+} // class ZoneEnterEvent
\ No newline at end of file
@@ -0,0 +1,253 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+// ----------------------------------------------------------------------------
+/**
+ * An immutable R-tree over the extents of the children of a Zone, used to
+ * find the children that could contain a point without evaluating every
+ * child's Zone Specification.
+ *
+ * The tree is bulk loaded using the Sort-Tile-Recursive algorithm, on the
+ * horizontal extents of the children. Children whose extents are unbounded in
+ * X or Z are kept in a separate list, and children with empty extents are
+ * omitted entirely, since they can never match.
+ *
+ * The priority of children is their position in the list of children, so the
+ * index is queried by repeatedly asking for the next matching child index
+ * after the previous one: {@link #next(double, double, double, double,
+ * double, double, int)}. Queries do not allocate and do not modify the index.
+ */
+public class ZoneIndex {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param children the child Zones to index, in priority order.
+     */
+    public ZoneIndex(List<Zone> children) {
+        _extents = new Box[children.size()];
+        List<Node> leafEntries = new ArrayList<>();
+        int[] unbounded = new int[children.size()];
+        int unboundedCount = 0;
+        for (int i = 0; i < children.size(); ++i) {
+            Box extent = children.get(i).getExtent();
+            _extents[i] = extent;
+            if (extent.isEmpty()) {
+                continue;
+            } else if (extent.isBoundedXZ()) {
+                leafEntries.add(new Node(i, extent));
+            } else {
+                unbounded[unboundedCount++] = i;
+            }
+        }
+        _unbounded = Arrays.copyOf(unbounded, unboundedCount);
+        _root = leafEntries.isEmpty() ? null : build(leafEntries);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the smallest child index greater than after whose extent
+     * intersects the specified box, or -1 if there is no such child.
+     *
+     * To query a point, pass the same coordinates as the minimum and maximum.
+     *
+     * @param minX  the minimum X coordinate of the query box.
+     * @param minY  the minimum Y coordinate of the query box.
+     * @param minZ  the minimum Z coordinate of the query box.
+     * @param maxX  the maximum X coordinate of the query box.
+     * @param maxY  the maximum Y coordinate of the query box.
+     * @param maxZ  the maximum Z coordinate of the query box.
+     * @param after the child index returned by the previous query, or -1 to
+     *              start at the beginning.
+     * @return the next candidate child index, or -1 if there are no more.
+     */
+    public int next(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int after) {
+        int best = -1;
+        for (int index : _unbounded) {
+            if (index > after && intersects(_extents[index], minX, minY, minZ, maxX, maxY, maxZ)) {
+                best = index;
+                break;
+            }
+        }
+
+        if (_root != null) {
+            int found = next(_root, minX, minY, minZ, maxX, maxY, maxZ, after, best);
+            if (found >= 0 && (best < 0 || found < best)) {
+                best = found;
+            }
+        }
+        return best;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Search a subtree for the smallest child index greater than after whose
+     * extent intersects the query box.
+     *
+     * @param node  the root of the subtree.
+     * @param minX  the minimum X coordinate of the query box.
+     * @param minY  the minimum Y coordinate of the query box.
+     * @param minZ  the minimum Z coordinate of the query box.
+     * @param maxX  the maximum X coordinate of the query box.
+     * @param maxY  the maximum Y coordinate of the query box.
+     * @param maxZ  the maximum Z coordinate of the query box.
+     * @param after the lower (exclusive) limit on the result.
+     * @param best  the best result found so far, or -1; subtrees that cannot
+     *              improve on it are skipped.
+     * @return the smallest matching index in the subtree, or -1.
+     */
+    protected int next(Node node, double minX, double minY, double minZ, double maxX, double maxY, double maxZ,
+                       int after, int best) {
+        if (node.maxIndex <= after || (best >= 0 && node.minIndex >= best) ||
+            !intersects(node.bounds, minX, minY, minZ, maxX, maxY, maxZ)) {
+            return -1;
+        }
+
+        if (node.children == null) {
+            // Leaf: a single child Zone.
+            return node.minIndex;
+        }
+
+        int result = -1;
+        for (Node child : node.children) {
+            int found = next(child, minX, minY, minZ, maxX, maxY, maxZ, after, best);
+            if (found >= 0) {
+                result = found;
+                best = found;
+            }
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Build the tree bottom-up from leaf entries by Sort-Tile-Recursive
+     * packing.
+     *
+     * @param nodes the nodes at the current level; consumed.
+     * @return the root node.
+     */
+    protected static Node build(List<Node> nodes) {
+        while (nodes.size() > 1) {
+            int parentCount = (nodes.size() + FANOUT - 1) / FANOUT;
+            int sliceCount = (int) Math.ceil(Math.sqrt(parentCount));
+            int sliceSize = sliceCount * FANOUT;
+
+            nodes.sort(Comparator.comparingDouble(n -> n.bounds.minX + n.bounds.maxX));
+            List<Node> parents = new ArrayList<>(parentCount);
+            for (int sliceStart = 0; sliceStart < nodes.size(); sliceStart += sliceSize) {
+                List<Node> slice = new ArrayList<>(nodes.subList(sliceStart, Math.min(nodes.size(), sliceStart + sliceSize)));
+                slice.sort(Comparator.comparingDouble(n -> n.bounds.minZ + n.bounds.maxZ));
+                for (int start = 0; start < slice.size(); start += FANOUT) {
+                    List<Node> group = slice.subList(start, Math.min(slice.size(), start + FANOUT));
+                    parents.add(new Node(group.toArray(new Node[group.size()])));
+                }
+            }
+            nodes = parents;
+        }
+        return nodes.get(0);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if a Box intersects the specified closed box.
+     *
+     * @param box  the Box.
+     * @param minX the minimum X coordinate of the query box.
+     * @param minY the minimum Y coordinate of the query box.
+     * @param minZ the minimum Z coordinate of the query box.
+     * @param maxX the maximum X coordinate of the query box.
+     * @param maxY the maximum Y coordinate of the query box.
+     * @param maxZ the maximum Z coordinate of the query box.
+     * @return true if the boxes share at least one point.
+     */
+    protected static boolean intersects(Box box, double minX, double minY, double minZ,
+                                        double maxX, double maxY, double maxZ) {
+        return box.minX <= maxX && minX <= box.maxX &&
+               box.minY <= maxY && minY <= box.maxY &&
+               box.minZ <= maxZ && minZ <= box.maxZ;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A node of the R-tree.
+     */
+    protected static final class Node {
+        /**
+         * Leaf constructor.
+         *
+         * @param index  the child index.
+         * @param extent the extent of the child.
+         */
+        Node(int index, Box extent) {
+            bounds = extent;
+            minIndex = maxIndex = index;
+            children = null;
+        }
+
+        /**
+         * Interior node constructor.
+         *
+         * @param children the child nodes.
+         */
+        Node(Node[] children) {
+            Box union = children[0].bounds;
+            int min = children[0].minIndex;
+            int max = children[0].maxIndex;
+            for (int i = 1; i < children.length; ++i) {
+                union = union.union(children[i].bounds);
+                min = Math.min(min, children[i].minIndex);
+                max = Math.max(max, children[i].maxIndex);
+            }
+            bounds = union;
+            minIndex = min;
+            maxIndex = max;
+            this.children = children;
+        }
+
+        /**
+         * The bounding box of all extents in this subtree.
+         */
+        final Box bounds;
+
+        /**
+         * The smallest child index in this subtree.
+         */
+        final int minIndex;
+
+        /**
+         * The largest child index in this subtree.
+         */
+        final int maxIndex;
+
+        /**
+         * The child nodes, or null for a leaf.
+         */
+        final Node[] children;
+    } // class Node
+
+    // ------------------------------------------------------------------------
+    /**
+     * Maximum number of children of an interior node.
+     */
+    protected static final int FANOUT = 8;
+
+    /**
+     * Extents of the child Zones, by child index.
+     */
+    protected final Box[] _extents;
+
+    /**
+     * Ascending indices of children whose extents are unbounded in X or Z.
+     */
+    protected final int[] _unbounded;
+
+    /**
+     * The root of the R-tree, or null if there are no bounded children.
+     */
+    protected final Node _root;
+} // class ZoneIndex
\ No newline at end of file
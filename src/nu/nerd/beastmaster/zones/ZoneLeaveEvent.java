@@ -0,0 +1,88 @@
+package nu.nerd.beastmaster.zones;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.player.PlayerEvent;
+
+// ----------------------------------------------------------------------------
+/**
+ * Event raised by the {@link ZoneTracker} when a player's current Zone (the
+ * most specific Zone containing the player) changes, and the player has
+ * left a Zone.
+ *
+ * When the current Zone changes, a {@link ZoneEnterEvent} is raised
+ * after this event. Moving into a child Zone is reported as leaving the
+ * parent and entering the child, and vice versa. By the time either event is
+ * raised, {@link ZoneManager#getPlayerZone(Player)} already returns the new
+ * Zone.
+ */
+public class ZoneLeaveEvent extends PlayerEvent {
+    // ------------------------------------------------------------------------
+    /**
+     * Return the list of handlers of this event type.
+     *
+     * @return the list of handlers of this event type.
+     */
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param player    the player.
+     * @param zone      the Zone that the player left.
+     * @param toZone the Zone that the player entered.
+     */
+    public ZoneLeaveEvent(Player player, Zone zone, Zone toZone) {
+        super(player);
+        _zone = zone;
+        _toZone = toZone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zone that the player left.
+     *
+     * @return the Zone that the player left.
+     */
+    public Zone getZone() {
+        return _zone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zone that the player entered.
+     *
+     * @return the Zone that the player entered.
+     */
+    public Zone getToZone() {
+        return _toZone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see org.bukkit.event.Event#getHandlers()
+     */
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The handlers of this event type.
+     */
+    protected static final HandlerList HANDLERS = new HandlerList();
+
+    /**
+     * The Zone that the player left.
+     */
+    protected final Zone _zone;
+
+    /**
+     * The Zone that the player entered.
+     */
+    protected final Zone _toZone;
+} // class ZoneLeaveEvent
\ No newline at end of file
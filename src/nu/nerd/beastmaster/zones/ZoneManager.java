@@ -1,22 +1,46 @@
 package nu.nerd.beastmaster.zones;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.MemoryConfiguration;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.entity.Player;
+
+import nu.nerd.beastmaster.BeastMaster;
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
 
 // ----------------------------------------------------------------------------
 /**
  * Manages the zone definitions.
+ *
+ * Zones are grouped by the World of their root Zone. Only the Zones of loaded
+ * Worlds are parsed, compiled and kept in the Zone hierarchy; the Zones of
+ * other Worlds are kept as their configuration sections until the World
+ * loads (see {@link #loadWorld(World, Logger)}), and return to that form when
+ * it unloads (see {@link #unloadWorld(World, Logger)}). Unloaded Zones are
+ * not returned by {@link #getZone(String)}, but are still saved.
  */
 public class ZoneManager {
     // ------------------------------------------------------------------------
@@ -69,18 +93,354 @@ public class ZoneManager {
      * However, this method will return the most specific child Zone whose Zone
      * Specification is true at the specified Location.
      *
+     * If zone baking is enabled and the World's Zones have been baked, the
+     * Zone is read from a {@link ZoneBaker} tile. Otherwise, lookups use the
+     * current {@link ZoneSnapshot}, which caches results per
+     * 16x16x16 chunk section. When a section is first looked up, the Zone
+     * Specifications are evaluated over the whole section (see
+     * {@link BoxExpressionVisitor}); if that decides the zone without
+     * ambiguity, the zone is cached for the section. Sections that straddle a
+     * zone boundary are evaluated at each Location.
+     *
      * @param loc the Location.
      * @return the Zone, never null.
      */
     public Zone getZone(Location loc) {
-        Zone root = getRootZone(loc.getWorld());
-        for (int i = 0; i < root.children().size(); ++i) {
-            Zone child = getChildZone(root.children().get(i), loc);
-            if (child != null) {
-                return child;
+        World world = loc.getWorld();
+        ZoneSnapshot snapshot = _snapshot;
+        Zone zone = _baker.getZone(snapshot, world.getUID(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+        if (zone == null) {
+            zone = snapshot.getZone(world, loc.getX(), loc.getY(), loc.getZ());
+        }
+        return (zone != null) ? zone : getRootZone(world);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zone containing the specified block.
+     *
+     * This method does not allocate when the block's chunk section has a
+     * cached result. It can be called from any thread, but outside of the main
+     * thread, predicates that need the biome or surface height of a chunk that
+     * is not in the BiomeCache or HeightCache evaluate to false, so the result
+     * is only reliable for blocks in loaded chunks.
+     *
+     * @param worldId the UUID of the World.
+     * @param x       the block X coordinate.
+     * @param y       the block Y coordinate.
+     * @param z       the block Z coordinate.
+     * @return the most specific Zone containing the block, or null if the
+     *         World is not loaded.
+     */
+    public Zone getZone(UUID worldId, int x, int y, int z) {
+        ZoneSnapshot snapshot = _snapshot;
+        Zone zone = _baker.getZone(snapshot, worldId, x, y, z);
+        return (zone != null) ? zone : snapshot.getZone(worldId, x, y, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zones of many blocks in one World.
+     *
+     * This is much cheaper than calling {@link #getZone(Location)} for each
+     * block: blocks are looked up in baked tiles, if available, and then
+     * grouped by chunk section, so that each section is looked up in the
+     * section cache once (see
+     * {@link ZoneSnapshot#getZones(UUID, long[], Zone[])}).
+     *
+     * @param world  the World.
+     * @param blocks the block coordinates, packed by
+     *               {@link #packBlock(int, int, int)}.
+     * @return the most specific Zone containing each block, in the same
+     *         order.
+     */
+    public Zone[] getZones(World world, long[] blocks) {
+        ZoneSnapshot snapshot = _snapshot;
+        UUID worldId = world.getUID();
+        Zone[] result = new Zone[blocks.length];
+        boolean complete = true;
+        for (int i = 0; i < blocks.length; ++i) {
+            long block = blocks[i];
+            result[i] = _baker.getZone(snapshot, worldId, unpackX(block), unpackY(block), unpackZ(block));
+            complete &= (result[i] != null);
+        }
+        if (!complete && !snapshot.getZones(worldId, blocks, result)) {
+            Arrays.fill(result, getRootZone(world));
+        }
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Zones of every block of a chunk in a range of Y coordinates.
+     *
+     * @param chunk the Chunk.
+     * @param minY  the minimum block Y coordinate.
+     * @param maxY  the maximum block Y coordinate, inclusive.
+     * @return the most specific Zone containing each block, indexed by
+     *         ((y - minY) << 8) | (z << 4) | x, where x and z are relative to
+     *         the chunk.
+     */
+    public Zone[] getZones(Chunk chunk, int minY, int maxY) {
+        int baseX = chunk.getX() << 4;
+        int baseZ = chunk.getZ() << 4;
+        long[] blocks = new long[(maxY - minY + 1) << 8];
+        for (int y = minY; y <= maxY; ++y) {
+            for (int z = 0; z < 16; ++z) {
+                for (int x = 0; x < 16; ++x) {
+                    blocks[((y - minY) << 8) | (z << 4) | x] = packBlock(baseX + x, y, baseZ + z);
+                }
             }
         }
-        return root;
+        return getZones(chunk.getWorld(), blocks);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Pack block coordinates into a long, in the same layout as Minecraft's
+     * block positions: 26 bits of X, 26 bits of Z and 12 bits of Y.
+     *
+     * @param x the block X coordinate.
+     * @param y the block Y coordinate.
+     * @param z the block Z coordinate.
+     * @return the packed coordinates.
+     */
+    public static long packBlock(int x, int y, int z) {
+        return ((x & 0x3FFFFFFL) << 38) | ((z & 0x3FFFFFFL) << 12) | (y & 0xFFFL);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the X coordinate of packed block coordinates.
+     *
+     * @param packed the coordinates packed by {@link #packBlock(int, int, int)}.
+     * @return the block X coordinate.
+     */
+    public static int unpackX(long packed) {
+        return (int) (packed >> 38);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Y coordinate of packed block coordinates.
+     *
+     * @param packed the coordinates packed by {@link #packBlock(int, int, int)}.
+     * @return the block Y coordinate.
+     */
+    public static int unpackY(long packed) {
+        return (int) (packed << 52 >> 52);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Z coordinate of packed block coordinates.
+     *
+     * @param packed the coordinates packed by {@link #packBlock(int, int, int)}.
+     * @return the block Z coordinate.
+     */
+    public static int unpackZ(long packed) {
+        return (int) (packed << 26 >> 38);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the current Zone of the specified player.
+     *
+     * Players are tracked as they move (see {@link ZoneTracker}), so this is
+     * a single hash lookup; players that are not tracked yet are looked up by
+     * Location.
+     *
+     * @param player the player.
+     * @return the most specific Zone containing the player.
+     */
+    public Zone getPlayerZone(Player player) {
+        Zone zone = _tracker.getZone(player);
+        return (zone != null) ? zone : getZone(player.getLocation());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the ZoneTracker that tracks the current Zones of players.
+     *
+     * @return the ZoneTracker.
+     */
+    public ZoneTracker getTracker() {
+        return _tracker;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the ForkJoinPool that runs background zone work, such as baking
+     * tiles and {@link ZoneAnalyser analysing} the Zone hierarchy.
+     *
+     * The pool is shut down when the plugin is disabled.
+     *
+     * @return the ForkJoinPool.
+     */
+    public ForkJoinPool getPool() {
+        return _baker.getPool();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the current immutable snapshot of the Zone hierarchy.
+     *
+     * @return the current snapshot.
+     */
+    public ZoneSnapshot getSnapshot() {
+        return _snapshot;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard all cached zone lookup results by publishing a new
+     * {@link ZoneSnapshot} of the Zone hierarchy.
+     *
+     * This must be called, in the main thread, whenever anything that affects
+     * the result of {@link #getZone(Location)} changes: the set of zones, the
+     * parent-child hierarchy, the order of children, any Zone Specification or
+     * the set of loaded Worlds. While zones are being loaded, the snapshot is
+     * only rebuilt once loading is complete. References to Zones by the zone()
+     * predicate are also resolved again. Surface heights are cached for, or
+     * discarded from, Worlds where the new snapshot starts or stops using the
+     * DEPTH predicate. If enabled, baking of the new snapshot is scheduled.
+     * Finally, the Zones of tracked players are
+     * looked up again, which may raise zone enter and leave events.
+     */
+    public void invalidateCache() {
+        if (!_loading) {
+            updateReferences();
+            ZoneSnapshot previous = _snapshot;
+            _snapshot = new ZoneSnapshot(getRootZones(), _cacheHits, _cacheMisses);
+            updateHeights(previous, _snapshot);
+            _baker.schedule(_snapshot);
+            _tracker.refresh();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the surface heights of a World's chunks should be
+     * cached, because a Zone Specification in the World uses DEPTH.
+     *
+     * @param world the World.
+     * @return true if the World's surface heights should be cached.
+     */
+    public boolean usesDepth(World world) {
+        return _snapshot.usesDepth(world.getUID());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard cached zone lookup results in a World that may depend on
+     * WorldGuard regions, when they change.
+     *
+     * Unlike {@link #invalidateCache()}, this keeps the current snapshot and
+     * baked tiles (which never depend on regions), and only discards the
+     * snapshot's cached sections that intersect Zones that use the WG
+     * predicate. If there are any, the Zones of tracked players are looked up
+     * again.
+     *
+     * @param worldId the UUID of the World.
+     */
+    public void invalidateRegions(UUID worldId) {
+        if (_snapshot.evictRegionSections(worldId)) {
+            _tracker.refresh();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the shared reference to the Zone with the specified name, for
+     * the zone() Zone Specification predicate.
+     *
+     * The Zone need not exist yet.
+     *
+     * @param name the case-insensitive Zone name.
+     * @return the ZoneReference.
+     */
+    public ZoneReference getReference(String name) {
+        return _references.computeIfAbsent(name.toLowerCase(), k -> new ZoneReference(name));
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the specified Zone is part of a cycle of zone()
+     * references, in which case references to it are false everywhere.
+     *
+     * @param zone the Zone.
+     * @return true if the Zone is part of a cycle of references.
+     */
+    public boolean isInReferenceCycle(Zone zone) {
+        return _cyclicZones.contains(zone);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stop baking zones and delete baked tiles, when the plugin is disabled.
+     */
+    public void shutdown() {
+        _baker.shutdown();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard the effective mining drop and mob replacement tables of all
+     * Zones.
+     *
+     * This must be called whenever anything that affects the result of
+     * {@link Zone#getMiningDrops(org.bukkit.Material, boolean)} or
+     * {@link Zone#getMobReplacementDropSet(org.bukkit.entity.EntityType,
+     * boolean)} changes: a Zone's own drop or replacement table IDs,
+     * inheritance flags, the parent-child hierarchy or the set of loot tables.
+     * Zones rebuild their tables lazily, when next queried.
+     */
+    public void invalidateRules() {
+        ++_rulesVersion;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the version number of the rules that determine Zones' effective
+     * mining drops and mob replacements.
+     *
+     * @return a number that changes whenever {@link #invalidateRules()} is
+     *         called.
+     */
+    public int getRulesVersion() {
+        return _rulesVersion;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard cached zone lookup results for a chunk, when it is unloaded.
+     *
+     * @param chunk the Chunk.
+     */
+    public void evictChunk(Chunk chunk) {
+        _snapshot.evictChunk(chunk.getWorld().getUID(), chunk.getX(), chunk.getZ());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of zone lookups answered from the cache.
+     *
+     * @return the number of zone lookups answered from the cache.
+     */
+    public long getCacheHits() {
+        return _cacheHits.sum();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of zone lookups that required evaluation of Zone
+     * Specifications.
+     *
+     * @return the number of zone lookups that required evaluation of Zone
+     *         Specifications.
+     */
+    public long getCacheMisses() {
+        return _cacheMisses.sum();
     }
 
     // ------------------------------------------------------------------------
@@ -95,6 +455,7 @@ public class ZoneManager {
         // a Root Zone in the onWorldLoad() event.
         if (getZone(zone.getId()) == null) {
             _idToZone.put(zone.getId().toLowerCase(), zone);
+            invalidateCache();
         }
     }
 
@@ -105,19 +466,24 @@ public class ZoneManager {
      * @param removed the removed zone.
      */
     public void removeZone(Zone removed) {
-        _idToZone.remove(removed.getId().toLowerCase());
-
         // Remove reference to removed zone in parent's children list.
         Zone parent = removed.getParent();
         if (parent != null) {
             parent.children().remove(removed);
         }
 
-        // Recursively remove children, avoiding concurrent modification.
-        ArrayList<Zone> children = new ArrayList<>(removed.children());
-        for (Zone child : children) {
-            removeZone(child);
+        // Remove the zone and all of its descendants before publishing a new
+        // snapshot, so that none of them remain in it.
+        ArrayDeque<Zone> pending = new ArrayDeque<>();
+        pending.add(removed);
+        while (!pending.isEmpty()) {
+            Zone zone = pending.remove();
+            _idToZone.remove(zone.getId().toLowerCase());
+            pending.addAll(zone.children());
         }
+
+        invalidateCache();
+        invalidateRules();
     }
 
     // ------------------------------------------------------------------------
@@ -130,6 +496,111 @@ public class ZoneManager {
         return _idToZone.values();
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the configuration of a Zone in a World that is not loaded.
+     *
+     * @param id the case insensitive zone ID.
+     * @return the Zone's configuration section, or null if there is no such
+     *         unloaded Zone.
+     */
+    public ConfigurationSection getUnloadedZone(String id) {
+        UnloadedWorld unloaded = _unloadedZoneWorlds.get(id.toLowerCase());
+        return (unloaded != null) ? unloaded.sections.get(id.toLowerCase()) : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the IDs of the root Zones of Worlds that are not loaded, sorted
+     * case-insensitively.
+     *
+     * @return the IDs of unloaded root Zones.
+     */
+    public List<String> getUnloadedRootIds() {
+        return _unloadedWorlds.values().stream()
+            .map(unloaded -> unloaded.rootId)
+            .sorted(String.CASE_INSENSITIVE_ORDER)
+            .collect(Collectors.toList());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the number of Zones, including the root Zone, of a World that is
+     * not loaded.
+     *
+     * @param rootId the case insensitive ID of the root Zone.
+     * @return the number of unloaded Zones in the World.
+     */
+    public int getUnloadedZoneCount(String rootId) {
+        UnloadedWorld unloaded = _unloadedWorlds.get(rootId.toLowerCase());
+        return (unloaded != null) ? unloaded.sections.size() : 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Load the Zones of a World when it loads, or add a root Zone for it if
+     * it has none.
+     *
+     * @param world  the World.
+     * @param logger the logger.
+     */
+    public void loadWorld(World world, Logger logger) {
+        UnloadedWorld unloaded = _unloadedWorlds.remove(world.getName().toLowerCase());
+        if (unloaded != null) {
+            _loading = true;
+            try {
+                for (String id : unloaded.sections.keySet()) {
+                    _unloadedZoneWorlds.remove(id);
+                }
+                loadZones(unloaded.sections.values(), logger);
+            } finally {
+                _loading = false;
+            }
+        }
+
+        Zone root = getZone(world.getName());
+        if (root == null) {
+            addZone(new Zone(world));
+        } else {
+            root.setWorld(world);
+            invalidateCache();
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Release the Zones of a World when it unloads, keeping only their
+     * configuration.
+     *
+     * @param world  the World.
+     * @param logger the logger.
+     */
+    public void unloadWorld(World world, Logger logger) {
+        Zone root = getZone(world.getName());
+        if (root == null) {
+            return;
+        }
+
+        UnloadedWorld unloaded = new UnloadedWorld(root.getId());
+        MemoryConfiguration holder = new MemoryConfiguration();
+        ArrayDeque<Zone> pending = new ArrayDeque<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Zone zone = pending.remove();
+            zone.save(holder, logger);
+            String id = zone.getId().toLowerCase();
+            unloaded.sections.put(id, holder.getConfigurationSection(zone.getId()));
+            _unloadedZoneWorlds.put(id, unloaded);
+            _idToZone.remove(id);
+            pending.addAll(zone.children());
+        }
+        _unloadedWorlds.put(root.getId().toLowerCase(), unloaded);
+
+        invalidateRules();
+        invalidateCache();
+        SharedExpressions.purge();
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Load all the zones from the plugin configuration.
@@ -139,30 +610,52 @@ public class ZoneManager {
      */
     public void load(FileConfiguration config, Logger logger) {
         _idToZone.clear();
+        _unloadedWorlds.clear();
+        _unloadedZoneWorlds.clear();
+        SharedExpressions.clear();
+        _loading = true;
+        try {
+            invalidateRules();
 
-        ConfigurationSection zones = config.getConfigurationSection("zones");
-        if (zones == null) {
-            zones = config.createSection("zones");
-        }
+            ConfigurationSection zones = config.getConfigurationSection("zones");
+            if (zones == null) {
+                zones = config.createSection("zones");
+            }
 
-        for (String id : zones.getKeys(false)) {
-            ConfigurationSection zoneSection = zones.getConfigurationSection(id);
-            Zone zone = new Zone();
-            if (zone.loadProperties(zoneSection, logger)) {
-                addZone(zone);
+            // Defer loading Zones whose root is a World that is not loaded.
+            List<ConfigurationSection> loadedSections = new ArrayList<>();
+            for (String id : zones.getKeys(false)) {
+                ConfigurationSection zoneSection = zones.getConfigurationSection(id);
+                String rootId = findRootId(zones, id);
+                if (rootId != null && Bukkit.getWorld(rootId) == null) {
+                    UnloadedWorld unloaded = _unloadedWorlds.computeIfAbsent(rootId.toLowerCase(),
+                                                                             k -> new UnloadedWorld(rootId));
+                    unloaded.sections.put(id.toLowerCase(), zoneSection);
+                    _unloadedZoneWorlds.put(id.toLowerCase(), unloaded);
+                } else {
+                    loadedSections.add(zoneSection);
+                }
             }
-        }
+            loadZones(loadedSections, logger);
 
-        for (String id : zones.getKeys(false)) {
-            ConfigurationSection zoneSection = zones.getConfigurationSection(id);
-            Zone zone = getZone(id);
-            zone.loadHierarchy(zoneSection, logger);
+            // Add in default zones for any worlds not mentioned in the config.
+            for (World world : Bukkit.getWorlds()) {
+                if (getZone(world.getName()) == null) {
+                    addZone(new Zone(world));
+                }
+            }
+        } finally {
+            _loading = false;
         }
+        invalidateCache();
 
-        // Add in default zones for any worlds not mentioned in the config.
-        for (World world : Bukkit.getWorlds()) {
-            if (getZone(world.getName()) == null) {
-                addZone(new Zone(world));
+        for (Zone zone : _cyclicZones) {
+            logger.severe("zone " + zone.getId() + " is part of a cycle of zone() references; " +
+                          "zone(\"" + zone.getId() + "\") is false everywhere");
+        }
+        for (ZoneReference reference : _references.values()) {
+            if (getZone(reference.getName()) == null && getUnloadedZone(reference.getName()) == null) {
+                logger.warning("zone(\"" + reference.getName() + "\") refers to a zone that doesn't exist");
             }
         }
     }
@@ -180,38 +673,350 @@ public class ZoneManager {
         for (Zone zone : _idToZone.values()) {
             zone.save(zones, logger);
         }
+        for (UnloadedWorld unloaded : _unloadedWorlds.values()) {
+            for (ConfigurationSection zoneSection : unloaded.sections.values()) {
+                zones.set(zoneSection.getName(), zoneSection);
+            }
+        }
     }
 
     // ------------------------------------------------------------------------
     /**
-     * Return the deepest descendant of a Zone whose Zone Specification
-     * evaluates to true at a Location, or null if three is no such child.
+     * Create Zones from their configuration sections, then link them into the
+     * hierarchy.
      *
-     * Traversal is depth-first
+     * @param zoneSections the configuration sections, which must include the
+     *                     parents and children of every Zone.
+     * @param logger       the logger.
+     */
+    protected void loadZones(Collection<ConfigurationSection> zoneSections, Logger logger) {
+        for (ConfigurationSection zoneSection : zoneSections) {
+            Zone zone = new Zone();
+            if (zone.loadProperties(zoneSection, logger)) {
+                addZone(zone);
+            }
+        }
+
+        for (ConfigurationSection zoneSection : zoneSections) {
+            Zone zone = getZone(zoneSection.getName());
+            if (zone != null) {
+                zone.loadHierarchy(zoneSection, logger);
+            }
+        }
+        invalidateRules();
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the ID of the root Zone of a Zone, following the parent IDs in
+     * the configuration.
      *
-     * @param zone the parent Zone.
-     * @loc the Location where the Zone Specification is evaluated.
-     * @return the first
+     * @param zones the configuration section containing all Zones.
+     * @param id    the ID of the Zone.
+     * @return the ID of the root Zone, or null if a parent is missing or the
+     *         parents form a cycle; such Zones are always loaded, so that the
+     *         errors are logged.
+     */
+    protected static String findRootId(ConfigurationSection zones, String id) {
+        Set<String> visited = new HashSet<>();
+        for (;;) {
+            ConfigurationSection zoneSection = zones.getConfigurationSection(id);
+            if (zoneSection == null || !visited.add(id.toLowerCase())) {
+                return null;
+            }
+            String parentId = zoneSection.getString("parent");
+            if (parentId == null || parentId.isEmpty()) {
+                return id;
+            }
+            id = parentId;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Cache the surface heights of each loaded World where a new snapshot
+     * starts using the DEPTH predicate, and discard them where it stops.
      *
+     * @param previous the previous snapshot.
+     * @param snapshot the new snapshot.
      */
-    protected static Zone getChildZone(Zone zone, Location loc) {
-        if (zone.contains(loc)) {
-            for (int i = 0; i < zone.children().size(); ++i) {
-                Zone child = getChildZone(zone.children().get(i), loc);
-                if (child != null) {
-                    return child;
+    protected void updateHeights(ZoneSnapshot previous, ZoneSnapshot snapshot) {
+        for (World world : Bukkit.getWorlds()) {
+            UUID worldId = world.getUID();
+            boolean usesDepth = snapshot.usesDepth(worldId);
+            if (usesDepth != previous.usesDepth(worldId)) {
+                if (usesDepth) {
+                    BeastMaster.HEIGHTS.load(world);
+                } else {
+                    BeastMaster.HEIGHTS.clear(worldId);
                 }
             }
-            return zone;
-        } else {
-            return null;
         }
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Resolve every {@link ZoneReference} to the current Zone with its name.
+     *
+     * References to Zones that don't exist, or that are part of a cycle of
+     * references, become false everywhere, so that evaluating a zone()
+     * predicate always terminates.
+     */
+    protected void updateReferences() {
+        _cyclicZones = findCyclicZones();
+        for (ZoneReference reference : _references.values()) {
+            Zone zone = getZone(reference.getName());
+            reference.setExpression((zone == null || _cyclicZones.contains(zone)) ? ZoneReference.NOWHERE
+                                                                                  : compileReference(zone));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a CompiledExpression that is true where a Zone's specification
+     * and those of all its ancestors are true, in the Zone's World.
+     *
+     * @param zone the Zone.
+     * @return the CompiledExpression.
+     */
+    protected static CompiledExpression compileReference(Zone zone) {
+        World zoneWorld = zone.getWorld();
+        if (zoneWorld == null) {
+            return ZoneReference.NOWHERE;
+        }
+
+        List<CompiledExpression> chain = new ArrayList<>();
+        for (Zone ancestor = zone; !ancestor.isRoot(); ancestor = ancestor.getParent()) {
+            if (ancestor.getCompiledExpression() != null) {
+                chain.add(ancestor.getCompiledExpression());
+            }
+        }
+        CompiledExpression[] tests = chain.toArray(new CompiledExpression[chain.size()]);
+        return (w, x, y, z) -> {
+            if (w != zoneWorld) {
+                return false;
+            }
+            for (CompiledExpression test : tests) {
+                if (!test.test(w, x, y, z)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the set of Zones that are part of a cycle of zone() references.
+     *
+     * Testing a reference to a Zone evaluates the specifications of the Zone
+     * and its ancestors, so a Zone depends on every Zone that it refers to,
+     * and on their ancestors. The cycles are the strongly connected
+     * components of that graph with more than one Zone, or with a Zone that
+     * depends on itself, found with Tarjan's algorithm.
+     *
+     * @return the Zones that are part of a cycle.
+     */
+    protected Set<Zone> findCyclicZones() {
+        Map<Zone, List<Zone>> edges = new IdentityHashMap<>();
+        for (Zone zone : _idToZone.values()) {
+            List<Zone> targets = new ArrayList<>();
+            if (zone.getSimplifiedExpression() != null) {
+                addReferencedZones(zone.getSimplifiedExpression(), targets);
+            }
+            edges.put(zone, targets);
+        }
+
+        Set<Zone> cyclic = Collections.newSetFromMap(new IdentityHashMap<>());
+        TarjanState state = new TarjanState();
+        for (Zone zone : edges.keySet()) {
+            if (!state.index.containsKey(zone)) {
+                strongConnect(zone, edges, state, cyclic);
+            }
+        }
+        return cyclic;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add the Zones that an Expression depends on through zone() predicates,
+     * and their ancestors, to a list.
+     *
+     * @param expression the Expression.
+     * @param targets    the list to add to.
+     */
+    protected void addReferencedZones(Expression expression, List<Zone> targets) {
+        if (expression instanceof PredicateExpression) {
+            PredicateExpression predicate = (PredicateExpression) expression;
+            if (predicate.getZonePredicate() == ZonePredicate.ZONE) {
+                ZoneReference reference = (ZoneReference) predicate.args.get(0);
+                for (Zone target = getZone(reference.getName()); target != null; target = target.getParent()) {
+                    targets.add(target);
+                }
+            }
+        }
+        for (int i = 0; i < expression.getChildCount(); ++i) {
+            addReferencedZones(expression.getChild(i), targets);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Visit a Zone in Tarjan's strongly connected components algorithm.
+     *
+     * @param zone   the Zone.
+     * @param edges  map from Zone to the Zones it depends on.
+     * @param state  the search state.
+     * @param cyclic the set of Zones in cycles, to add to.
+     */
+    protected static void strongConnect(Zone zone, Map<Zone, List<Zone>> edges, TarjanState state, Set<Zone> cyclic) {
+        int index = state.index.size();
+        state.index.put(zone, index);
+        state.lowLink.put(zone, index);
+        state.stack.push(zone);
+        state.onStack.add(zone);
+
+        boolean selfLoop = false;
+        for (Zone target : edges.getOrDefault(zone, Collections.emptyList())) {
+            if (target == zone) {
+                selfLoop = true;
+            }
+            if (!state.index.containsKey(target)) {
+                strongConnect(target, edges, state, cyclic);
+                state.lowLink.put(zone, Math.min(state.lowLink.get(zone), state.lowLink.get(target)));
+            } else if (state.onStack.contains(target)) {
+                state.lowLink.put(zone, Math.min(state.lowLink.get(zone), state.index.get(target)));
+            }
+        }
+
+        if (state.lowLink.get(zone) == index) {
+            List<Zone> component = new ArrayList<>();
+            Zone member;
+            do {
+                member = state.stack.pop();
+                state.onStack.remove(member);
+                component.add(member);
+            } while (member != zone);
+
+            if (component.size() > 1 || selfLoop) {
+                cyclic.addAll(component);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The state of a search for strongly connected components.
+     */
+    protected static final class TarjanState {
+        /**
+         * Map from Zone to the order in which it was visited.
+         */
+        final Map<Zone, Integer> index = new IdentityHashMap<>();
+
+        /**
+         * Map from Zone to the smallest index reachable from it.
+         */
+        final Map<Zone, Integer> lowLink = new IdentityHashMap<>();
+
+        /**
+         * The Zones of components still being searched.
+         */
+        final ArrayDeque<Zone> stack = new ArrayDeque<>();
+
+        /**
+         * The Zones in stack.
+         */
+        final Set<Zone> onStack = Collections.newSetFromMap(new IdentityHashMap<>());
+    } // class TarjanState
+
+    // ------------------------------------------------------------------------
+    /**
+     * The configuration of the Zones of a World that is not loaded.
+     */
+    protected static final class UnloadedWorld {
+        /**
+         * Constructor.
+         *
+         * @param rootId the ID of the root Zone.
+         */
+        UnloadedWorld(String rootId) {
+            this.rootId = rootId;
+        }
+
+        /**
+         * The ID of the root Zone, which is the World name.
+         */
+        final String rootId;
+
+        /**
+         * Map from lower cased zone ID to configuration section.
+         */
+        final LinkedHashMap<String, ConfigurationSection> sections = new LinkedHashMap<>();
+    } // class UnloadedWorld
+
     // ------------------------------------------------------------------------
     /**
      * Map from lower cased zone ID to corresponding zones.
      */
     protected HashMap<String, Zone> _idToZone = new HashMap<>();
 
+    /**
+     * Map from lower cased root zone ID to the configuration of the Zones of
+     * a World that is not loaded.
+     */
+    protected HashMap<String, UnloadedWorld> _unloadedWorlds = new HashMap<>();
+
+    /**
+     * Map from lower cased zone ID to the unloaded World containing the Zone.
+     */
+    protected HashMap<String, UnloadedWorld> _unloadedZoneWorlds = new HashMap<>();
+
+    /**
+     * Number of lookups answered from the cache.
+     */
+    protected final LongAdder _cacheHits = new LongAdder();
+
+    /**
+     * Number of lookups that evaluated Zone Specifications.
+     */
+    protected final LongAdder _cacheMisses = new LongAdder();
+
+    /**
+     * The current snapshot of the Zone hierarchy, replaced whenever it changes.
+     */
+    protected volatile ZoneSnapshot _snapshot = new ZoneSnapshot(Collections.emptyList(), _cacheHits, _cacheMisses);
+
+    /**
+     * Map from lower cased zone ID to the shared reference to that Zone by the
+     * zone() predicate.
+     */
+    protected HashMap<String, ZoneReference> _references = new HashMap<>();
+
+    /**
+     * The Zones that are part of a cycle of zone() references.
+     */
+    protected Set<Zone> _cyclicZones = Collections.emptySet();
+
+    /**
+     * Bakes snapshots into tiles, if enabled.
+     */
+    protected final ZoneBaker _baker = new ZoneBaker();
+
+    /**
+     * Tracks the current Zones of players.
+     */
+    protected final ZoneTracker _tracker = new ZoneTracker(this);
+
+    /**
+     * True while zones are being loaded, to defer building the snapshot.
+     */
+    protected boolean _loading;
+
+    /**
+     * Version number of the rules that determine Zones' effective mining drops
+     * and mob replacements; see {@link #invalidateRules()}.
+     */
+    protected int _rulesVersion;
+
 } // class ZoneManager
\ No newline at end of file
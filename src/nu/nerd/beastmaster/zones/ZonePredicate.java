@@ -1,18 +1,13 @@
 package nu.nerd.beastmaster.zones;
 
+import java.util.EnumSet;
 import java.util.List;
 
 import org.bukkit.Location;
+import org.bukkit.World;
 import org.bukkit.block.Biome;
 
-import com.sk89q.worldedit.bukkit.BukkitAdapter;
-import com.sk89q.worldguard.WorldGuard;
-import com.sk89q.worldguard.protection.ApplicableRegionSet;
-import com.sk89q.worldguard.protection.managers.RegionManager;
-import com.sk89q.worldguard.protection.regions.ProtectedRegion;
-import com.sk89q.worldguard.protection.regions.RegionContainer;
-
-import nu.nerd.beastmaster.Util;
+import nu.nerd.beastmaster.BeastMaster;
 
 // ----------------------------------------------------------------------------
 /**
@@ -20,30 +15,77 @@ import nu.nerd.beastmaster.Util;
  */
 public enum ZonePredicate {
     BIOME(
-        "Location is in the specified biome type.",
-        new ZonePredicateParameters("type", String.class),
+        "Location is in any of the specified biome types.",
+        new ZonePredicateParameters("type...", String.class),
+        10,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
-                String biomeName = ((String) args.get(0)).toUpperCase();
-                try {
-                    args.set(0, Biome.valueOf(biomeName));
-                } catch (IllegalArgumentException ex) {
-                    throw new ParseError("invalid biome name: " + biomeName +
-                                         "; it should be a double-quoted Biome API constant",
-                        argTokens.get(0));
+                for (int i = 0; i < args.size(); ++i) {
+                    String biomeName = ((String) args.get(i)).toUpperCase();
+                    try {
+                        args.set(i, Biome.valueOf(biomeName));
+                    } catch (IllegalArgumentException ex) {
+                        throw new ParseError("invalid biome name: " + biomeName +
+                                             "; it should be a double-quoted Biome API constant",
+                            argTokens.get(i));
+                    }
+                }
+            }
+
+            @Override
+            public CompiledExpression compile(List<Object> args) {
+                EnumSet<Biome> biomes = getBiomes(args);
+                return (w, x, y, z) -> biomes.contains(BeastMaster.BIOMES.getBiome(w,
+                                                                                    Location.locToBlock(x),
+                                                                                    Location.locToBlock(y),
+                                                                                    Location.locToBlock(z)));
+            }
+
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                // Only analyse boxes of modest size, in loaded chunks.
+                if (world == null || !box.isBoundedXZ() ||
+                    box.maxX - box.minX > 64 || box.maxZ - box.minZ > 64) {
+                    return Tristate.MAYBE;
+                }
+
+                EnumSet<Biome> biomes = getBiomes(args);
+                int minY = Math.max(0, Math.min(255, Location.locToBlock(box.minY)));
+                int maxY = Math.max(0, Math.min(255, Location.locToBlock(box.maxY)));
+                boolean anyIn = false;
+                boolean anyOut = false;
+                for (int x = Location.locToBlock(box.minX) & ~3; x <= Location.locToBlock(box.maxX); x += 4) {
+                    for (int z = Location.locToBlock(box.minZ) & ~3; z <= Location.locToBlock(box.maxZ); z += 4) {
+                        for (int y = minY & ~3; y <= maxY; y += 4) {
+                            Biome biome = BeastMaster.BIOMES.getCachedBiome(world, x, y, z);
+                            if (biome == null) {
+                                return Tristate.MAYBE;
+                            }
+                            if (biomes.contains(biome)) {
+                                anyIn = true;
+                            } else {
+                                anyOut = true;
+                            }
+                            if (anyIn && anyOut) {
+                                return Tristate.MAYBE;
+                            }
+                        }
+                    }
                 }
+                return Tristate.of(anyIn);
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
-                return loc.getBlock().getBiome() == args.get(0);
+            public Box getExtent(List<Object> args) {
+                return Box.EVERYWHERE;
             }
         }),
 
     CIRCLE(
         "Location is within radius blocks of (x,z).",
         new ZonePredicateParameters("x", Double.class, "z", Double.class, "radius", Double.class),
+        3,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
@@ -54,19 +96,104 @@ public enum ZonePredicate {
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
-                double x = (Double) args.get(0);
-                double z = (Double) args.get(1);
+            public CompiledExpression compile(List<Object> args) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double radius = (Double) args.get(2);
+                return new BatchKernels.Annulus(cx, cz, 0, radius * radius);
+            }
+
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double radius = (Double) args.get(2);
+                double radiusSquared = radius * radius;
+                if (box.minDistanceSquared(cx, cz) > radiusSquared) {
+                    return Tristate.FALSE;
+                }
+                return (box.maxDistanceSquared(cx, cz) <= radiusSquared) ? Tristate.TRUE : Tristate.MAYBE;
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
                 double radius = (Double) args.get(2);
-                double dx = loc.getX() - x;
-                double dz = loc.getZ() - z;
-                return dx * dx + dz * dz <= radius * radius;
+                return extentXZ(cx - radius, cz - radius, cx + radius, cz + radius);
+            }
+        }),
+
+    DEPTH(
+        "Location is between min and max blocks below the surface (the highest solid block).",
+        new ZonePredicateParameters("min", Double.class, "max", Double.class),
+        5,
+        new IZonePredicate() {
+            @Override
+            public void validateArgs(List<Token> argTokens, List<Object> args) {
+                double min = (Double) args.get(0);
+                double max = (Double) args.get(1);
+                if (max < min) {
+                    throw new ParseError("the maximum depth must be greater than or equal to the minimum depth",
+                        argTokens.get(1));
+                }
+            }
+
+            @Override
+            public CompiledExpression compile(List<Object> args) {
+                double min = (Double) args.get(0);
+                double max = (Double) args.get(1);
+                return (w, x, y, z) -> {
+                    int surface = BeastMaster.HEIGHTS.getSurface(w, Location.locToBlock(x), Location.locToBlock(z));
+                    if (surface == HeightCache.UNCACHED) {
+                        return false;
+                    }
+                    int depth = surface - Location.locToBlock(y);
+                    return min <= depth && depth <= max;
+                };
+            }
+
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                // Only analyse boxes of modest size, in loaded chunks.
+                if (world == null || !box.isBoundedXZ() ||
+                    box.maxX - box.minX > 64 || box.maxZ - box.minZ > 64) {
+                    return Tristate.MAYBE;
+                }
+
+                int minSurface = Integer.MAX_VALUE;
+                int maxSurface = Integer.MIN_VALUE;
+                for (int x = Location.locToBlock(box.minX); x <= Location.locToBlock(box.maxX); ++x) {
+                    for (int z = Location.locToBlock(box.minZ); z <= Location.locToBlock(box.maxZ); ++z) {
+                        int surface = BeastMaster.HEIGHTS.getCachedSurface(world, x, z);
+                        if (surface == HeightCache.UNCACHED) {
+                            return Tristate.MAYBE;
+                        }
+                        minSurface = Math.min(minSurface, surface);
+                        maxSurface = Math.max(maxSurface, surface);
+                    }
+                }
+
+                double min = (Double) args.get(0);
+                double max = (Double) args.get(1);
+                double minDepth = minSurface - Math.floor(box.maxY);
+                double maxDepth = maxSurface - Math.floor(box.minY);
+                if (maxDepth < min || minDepth > max) {
+                    return Tristate.FALSE;
+                }
+                return (min <= minDepth && maxDepth <= max) ? Tristate.TRUE : Tristate.MAYBE;
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                return Box.EVERYWHERE;
             }
         }),
 
     DONUT(
         "Location is between min and max blocks of (x,z).",
         new ZonePredicateParameters("x", Double.class, "z", Double.class, "min", Double.class, "max", Double.class),
+        3,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
@@ -81,39 +208,78 @@ public enum ZonePredicate {
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
-                double x = (Double) args.get(0);
-                double z = (Double) args.get(1);
+            public CompiledExpression compile(List<Object> args) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double min = (Double) args.get(2);
+                double max = (Double) args.get(3);
+                return new BatchKernels.Annulus(cx, cz, min * min, max * max);
+            }
+
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
                 double min = (Double) args.get(2);
                 double max = (Double) args.get(3);
-                double dx = loc.getX() - x;
-                double dz = loc.getZ() - z;
-                double distSquared = dx * dx + dz * dz;
-                return distSquared >= min * min && distSquared <= max * max;
+                double nearest = box.minDistanceSquared(cx, cz);
+                double farthest = box.maxDistanceSquared(cx, cz);
+                if (nearest > max * max || farthest < min * min) {
+                    return Tristate.FALSE;
+                }
+                return (nearest >= min * min && farthest <= max * max) ? Tristate.TRUE : Tristate.MAYBE;
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double max = (Double) args.get(3);
+                return extentXZ(cx - max, cz - max, cx + max, cz + max);
             }
         }),
 
     RECT(
         "Location is within the rectangle (x1,z1) to (x2,z2).",
         new ZonePredicateParameters("x1", Double.class, "z1", Double.class, "x2", Double.class, "z2", Double.class),
+        2,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
+            public CompiledExpression compile(List<Object> args) {
+                double x1 = (Double) args.get(0);
+                double z1 = (Double) args.get(1);
+                double x2 = (Double) args.get(2);
+                double z2 = (Double) args.get(3);
+                return new BatchKernels.Rect(Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2));
+            }
+
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                double x1 = (Double) args.get(0);
+                double z1 = (Double) args.get(1);
+                double x2 = (Double) args.get(2);
+                double z2 = (Double) args.get(3);
+                return evaluateRect(box, Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2));
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
                 double x1 = (Double) args.get(0);
                 double z1 = (Double) args.get(1);
                 double x2 = (Double) args.get(2);
                 double z2 = (Double) args.get(3);
-                return Util.inRect(loc.getX(), loc.getZ(), x1, z1, x2, z2);
+                return extentXZ(Math.min(x1, x2), Math.min(z1, z2), Math.max(x1, x2), Math.max(z1, z2));
             }
         }),
 
     SQUARE(
         "Location is within the square of specified side length centred on (x,z).",
         new ZonePredicateParameters("x", Double.class, "z", Double.class, "side", Double.class),
+        2,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
@@ -124,50 +290,63 @@ public enum ZonePredicate {
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
-                double x = (Double) args.get(0);
-                double z = (Double) args.get(1);
-                double side = (Double) args.get(2);
-                double r = side / 2;
-                return Util.inRect(loc.getX(), loc.getZ(), x - r, z - r, x + r, z + r);
+            public CompiledExpression compile(List<Object> args) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double r = (Double) args.get(2) / 2;
+                return new BatchKernels.Rect(cx - r, cz - r, cx + r, cz + r);
+            }
+
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double r = (Double) args.get(2) / 2;
+                return evaluateRect(box, cx - r, cz - r, cx + r, cz + r);
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                double cx = (Double) args.get(0);
+                double cz = (Double) args.get(1);
+                double r = (Double) args.get(2) / 2;
+                return extentXZ(cx - r, cz - r, cx + r, cz + r);
             }
         }),
 
     WG(
         "Location is within the WorldGuard region of the specified name, or \"*\" to match any region.",
         new ZonePredicateParameters("name", String.class),
+        20,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
-                RegionContainer container = WorldGuard.getInstance().getPlatform().getRegionContainer();
-                RegionManager regionManager = container.get(BukkitAdapter.adapt(loc.getWorld()));
-                if (regionManager != null) {
-                    com.sk89q.worldedit.util.Location weLoc = BukkitAdapter.adapt(loc);
-                    // applicableRegions does NOT include the global region.
-                    ApplicableRegionSet applicableRegions = regionManager.getApplicableRegions(weLoc.toVector().toBlockPoint());
-                    String name = (String) args.get(0);
-                    if (name.equals("*") && applicableRegions.size() != 0) {
-                        // Any (non-global) region will do.
-                        return true;
-                    }
+            public CompiledExpression compile(List<Object> args) {
+                // Intern the region name once, here, rather than comparing
+                // strings on every evaluation.
+                int id = getRegionId(args);
+                return (w, x, y, z) -> BeastMaster.REGIONS.contains(w, id, Location.locToBlock(x),
+                                                                    Location.locToBlock(y), Location.locToBlock(z));
+            }
 
-                    for (ProtectedRegion region : applicableRegions) {
-                        if (name.equals(region.getId())) {
-                            return true;
-                        }
-                    }
-                }
-                return false;
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                return (world == null) ? Tristate.MAYBE : BeastMaster.REGIONS.evaluate(world, getRegionId(args), box);
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                return Box.EVERYWHERE;
             }
         }),
 
     Y(
         "Location Y coordinate is within the range [min,max].",
         new ZonePredicateParameters("min", Double.class, "max", Double.class),
+        1,
         new IZonePredicate() {
             @Override
             public void validateArgs(List<Token> argTokens, List<Object> args) {
@@ -182,28 +361,59 @@ public enum ZonePredicate {
             }
 
             @Override
-            public boolean matches(Location loc, List<Object> args) {
+            public CompiledExpression compile(List<Object> args) {
                 double min = (Double) args.get(0);
                 double max = (Double) args.get(1);
-                return min <= loc.getY() && loc.getY() <= max;
+                return new BatchKernels.YRange(min, max);
             }
-        })
 
-    // TODO: Implement this predicate: need to guard against infinite (direct or
-    // indirect) recursion.
-//    ,ZONE("Location is within the zone of the specified name.",
-//        new ZonePredicateParameters("name", String.class),
-//        new IZonePredicate() {
-//            @Override
-//            public void validateArgs(List<Token> argTokens, List<Object> args) {
-//            }
-//
-//            @Override
-//            public boolean matches(Location loc, List<Object> args) {
-//                return false;
-//            }
-//        })
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                double min = (Double) args.get(0);
+                double max = (Double) args.get(1);
+                if (box.maxY < min || box.minY > max) {
+                    return Tristate.FALSE;
+                }
+                return (min <= box.minY && box.maxY <= max) ? Tristate.TRUE : Tristate.MAYBE;
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                double min = (Double) args.get(0);
+                double max = (Double) args.get(1);
+                return new Box(Double.NEGATIVE_INFINITY, min, Double.NEGATIVE_INFINITY,
+                               Double.POSITIVE_INFINITY, max, Double.POSITIVE_INFINITY);
+            }
+        }),
+
+    ZONE(
+        "Location is within the zone of the specified name.",
+        new ZonePredicateParameters("name", String.class),
+        20,
+        new IZonePredicate() {
+            @Override
+            public void validateArgs(List<Token> argTokens, List<Object> args) {
+                // The zone need not exist yet: references are resolved, and
+                // checked for cycles, by the ZoneManager.
+                args.set(0, BeastMaster.ZONES.getReference((String) args.get(0)));
+            }
+
+            @Override
+            public CompiledExpression compile(List<Object> args) {
+                ZoneReference reference = (ZoneReference) args.get(0);
+                return reference::test;
+            }
 
+            @Override
+            public Tristate evaluate(World world, List<Object> args, Box box) {
+                return Tristate.MAYBE;
+            }
+
+            @Override
+            public Box getExtent(List<Object> args) {
+                return Box.EVERYWHERE;
+            }
+        })
     ;
 
     // ------------------------------------------------------------------------
@@ -243,6 +453,37 @@ public enum ZonePredicate {
         return _parameters;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the estimated relative cost of evaluating this predicate at one
+     * location.
+     *
+     * Pure coordinate tests cost a few units; predicates that look up world
+     * or plugin data, such as biomes and WorldGuard regions, cost more. The
+     * {@link ExpressionCompiler} uses this to evaluate cheap operands of '&'
+     * and '|' first.
+     *
+     * @return the estimated cost.
+     */
+    public double getCost() {
+        return _cost;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the value of this predicate depends on World data that
+     * can change, such as biomes or WorldGuard regions, or on other Zones,
+     * rather than only on coordinates.
+     *
+     * Zone hierarchies that use such predicates cannot be baked into tiles by
+     * the {@link ZoneBaker}.
+     *
+     * @return true if the predicate depends on World data.
+     */
+    public boolean dependsOnWorld() {
+        return this == BIOME || this == DEPTH || this == WG || this == ZONE;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Validate at compile time that the arguments to a zone predicate conform
@@ -259,14 +500,141 @@ public enum ZonePredicate {
 
     // ------------------------------------------------------------------------
     /**
-     * Evaluate the predicate at the specified location.
+     * Compile the predicate with the specified arguments.
+     *
+     * @param args the predicate arguments.
+     * @return the compiled predicate.
+     */
+    public CompiledExpression compile(List<Object> args) {
+        return _zonePredicate.compile(args);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value of the predicate over the whole of the specified Box.
+     *
+     * @param world the World containing the Box, or null if not known.
+     * @param args  the predicate arguments.
+     * @param box   the Box.
+     * @return TRUE or FALSE if the predicate has that value everywhere in the
+     *         box, or MAYBE.
+     */
+    public Tristate evaluate(World world, List<Object> args, Box box) {
+        return _zonePredicate.evaluate(world, args, box);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a Box containing every point where the predicate could be true.
+     *
+     * @param args the predicate arguments.
+     * @return the extent of the predicate.
+     */
+    public Box getExtent(List<Object> args) {
+        return _zonePredicate.getExtent(args);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate the predicate at many points.
+     *
+     * @param world  the World containing the points.
+     * @param args   the predicate arguments.
+     * @param xs     the X coordinates.
+     * @param ys     the Y coordinates.
+     * @param zs     the Z coordinates.
+     * @param count  the number of points.
+     * @param result the bitset of results; see
+     *               {@link CompiledExpression#testBatch(World, double[],
+     *               double[], double[], int, long[])}.
+     */
+    public void testBatch(World world, List<Object> args, double[] xs, double[] ys, double[] zs, int count,
+                          long[] result) {
+        compile(args).testBatch(world, xs, ys, zs, count, result);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluate the predicate at the specified location, as a batch of one
+     * point.
+     *
+     * This is only used by the {@link EvalExpressionVisitor} when tracing;
+     * Zones evaluate their {@link CompiledExpression}.
      *
      * @param loc  the Location.
      * @param args the predicate arguments.
      * @return true if the predicate matches.
      */
     public boolean matches(Location loc, List<Object> args) {
-        return _zonePredicate.matches(loc, args);
+        long[] result = new long[1];
+        testBatch(loc.getWorld(), args, new double[] { loc.getX() }, new double[] { loc.getY() },
+                  new double[] { loc.getZ() }, 1, result);
+        return result[0] != 0;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value of a rectangle test over the horizontal extent of a
+     * Box.
+     *
+     * @param box  the Box.
+     * @param minX the minimum X coordinate of the rectangle.
+     * @param minZ the minimum Z coordinate of the rectangle.
+     * @param maxX the maximum X coordinate of the rectangle.
+     * @param maxZ the maximum Z coordinate of the rectangle.
+     * @return TRUE if the box is inside the rectangle, FALSE if it is
+     *         outside, otherwise MAYBE.
+     */
+    static Tristate evaluateRect(Box box, double minX, double minZ, double maxX, double maxZ) {
+        if (box.maxX < minX || box.minX > maxX || box.maxZ < minZ || box.minZ > maxZ) {
+            return Tristate.FALSE;
+        }
+        boolean inside = minX <= box.minX && box.maxX <= maxX && minZ <= box.minZ && box.maxZ <= maxZ;
+        return inside ? Tristate.TRUE : Tristate.MAYBE;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the set of Biomes in the arguments of the BIOME predicate.
+     *
+     * @param args the validated arguments.
+     * @return the set of Biomes.
+     */
+    static EnumSet<Biome> getBiomes(List<Object> args) {
+        EnumSet<Biome> biomes = EnumSet.noneOf(Biome.class);
+        for (Object arg : args) {
+            biomes.add((Biome) arg);
+        }
+        return biomes;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the interned region ID of the argument of the WG predicate.
+     *
+     * The argument itself remains the region name, so that the predicate is
+     * still shown as written.
+     *
+     * @param args the validated arguments.
+     * @return the interned ID, or {@link RegionCache#ANY_REGION} for "*".
+     */
+    static int getRegionId(List<Object> args) {
+        String name = (String) args.get(0);
+        return name.equals("*") ? RegionCache.ANY_REGION : BeastMaster.REGIONS.intern(name);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a Box with the specified horizontal extent and unlimited height.
+     *
+     * @param minX the minimum X coordinate.
+     * @param minZ the minimum Z coordinate.
+     * @param maxX the maximum X coordinate.
+     * @param maxZ the maximum Z coordinate.
+     * @return the Box.
+     */
+    static Box extentXZ(double minX, double minZ, double maxX, double maxZ) {
+        return new Box(minX, Double.NEGATIVE_INFINITY, minZ, maxX, Double.POSITIVE_INFINITY, maxZ);
     }
 
     // ------------------------------------------------------------------------
@@ -275,11 +643,14 @@ public enum ZonePredicate {
      *
      * @param help       help text describing the predicate.
      * @param parameters describes the formal paramters of the predicate.
-     * @param evaluate   evaluates the predicate.
+     * @param cost       the estimated relative cost of evaluating the
+     *                   predicate at one location.
+     * @param evaluate   compiles the predicate.
      */
-    ZonePredicate(String help, ZonePredicateParameters parameters, IZonePredicate zonePredicate) {
+    ZonePredicate(String help, ZonePredicateParameters parameters, double cost, IZonePredicate zonePredicate) {
         _help = help;
         _parameters = parameters;
+        _cost = cost;
         _zonePredicate = zonePredicate;
     }
 
@@ -295,7 +666,12 @@ public enum ZonePredicate {
     protected ZonePredicateParameters _parameters;
 
     /**
-     * Validates constraints and evaluates the predicate.
+     * The estimated relative cost of evaluating the predicate at one location.
+     */
+    protected double _cost;
+
+    /**
+     * Validates constraints and compiles the predicate.
      */
     protected IZonePredicate _zonePredicate;
 
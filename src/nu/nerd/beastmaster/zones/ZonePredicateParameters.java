@@ -18,7 +18,9 @@ public class ZonePredicateParameters {
      *
      * @param parameters the parameter list as name1, type1, name2, type2, etc.
      *                   where names are strings and types are either
-     *                   String.class or Double.class.
+     *                   String.class or Double.class. If the last name ends
+     *                   in "...", that parameter can be repeated one or more
+     *                   times.
      */
     public ZonePredicateParameters(Object... parameters) {
         if (parameters.length % 2 != 0) {
@@ -42,6 +44,16 @@ public class ZonePredicateParameters {
         return _names.size();
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the last parameter can be repeated.
+     *
+     * @return true if the last parameter can be repeated.
+     */
+    public boolean isVariadic() {
+        return !_names.isEmpty() && _names.get(_names.size() - 1).endsWith("...");
+    }
+
     // ------------------------------------------------------------------------
     /**
      * Verify that the types of the arguments to a predicate are as expected.
@@ -51,7 +63,7 @@ public class ZonePredicateParameters {
      */
     public void validateTypes(List<Token> argTokens) {
         for (int i = 0; i < argTokens.size(); ++i) {
-            Class<?> expectedType = _types.get(i);
+            Class<?> expectedType = _types.get(Math.min(i, _types.size() - 1));
             Token token = argTokens.get(i);
             Object value = token.getValue();
             if (!expectedType.isInstance(value)) {
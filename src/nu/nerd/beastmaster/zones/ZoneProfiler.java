@@ -0,0 +1,346 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.World;
+
+// ----------------------------------------------------------------------------
+/**
+ * Opt-in profiler of Zone Specification evaluation.
+ *
+ * Every Zone's compiled specification, and every compiled predicate, is
+ * wrapped in a {@link Profiled} expression that, while profiling is enabled,
+ * counts evaluations, true results and elapsed nanoseconds in a
+ * {@link Profile}. Zones are profiled by ID and predicates by their formatted
+ * text, so that a predicate shared by several Zones (see
+ * {@link SharedExpressions}) has one Profile. While profiling is disabled,
+ * the overhead is one volatile read per evaluation.
+ *
+ * Counters are LongAdders, so that concurrent evaluations don't contend.
+ * Measured costs are also used by {@link AdaptiveJunction} to order operands
+ * in place of the static cost estimates; operands that are operators, such as
+ * a nested '&' or '|', are given an aggregate Profile of their own for that
+ * purpose (see {@link #profileOperand(String, CompiledExpression)}).
+ */
+public class ZoneProfiler {
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if profiling is enabled.
+     *
+     * @return true if profiling is enabled.
+     */
+    public static boolean isEnabled() {
+        return _enabled;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Enable or disable profiling.
+     *
+     * Counts are kept when profiling is disabled.
+     *
+     * @param enabled true to enable profiling.
+     */
+    public static void setEnabled(boolean enabled) {
+        _enabled = enabled;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Reset all counts to zero.
+     */
+    public static void reset() {
+        _zones.values().forEach(Profile::reset);
+        _predicates.values().forEach(Profile::reset);
+        _operands.values().forEach(Profile::reset);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Wrap a Zone's compiled specification so that it is profiled.
+     *
+     * @param zoneId     the Zone's ID.
+     * @param expression the compiled specification.
+     * @return the profiled CompiledExpression.
+     */
+    public static CompiledExpression profileZone(String zoneId, CompiledExpression expression) {
+        Profile profile = _zones.computeIfAbsent(zoneId.toLowerCase(), k -> new Profile(zoneId));
+        return new Profiled(profile, expression);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Wrap a compiled predicate so that it is profiled.
+     *
+     * @param text       the formatted predicate.
+     * @param expression the compiled predicate.
+     * @return the profiled CompiledExpression.
+     */
+    public static CompiledExpression profilePredicate(String text, CompiledExpression expression) {
+        Profile profile = _predicates.computeIfAbsent(text, k -> new Profile(text));
+        return new Profiled(profile, expression);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Ensure that an operand of an {@link AdaptiveJunction} has a Profile.
+     *
+     * Predicates are already profiled. Other operands, such as nested
+     * junctions, are wrapped so that their Profile aggregates the time spent
+     * evaluating all of their own operands. These Profiles are not listed by
+     * {@link #getPredicateProfiles()}, since the predicates they contain are.
+     *
+     * @param text    the formatted operand.
+     * @param operand the compiled operand.
+     * @return the operand, if it is already profiled, or a profiled wrapper.
+     */
+    public static CompiledExpression profileOperand(String text, CompiledExpression operand) {
+        if (operand.getProfile() != null) {
+            return operand;
+        }
+        Profile profile = _operands.computeIfAbsent(text, k -> new Profile(text));
+        return new Profiled(profile, operand);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Profiles of all Zones that have been evaluated, in
+     * descending order of total time.
+     *
+     * @return the Profiles of Zones.
+     */
+    public static List<Profile> getZoneProfiles() {
+        return sorted(_zones);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the Profiles of all predicates that have been evaluated, in
+     * descending order of total time.
+     *
+     * @return the Profiles of predicates.
+     */
+    public static List<Profile> getPredicateProfiles() {
+        return sorted(_predicates);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the evaluated Profiles in a map, in descending order of total
+     * time.
+     *
+     * @param profiles the map of Profiles.
+     * @return the sorted Profiles.
+     */
+    protected static List<Profile> sorted(ConcurrentHashMap<String, Profile> profiles) {
+        List<Profile> result = new ArrayList<>();
+        for (Profile profile : profiles.values()) {
+            if (profile.getEvaluations() != 0) {
+                result.add(profile);
+            }
+        }
+        result.sort(Comparator.comparingLong(Profile::getNanos).reversed());
+        return result;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Evaluation counts of one Zone or predicate.
+     */
+    public static final class Profile {
+        /**
+         * Constructor.
+         *
+         * @param name the Zone ID or formatted predicate.
+         */
+        Profile(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Return the Zone ID or formatted predicate.
+         *
+         * @return the name.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Return the number of evaluations.
+         *
+         * @return the number of evaluations.
+         */
+        public long getEvaluations() {
+            return evaluations.sum();
+        }
+
+        /**
+         * Return the number of evaluations that were true.
+         *
+         * @return the number of true results.
+         */
+        public long getTrues() {
+            return trues.sum();
+        }
+
+        /**
+         * Return the total time spent evaluating.
+         *
+         * @return the total time in nanoseconds.
+         */
+        public long getNanos() {
+            return nanos.sum();
+        }
+
+        /**
+         * Return the mean time per evaluation.
+         *
+         * @return the mean time in nanoseconds, or NaN if there have been no
+         *         evaluations.
+         */
+        public double getMeanNanos() {
+            long count = getEvaluations();
+            return (count != 0) ? (double) getNanos() / count : Double.NaN;
+        }
+
+        /**
+         * Record evaluations.
+         *
+         * @param count     the number of evaluations.
+         * @param trueCount the number of true results.
+         * @param elapsed   the elapsed nanoseconds.
+         */
+        void record(int count, int trueCount, long elapsed) {
+            evaluations.add(count);
+            trues.add(trueCount);
+            nanos.add(elapsed);
+        }
+
+        /**
+         * Reset the counts to zero.
+         */
+        void reset() {
+            evaluations.reset();
+            trues.reset();
+            nanos.reset();
+        }
+
+        /**
+         * The Zone ID or formatted predicate.
+         */
+        final String name;
+
+        /**
+         * The number of evaluations.
+         */
+        final LongAdder evaluations = new LongAdder();
+
+        /**
+         * The number of true results.
+         */
+        final LongAdder trues = new LongAdder();
+
+        /**
+         * The total elapsed nanoseconds.
+         */
+        final LongAdder nanos = new LongAdder();
+    } // class Profile
+
+    // ------------------------------------------------------------------------
+    /**
+     * A CompiledExpression that records its evaluations in a Profile while
+     * profiling is enabled.
+     */
+    protected static final class Profiled implements CompiledExpression {
+        /**
+         * Constructor.
+         *
+         * @param profile    the Profile.
+         * @param expression the profiled expression.
+         */
+        Profiled(Profile profile, CompiledExpression expression) {
+            this.profile = profile;
+            this.expression = expression;
+        }
+
+        /**
+         * @see nu.nerd.beastmaster.zones.CompiledExpression#test(org.bukkit.World,
+         *      double, double, double)
+         */
+        @Override
+        public boolean test(World world, double x, double y, double z) {
+            if (!_enabled) {
+                return expression.test(world, x, y, z);
+            }
+            long start = System.nanoTime();
+            boolean result = expression.test(world, x, y, z);
+            profile.record(1, result ? 1 : 0, System.nanoTime() - start);
+            return result;
+        }
+
+        /**
+         * @see nu.nerd.beastmaster.zones.CompiledExpression#testBatch(org.bukkit.World,
+         *      double[], double[], double[], int, long[])
+         */
+        @Override
+        public void testBatch(World world, double[] xs, double[] ys, double[] zs, int count, long[] result) {
+            if (!_enabled) {
+                expression.testBatch(world, xs, ys, zs, count, result);
+                return;
+            }
+            long start = System.nanoTime();
+            expression.testBatch(world, xs, ys, zs, count, result);
+            long elapsed = System.nanoTime() - start;
+            int trueCount = 0;
+            for (int w = 0; w < BatchKernels.words(count); ++w) {
+                trueCount += Long.bitCount(result[w]);
+            }
+            profile.record(count, trueCount, elapsed);
+        }
+
+        /**
+         * @see nu.nerd.beastmaster.zones.CompiledExpression#getProfile()
+         */
+        @Override
+        public Profile getProfile() {
+            return profile;
+        }
+
+        /**
+         * The Profile.
+         */
+        final Profile profile;
+
+        /**
+         * The profiled expression.
+         */
+        final CompiledExpression expression;
+    } // class Profiled
+
+    // ------------------------------------------------------------------------
+    /**
+     * True if profiling is enabled.
+     */
+    protected static volatile boolean _enabled;
+
+    /**
+     * Map from lower case Zone ID to Profile.
+     */
+    protected static final ConcurrentHashMap<String, Profile> _zones = new ConcurrentHashMap<>();
+
+    /**
+     * Map from formatted predicate to Profile.
+     */
+    protected static final ConcurrentHashMap<String, Profile> _predicates = new ConcurrentHashMap<>();
+
+    /**
+     * Map from formatted operator operand of an AdaptiveJunction to aggregate
+     * Profile.
+     */
+    protected static final ConcurrentHashMap<String, Profile> _operands = new ConcurrentHashMap<>();
+} // class ZoneProfiler
\ No newline at end of file
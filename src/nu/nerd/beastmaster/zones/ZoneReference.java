@@ -0,0 +1,77 @@
+package nu.nerd.beastmaster.zones;
+
+import org.bukkit.World;
+
+// ----------------------------------------------------------------------------
+/**
+ * A reference to a Zone by name, as used by the zone() Zone Specification
+ * predicate.
+ *
+ * References are resolved by the {@link ZoneManager} whenever Zones change,
+ * rather than when specifications are parsed, because a specification may
+ * refer to a Zone that is loaded or created later. A reference is true where
+ * the Zone's specification and those of all its ancestors are true, in the
+ * Zone's World. References to Zones that don't exist, or that are part of a
+ * cycle of references, are false everywhere.
+ */
+public class ZoneReference {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param name the case-insensitive name of the Zone.
+     */
+    public ZoneReference(String name) {
+        _name = name;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the name of the referenced Zone.
+     *
+     * @return the name of the referenced Zone.
+     */
+    public String getName() {
+        return _name;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the referenced Zone contains the specified coordinates.
+     *
+     * @param world the World.
+     * @param x     the X coordinate.
+     * @param y     the Y coordinate.
+     * @param z     the Z coordinate.
+     * @return true if the referenced Zone contains the coordinates.
+     */
+    public boolean test(World world, double x, double y, double z) {
+        return _expression.test(world, x, y, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Set the CompiledExpression that tests the referenced Zone.
+     *
+     * @param expression the CompiledExpression.
+     */
+    void setExpression(CompiledExpression expression) {
+        _expression = expression;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * A CompiledExpression that is false everywhere.
+     */
+    static final CompiledExpression NOWHERE = (w, x, y, z) -> false;
+
+    /**
+     * The name of the referenced Zone.
+     */
+    protected final String _name;
+
+    /**
+     * Tests the referenced Zone.
+     */
+    protected volatile CompiledExpression _expression = NOWHERE;
+} // class ZoneReference
\ No newline at end of file
@@ -0,0 +1,719 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bukkit.World;
+
+import nu.nerd.beastmaster.zones.nodes.PredicateExpression;
+
+// ----------------------------------------------------------------------------
+/**
+ * An immutable view of the Zone hierarchy of every loaded World, used to
+ * answer "which Zone is here?" from any thread.
+ *
+ * A snapshot captures, for each Zone, its compiled and simplified Zone
+ * Specification, its extent and its children, and builds the
+ * {@link ZoneIndex} of each large list of children up front. Subsequent edits
+ * to Zones do not affect an existing snapshot; instead the
+ * {@link ZoneManager} builds a new snapshot and publishes it through a
+ * volatile reference.
+ *
+ * Each snapshot also owns a cache of lookup results per 16x16x16 chunk
+ * section. The cache is a fixed-size, direct-mapped table per World whose
+ * entries are immutable, so it needs no locking: concurrent lookups may
+ * overwrite each other's entries, which only costs a recomputation. Lookups
+ * that hit the cache do not allocate.
+ */
+public class ZoneSnapshot {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param roots       the root Zones. Roots of Worlds that are not loaded
+     *                    are omitted.
+     * @param cacheHits   counts lookups answered from the section cache.
+     * @param cacheMisses counts lookups that evaluated Zone Specifications.
+     */
+    public ZoneSnapshot(Collection<Zone> roots, LongAdder cacheHits, LongAdder cacheMisses) {
+        for (Zone root : roots) {
+            World world = root.getWorld();
+            if (world != null) {
+                _worlds.put(world.getUID(), new WorldZones(world, new Node(root)));
+            }
+        }
+        _cacheHits = cacheHits;
+        _cacheMisses = cacheMisses;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most specific Zone at the specified block coordinates.
+     *
+     * Zone Specifications are evaluated at the minimum corner of the block.
+     *
+     * @param worldId the UUID of the World.
+     * @param x       the block X coordinate.
+     * @param y       the block Y coordinate.
+     * @param z       the block Z coordinate.
+     * @return the Zone, or null if the World has no root Zone in this
+     *         snapshot.
+     */
+    public Zone getZone(UUID worldId, int x, int y, int z) {
+        WorldZones worldZones = _worlds.get(worldId);
+        return (worldZones != null) ? getZone(worldZones, x, y, z, x, y, z) : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most specific Zone at the specified coordinates.
+     *
+     * @param world the World.
+     * @param x     the X coordinate.
+     * @param y     the Y coordinate.
+     * @param z     the Z coordinate.
+     * @return the Zone, or null if the World has no root Zone in this
+     *         snapshot.
+     */
+    public Zone getZone(World world, double x, double y, double z) {
+        WorldZones worldZones = _worlds.get(world.getUID());
+        if (worldZones == null) {
+            return null;
+        }
+        return getZone(worldZones, floor(x), floor(y), floor(z), x, y, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Look up the most specific Zones of many blocks in one World.
+     *
+     * The blocks are grouped by chunk section, so that each section is looked
+     * up in the section cache (and resolved, if necessary) once, and every
+     * block in a section that lies wholly within one Zone gets that Zone
+     * without further work. Blocks in sections that straddle a zone boundary,
+     * or outside the cached height range, are evaluated individually.
+     *
+     * @param worldId the UUID of the World.
+     * @param blocks  the block coordinates, packed by
+     *                {@link ZoneManager#packBlock(int, int, int)}.
+     * @param result  receives the Zone of each block; only null entries are
+     *                looked up. Must be at least as long as blocks.
+     * @return false if the World has no root Zone in this snapshot, in which
+     *         case result is unchanged.
+     */
+    public boolean getZones(UUID worldId, long[] blocks, Zone[] result) {
+        WorldZones worldZones = _worlds.get(worldId);
+        if (worldZones == null) {
+            return false;
+        }
+
+        // Assign each block to a group by section, with a small open
+        // addressing table from section key to group, then order the blocks
+        // by group with a counting sort.
+        int count = blocks.length;
+        int tableSize = Integer.highestOneBit(Math.max(1, count) * 2 - 1) << 1;
+        long[] tableKeys = new long[tableSize];
+        int[] tableGroups = new int[tableSize];
+        Arrays.fill(tableGroups, -1);
+        int[] groupOf = new int[count];
+        int[] groupSizes = new int[count + 1];
+        long[] groupKeys = new long[count];
+        int groups = 0;
+        for (int i = 0; i < count; ++i) {
+            if (result[i] != null) {
+                groupOf[i] = -1;
+                continue;
+            }
+            long key = sectionKey(blocks[i]);
+            int hash = (int) (key ^ (key >>> 32)) * 0x9E3779B1;
+            int slot = (hash ^ (hash >>> 16)) & (tableSize - 1);
+            while (tableGroups[slot] >= 0 && tableKeys[slot] != key) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            if (tableGroups[slot] < 0) {
+                tableKeys[slot] = key;
+                tableGroups[slot] = groups;
+                groupKeys[groups++] = key;
+            }
+            groupOf[i] = tableGroups[slot];
+            ++groupSizes[groupOf[i] + 1];
+        }
+        for (int g = 0; g < groups; ++g) {
+            groupSizes[g + 1] += groupSizes[g];
+        }
+        int[] order = new int[groupSizes[groups]];
+        int[] next = Arrays.copyOf(groupSizes, groups);
+        for (int i = 0; i < count; ++i) {
+            if (groupOf[i] >= 0) {
+                order[next[groupOf[i]]++] = i;
+            }
+        }
+
+        for (int g = 0; g < groups; ++g) {
+            int start = groupSizes[g];
+            int end = groupSizes[g + 1];
+            Zone sectionZone = null;
+            long packed = blocks[order[start]];
+            int y = ZoneManager.unpackY(packed);
+            if (y >= 0 && y < CACHE_HEIGHT) {
+                int chunkX = ZoneManager.unpackX(packed) >> 4;
+                int chunkZ = ZoneManager.unpackZ(packed) >> 4;
+                int band = y >> 4;
+                int slot = slot(chunkX, band, chunkZ);
+                Section section = worldZones.sections[slot];
+                if (section != null && section.matches(chunkX, band, chunkZ)) {
+                    sectionZone = section.zone;
+                    if (sectionZone != null) {
+                        _cacheHits.add(end - start);
+                    }
+                } else {
+                    sectionZone = resolveSection(worldZones.world, worldZones.root,
+                                                 Box.ofChunkSection(chunkX, band, chunkZ));
+                    worldZones.sections[slot] = new Section(chunkX, band, chunkZ, sectionZone);
+                    if (sectionZone != null) {
+                        _cacheMisses.increment();
+                        _cacheHits.add(end - start - 1);
+                    }
+                }
+            }
+
+            if (sectionZone != null) {
+                for (int i = start; i < end; ++i) {
+                    result[order[i]] = sectionZone;
+                }
+            } else {
+                _cacheMisses.add(end - start);
+                for (int i = start; i < end; ++i) {
+                    long block = blocks[order[i]];
+                    result[order[i]] = findZone(worldZones, ZoneManager.unpackX(block),
+                                                ZoneManager.unpackY(block), ZoneManager.unpackZ(block));
+                }
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if any Zone Specification in a World uses the DEPTH
+     * predicate, so that the surface heights of its chunks must be cached.
+     *
+     * @param worldId the UUID of the World.
+     * @return true if DEPTH is used in the World.
+     */
+    public boolean usesDepth(UUID worldId) {
+        WorldZones worldZones = _worlds.get(worldId);
+        return worldZones != null && worldZones.usesDepth;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard cached lookup results for a chunk, when it is unloaded.
+     *
+     * @param worldId the UUID of the World.
+     * @param chunkX  the chunk X coordinate.
+     * @param chunkZ  the chunk Z coordinate.
+     */
+    public void evictChunk(UUID worldId, int chunkX, int chunkZ) {
+        WorldZones worldZones = _worlds.get(worldId);
+        if (worldZones != null) {
+            for (int band = 0; band < CACHE_HEIGHT >> 4; ++band) {
+                int slot = slot(chunkX, band, chunkZ);
+                Section section = worldZones.sections[slot];
+                if (section != null && section.matches(chunkX, band, chunkZ)) {
+                    worldZones.sections[slot] = null;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Discard cached lookup results in a World that may have been decided by
+     * the WG predicate, when WorldGuard regions change.
+     *
+     * Only sections that intersect the extent of a Zone whose Zone
+     * Specification uses WG are discarded; elsewhere, region changes cannot
+     * affect the result.
+     *
+     * @param worldId the UUID of the World.
+     * @return true if any sections could depend on regions.
+     */
+    public boolean evictRegionSections(UUID worldId) {
+        WorldZones worldZones = _worlds.get(worldId);
+        if (worldZones == null || worldZones.regionExtents.length == 0) {
+            return false;
+        }
+
+        Section[] sections = worldZones.sections;
+        for (int slot = 0; slot < sections.length; ++slot) {
+            Section section = sections[slot];
+            if (section != null) {
+                Box box = Box.ofChunkSection(section.chunkX, section.band, section.chunkZ);
+                for (Box extent : worldZones.regionExtents) {
+                    if (!box.intersection(extent).isEmpty()) {
+                        sections[slot] = null;
+                        break;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most specific Zone at the specified coordinates, using the
+     * section cache if possible.
+     *
+     * @param worldZones the Zones of the World.
+     * @param blockX     the block X coordinate.
+     * @param blockY     the block Y coordinate.
+     * @param blockZ     the block Z coordinate.
+     * @param x          the X coordinate.
+     * @param y          the Y coordinate.
+     * @param z          the Z coordinate.
+     * @return the Zone, never null.
+     */
+    protected Zone getZone(WorldZones worldZones, int blockX, int blockY, int blockZ,
+                           double x, double y, double z) {
+        if (blockY < 0 || blockY >= CACHE_HEIGHT) {
+            return findZone(worldZones, x, y, z);
+        }
+
+        int chunkX = blockX >> 4;
+        int chunkZ = blockZ >> 4;
+        int band = blockY >> 4;
+        int slot = slot(chunkX, band, chunkZ);
+        Section section = worldZones.sections[slot];
+        if (section != null && section.matches(chunkX, band, chunkZ)) {
+            if (section.zone != null) {
+                _cacheHits.increment();
+                return section.zone;
+            }
+        } else {
+            Zone resolved = resolveSection(worldZones.world, worldZones.root, Box.ofChunkSection(chunkX, band, chunkZ));
+            worldZones.sections[slot] = new Section(chunkX, band, chunkZ, resolved);
+            if (resolved != null) {
+                _cacheMisses.increment();
+                return resolved;
+            }
+        }
+
+        _cacheMisses.increment();
+        return findZone(worldZones, x, y, z);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most specific Zone at the specified coordinates by
+     * evaluating Zone Specifications.
+     *
+     * @param worldZones the Zones of the World.
+     * @param x          the X coordinate.
+     * @param y          the Y coordinate.
+     * @param z          the Z coordinate.
+     * @return the Zone, never null.
+     */
+    protected Zone findZone(WorldZones worldZones, double x, double y, double z) {
+        SharedExpressions.beginLookup();
+        Node child = findChild(worldZones.root, worldZones.world, x, y, z);
+        return (child != null) ? child.zone : worldZones.root.zone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the deepest descendant of the first child of a Node that contains
+     * the specified coordinates, or null if no child contains them.
+     *
+     * When the parent has an index of its children, only the children whose
+     * extents contain the point are considered, still in the order of the
+     * list of children.
+     *
+     * @param parent the parent Node.
+     * @param world  the World where the Zone Specification is evaluated.
+     * @param x      the X coordinate.
+     * @param y      the Y coordinate.
+     * @param z      the Z coordinate.
+     * @return the most specific matching descendant, or null.
+     */
+    protected static Node findChild(Node parent, World world, double x, double y, double z) {
+        Node[] children = parent.children;
+        ZoneIndex index = parent.index;
+        if (index == null) {
+            for (Node child : children) {
+                Node found = getDescendant(child, world, x, y, z);
+                if (found != null) {
+                    return found;
+                }
+            }
+        } else {
+            for (int i = index.next(x, y, z, x, y, z, -1); i >= 0; i = index.next(x, y, z, x, y, z, i)) {
+                Node found = getDescendant(children[i], world, x, y, z);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the deepest descendant of a Node, including the Node itself,
+     * that contains the specified coordinates, or null if the Node does not
+     * contain them.
+     *
+     * @param node  the Node.
+     * @param world the World where the Zone Specification is evaluated.
+     * @param x     the X coordinate.
+     * @param y     the Y coordinate.
+     * @param z     the Z coordinate.
+     * @return the most specific matching Node, or null.
+     */
+    protected static Node getDescendant(Node node, World world, double x, double y, double z) {
+        if (node.compiled.test(world, x, y, z)) {
+            Node child = findChild(node, world, x, y, z);
+            return (child != null) ? child : node;
+        } else {
+            return null;
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the most specific descendant of a Node that contains every point
+     * of a Box, provided the Zone Specifications decide that without
+     * ambiguity.
+     *
+     * The Node itself must contain the whole Box. Its children are considered
+     * in order: a child that is FALSE over the Box is skipped, the first child
+     * that is TRUE is descended into, and a child that is MAYBE means that
+     * different points in the Box may be in different zones.
+     *
+     * @param world the World containing the Box.
+     * @param node  the Node, which contains the whole Box.
+     * @param box   the Box.
+     * @return the most specific Zone containing the whole Box, or null if
+     *         that depends on the point within the Box.
+     */
+    protected static Zone resolveSection(World world, Node node, Box box) {
+        Node[] children = node.children;
+        ZoneIndex index = node.index;
+        int i = (index == null) ? 0 : index.next(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ, -1);
+        while (i >= 0 && i < children.length) {
+            Node child = children[i];
+            Tristate value = (child.simplified == null) ? Tristate.TRUE
+                                                        : (Tristate) child.simplified.visit(new BoxExpressionVisitor(world), box);
+            switch (value) {
+            case TRUE:
+                return resolveSection(world, child, box);
+            case MAYBE:
+                return null;
+            default:
+                break;
+            }
+            i = (index == null) ? i + 1 : index.next(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ, i);
+        }
+        return node.zone;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Add the extents of a Node and its descendants whose Zone Specifications
+     * use the WG predicate to a list.
+     *
+     * @param node    the Node.
+     * @param extents the list of extents.
+     */
+    protected static void addRegionExtents(Node node, List<Box> extents) {
+        if (node.simplified != null && usesPredicate(node.simplified, ZonePredicate.WG)) {
+            extents.add(node.extent);
+        }
+        for (Node child : node.children) {
+            addRegionExtents(child, extents);
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if the Zone Specification of a Node or any of its
+     * descendants uses the specified predicate.
+     *
+     * @param node      the Node.
+     * @param predicate the predicate.
+     * @return true if the predicate is used.
+     */
+    protected static boolean usesPredicate(Node node, ZonePredicate predicate) {
+        if (node.simplified != null && usesPredicate(node.simplified, predicate)) {
+            return true;
+        }
+        for (Node child : node.children) {
+            if (usesPredicate(child, predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return true if an Expression uses the specified predicate.
+     *
+     * @param expression the Expression.
+     * @param predicate  the predicate.
+     * @return true if the Expression uses the predicate.
+     */
+    protected static boolean usesPredicate(Expression expression, ZonePredicate predicate) {
+        if (expression instanceof PredicateExpression) {
+            return ((PredicateExpression) expression).getZonePredicate() == predicate;
+        }
+        for (int i = 0; i < expression.getChildCount(); ++i) {
+            if (usesPredicate(expression.getChild(i), predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return a key identifying the chunk section containing a packed block
+     * position.
+     *
+     * @param packed the packed block position.
+     * @return the section key.
+     */
+    protected static long sectionKey(long packed) {
+        // Clear the low 4 bits of each coordinate.
+        return packed & ~((0xFL << 38) | (0xFL << 12) | 0xFL);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the slot of a chunk section in the section cache.
+     *
+     * @param chunkX the chunk X coordinate.
+     * @param band   the index of the section within the chunk, [0,15].
+     * @param chunkZ the chunk Z coordinate.
+     * @return the slot index.
+     */
+    protected static int slot(int chunkX, int band, int chunkZ) {
+        int hash = (chunkX * 0x9E3779B1) ^ (chunkZ * 0x85EBCA77) ^ band;
+        return (hash ^ (hash >>> 15)) & (CACHE_SLOTS - 1);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the largest integer less than or equal to a coordinate, as
+     * {@link org.bukkit.Location#locToBlock(double)} does.
+     *
+     * @param coordinate the coordinate.
+     * @return the block coordinate.
+     */
+    protected static int floor(double coordinate) {
+        int truncated = (int) coordinate;
+        return (coordinate < truncated) ? truncated - 1 : truncated;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * An immutable copy of the parts of a Zone used to look it up.
+     */
+    protected static final class Node {
+        /**
+         * Constructor.
+         *
+         * Recursively copies the descendants of the Zone.
+         *
+         * @param zone the Zone.
+         */
+        Node(Zone zone) {
+            this.zone = zone;
+            // A child Zone whose specification failed to parse contains its
+            // whole World, as in Zone.contains().
+            CompiledExpression zoneCompiled = zone.getCompiledExpression();
+            compiled = (zoneCompiled != null) ? zoneCompiled : (w, x, y, z) -> true;
+            simplified = zone.getSimplifiedExpression();
+            extent = zone.getExtent();
+
+            List<Zone> zoneChildren = zone.children();
+            children = new Node[zoneChildren.size()];
+            for (int i = 0; i < children.length; ++i) {
+                children[i] = new Node(zoneChildren.get(i));
+            }
+            index = (children.length >= INDEX_MIN_CHILDREN) ? new ZoneIndex(zoneChildren) : null;
+        }
+
+        /**
+         * The Zone.
+         */
+        final Zone zone;
+
+        /**
+         * The compiled Zone Specification; always true for root Zones.
+         */
+        final CompiledExpression compiled;
+
+        /**
+         * The simplified Zone Specification; null for root Zones.
+         */
+        final Expression simplified;
+
+        /**
+         * The extent of the Zone; {@link Box#EVERYWHERE} for root Zones.
+         */
+        final Box extent;
+
+        /**
+         * The children, in priority order.
+         */
+        final Node[] children;
+
+        /**
+         * The spatial index of the children, or null if there are too few.
+         */
+        final ZoneIndex index;
+    } // class Node
+
+    // ------------------------------------------------------------------------
+    /**
+     * The Zones of one World.
+     */
+    protected static final class WorldZones {
+        /**
+         * Constructor.
+         *
+         * @param world the World.
+         * @param root  the Node of the root Zone.
+         */
+        WorldZones(World world, Node root) {
+            this.world = world;
+            this.root = root;
+            List<Box> extents = new ArrayList<>();
+            addRegionExtents(root, extents);
+            regionExtents = extents.toArray(new Box[extents.size()]);
+            usesDepth = usesPredicate(root, ZonePredicate.DEPTH);
+        }
+
+        /**
+         * The World.
+         */
+        final World world;
+
+        /**
+         * The Node of the root Zone.
+         */
+        final Node root;
+
+        /**
+         * The extents of the Zones whose Zone Specifications use the WG
+         * predicate.
+         */
+        final Box[] regionExtents;
+
+        /**
+         * True if any Zone Specification uses the DEPTH predicate.
+         */
+        final boolean usesDepth;
+
+        /**
+         * The section cache, indexed by {@link ZoneSnapshot#slot(int, int,
+         * int)}.
+         */
+        final Section[] sections = new Section[CACHE_SLOTS];
+    } // class WorldZones
+
+    // ------------------------------------------------------------------------
+    /**
+     * An immutable entry of the section cache.
+     */
+    protected static final class Section {
+        /**
+         * Constructor.
+         *
+         * @param chunkX the chunk X coordinate.
+         * @param band   the index of the section within the chunk.
+         * @param chunkZ the chunk Z coordinate.
+         * @param zone   the Zone containing the whole section, or null if the
+         *               section straddles a zone boundary.
+         */
+        Section(int chunkX, int band, int chunkZ, Zone zone) {
+            this.chunkX = chunkX;
+            this.band = band;
+            this.chunkZ = chunkZ;
+            this.zone = zone;
+        }
+
+        /**
+         * Return true if this entry is for the specified chunk section.
+         *
+         * @param chunkX the chunk X coordinate.
+         * @param band   the index of the section within the chunk.
+         * @param chunkZ the chunk Z coordinate.
+         * @return true if this entry is for the specified chunk section.
+         */
+        boolean matches(int chunkX, int band, int chunkZ) {
+            return this.chunkX == chunkX && this.band == band && this.chunkZ == chunkZ;
+        }
+
+        /**
+         * The chunk X coordinate.
+         */
+        final int chunkX;
+
+        /**
+         * The index of the section within the chunk.
+         */
+        final int band;
+
+        /**
+         * The chunk Z coordinate.
+         */
+        final int chunkZ;
+
+        /**
+         * The Zone containing the whole section, or null if the section
+         * straddles a zone boundary.
+         */
+        final Zone zone;
+    } // class Section
+
+    // ------------------------------------------------------------------------
+    /**
+     * Height of the world, in blocks, covered by the section cache.
+     */
+    protected static final int CACHE_HEIGHT = 256;
+
+    /**
+     * Number of entries in the section cache of each World; a power of 2.
+     */
+    protected static final int CACHE_SLOTS = 1 << 15;
+
+    /**
+     * Minimum number of children of a Zone for which a {@link ZoneIndex} is
+     * used; smaller lists are scanned in order.
+     */
+    protected static final int INDEX_MIN_CHILDREN = 8;
+
+    /**
+     * Map from World UUID to the Zones of that World. Not modified after
+     * construction.
+     */
+    protected final HashMap<UUID, WorldZones> _worlds = new HashMap<>();
+
+    /**
+     * Counts lookups answered from the section cache.
+     */
+    protected final LongAdder _cacheHits;
+
+    /**
+     * Counts lookups that evaluated Zone Specifications.
+     */
+    protected final LongAdder _cacheMisses;
+} // class ZoneSnapshot
\ No newline at end of file
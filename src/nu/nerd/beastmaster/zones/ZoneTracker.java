@@ -0,0 +1,186 @@
+package nu.nerd.beastmaster.zones;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.UUID;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+
+// ----------------------------------------------------------------------------
+/**
+ * Tracks the current Zone of every online player, raising
+ * {@link ZoneLeaveEvent} and {@link ZoneEnterEvent} when it changes.
+ *
+ * The player's Zone is only looked up again when the player moves to a
+ * different block (and hence, possibly, a different chunk) or World, or when
+ * a new {@link ZoneSnapshot} is published. Lookups use
+ * {@link ZoneManager#getZone(Location)}, so they are usually answered from
+ * baked tiles or the snapshot's section cache. Reading a player's tracked
+ * Zone is a single hash lookup.
+ *
+ * Zones are compared by ID, so that reloading the zone configuration does
+ * not report players as leaving and re-entering Zones that still exist.
+ *
+ * All methods must be called in the main thread.
+ */
+public class ZoneTracker {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     *
+     * @param zones the ZoneManager used to look up Zones.
+     */
+    public ZoneTracker(ZoneManager zones) {
+        _zones = zones;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the tracked Zone of the specified player.
+     *
+     * @param player the player.
+     * @return the player's current Zone, or null if the player is not
+     *         tracked.
+     */
+    public Zone getZone(Player player) {
+        Tracked tracked = _players.get(player.getUniqueId());
+        return (tracked != null) ? tracked.zone : null;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Update the Zone of a player who has moved, raising events if it has
+     * changed.
+     *
+     * Untracked players start being tracked.
+     *
+     * @param player the player.
+     * @param loc    the player's new Location.
+     */
+    public void update(Player player, Location loc) {
+        World world = loc.getWorld();
+        if (world == null) {
+            return;
+        }
+
+        UUID worldId = world.getUID();
+        int x = loc.getBlockX();
+        int y = loc.getBlockY();
+        int z = loc.getBlockZ();
+        Tracked tracked = _players.get(player.getUniqueId());
+        if (tracked == null) {
+            tracked = new Tracked(player);
+            _players.put(player.getUniqueId(), tracked);
+        } else if (tracked.snapshot == _zones.getSnapshot() &&
+                   tracked.x == x && tracked.y == y && tracked.z == z &&
+                   worldId.equals(tracked.worldId)) {
+            return;
+        }
+
+        tracked.worldId = worldId;
+        tracked.x = x;
+        tracked.y = y;
+        tracked.z = z;
+        tracked.snapshot = _zones.getSnapshot();
+        Zone oldZone = tracked.zone;
+        Zone newZone = _zones.getZone(loc);
+        tracked.zone = newZone;
+
+        if (oldZone == null || !oldZone.getId().equalsIgnoreCase(newZone.getId())) {
+            if (oldZone != null) {
+                Bukkit.getPluginManager().callEvent(new ZoneLeaveEvent(player, oldZone, newZone));
+            }
+            Bukkit.getPluginManager().callEvent(new ZoneEnterEvent(player, newZone, oldZone));
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Look up the Zones of all tracked players again, after the zone
+     * configuration has changed.
+     */
+    public void refresh() {
+        // Event handlers may move players, changing _players.
+        for (Tracked tracked : new ArrayList<>(_players.values())) {
+            if (tracked.player.isOnline()) {
+                update(tracked.player, tracked.player.getLocation());
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Stop tracking a player, when they leave the server.
+     *
+     * No {@link ZoneLeaveEvent} is raised.
+     *
+     * @param player the player.
+     */
+    public void remove(Player player) {
+        _players.remove(player.getUniqueId());
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The tracking state of one player.
+     */
+    protected static final class Tracked {
+        /**
+         * Constructor.
+         *
+         * @param player the player.
+         */
+        Tracked(Player player) {
+            this.player = player;
+        }
+
+        /**
+         * The player.
+         */
+        final Player player;
+
+        /**
+         * The UUID of the World at the last lookup.
+         */
+        UUID worldId;
+
+        /**
+         * The block X coordinate at the last lookup.
+         */
+        int x;
+
+        /**
+         * The block Y coordinate at the last lookup.
+         */
+        int y;
+
+        /**
+         * The block Z coordinate at the last lookup.
+         */
+        int z;
+
+        /**
+         * The snapshot used for the last lookup.
+         */
+        ZoneSnapshot snapshot;
+
+        /**
+         * The player's current Zone.
+         */
+        Zone zone;
+    } // class Tracked
+
+    // ------------------------------------------------------------------------
+    /**
+     * The ZoneManager used to look up Zones.
+     */
+    protected final ZoneManager _zones;
+
+    /**
+     * Map from player UUID to tracking state.
+     */
+    protected final HashMap<UUID, Tracked> _players = new HashMap<>();
+} // class ZoneTracker
\ No newline at end of file
@@ -0,0 +1,50 @@
+package nu.nerd.beastmaster.zones.nodes;
+
+import nu.nerd.beastmaster.zones.Expression;
+import nu.nerd.beastmaster.zones.ExpressionVisitor;
+
+// ----------------------------------------------------------------------------
+/**
+ * A Zone Specification sub-expression with a constant Boolean value.
+ * 
+ * Constants cannot be written in a Zone Specification; they only arise when
+ * an {@link nu.nerd.beastmaster.zones.ExpressionSimplifier} folds a
+ * sub-expression whose value does not depend on the location.
+ */
+public class ConstantExpression extends Expression {
+    // ------------------------------------------------------------------------
+    /**
+     * Constructor.
+     * 
+     * @param value the value of the constant.
+     */
+    public ConstantExpression(boolean value) {
+        _value = value;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * Return the value of the constant.
+     * 
+     * @return the value of the constant.
+     */
+    public boolean getValue() {
+        return _value;
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * @see nu.nerd.beastmaster.zones.Expression#visit(nu.nerd.beastmaster.zones.ExpressionVisitor,
+     *      java.lang.Object)
+     */
+    @Override
+    public Object visit(ExpressionVisitor visitor, Object context) {
+        return visitor.visit(this, context);
+    }
+
+    // ------------------------------------------------------------------------
+    /**
+     * The value of the constant.
+     */
+    protected boolean _value;
+} // class ConstantExpression
\ No newline at end of file
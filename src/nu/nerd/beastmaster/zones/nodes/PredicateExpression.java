@@ -23,6 +23,7 @@ public class PredicateExpression extends Expression {
      */
     public PredicateExpression(String ident) {
         _ident = ident;
+        _zonePredicate = ZonePredicate.byIdent(ident);
     }
 
     // ------------------------------------------------------------------------
@@ -35,6 +36,17 @@ public class PredicateExpression extends Expression {
         return _ident;
     }
 
+    // ------------------------------------------------------------------------
+    /**
+     * Return the ZonePredicate corresponding to the identifier.
+     *
+     * @return the ZonePredicate corresponding to the identifier, or null if
+     *         the identifier is not a known predicate.
+     */
+    public ZonePredicate getZonePredicate() {
+        return _zonePredicate;
+    }
+
     // ------------------------------------------------------------------------
     /**
      * @see nu.nerd.beastmaster.zones.Expression#visit(nu.nerd.beastmaster.zones.ExpressionVisitor,
@@ -54,9 +66,6 @@ public class PredicateExpression extends Expression {
      * @return true if the predicate matches.
      */
     public boolean matches(Location loc) {
-        if (_zonePredicate == null) {
-            _zonePredicate = ZonePredicate.byIdent(_ident);
-        }
         return _zonePredicate.matches(loc, args);
     }
 
@@ -74,10 +83,8 @@ public class PredicateExpression extends Expression {
     protected String _ident;
 
     /**
-     * The ZonePredicate instance corresponding to _ident, cached for efficiency
-     * on first lookup.
-     *
-     * TODO: can this actually be cached in the constructor.
+     * The ZonePredicate instance corresponding to _ident, looked up once on
+     * construction.
      */
     protected ZonePredicate _zonePredicate;
 } // class PredicateExpression
\ No newline at end of file